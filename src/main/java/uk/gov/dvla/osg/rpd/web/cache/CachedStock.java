@@ -0,0 +1,91 @@
+package uk.gov.dvla.osg.rpd.web.cache;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+import uk.gov.dvla.osg.vault.data.VaultStock;
+
+/**
+ * A vault stock snapshot returned by the LastKnownStockCache, along with how old
+ * it is and whether it came from RPD or from disk.
+ */
+public final class CachedStock {
+
+    private final VaultStock stock;
+    private final long savedAt;
+    private final long ageMillis;
+    private final boolean offline;
+    private final boolean stale;
+
+    /**
+     * Instantiates a new cached stock.
+     *
+     * @param stock the snapshot
+     * @param savedAt the time the snapshot was received from RPD
+     * @param now the current time
+     * @param offline true if RPD could not be reached and the snapshot came from disk
+     * @param maxAgeMillis the age after which the snapshot is stale
+     */
+    CachedStock(VaultStock stock, long savedAt, long now, boolean offline, long maxAgeMillis) {
+        this.stock = stock;
+        this.savedAt = savedAt;
+        this.ageMillis = Math.max(0, now - savedAt);
+        this.offline = offline;
+        this.stale = ageMillis > maxAgeMillis;
+    }
+
+    /**
+     * Gets the vault stock.
+     *
+     * @return the stock
+     */
+    public VaultStock getStock() {
+        return stock;
+    }
+
+    /**
+     * Gets the time the snapshot was received from RPD.
+     *
+     * @return the time in milliseconds since the epoch
+     */
+    public long getSavedAt() {
+        return savedAt;
+    }
+
+    /**
+     * Gets the age of the snapshot.
+     *
+     * @return the age in milliseconds
+     */
+    public long getAgeMillis() {
+        return ageMillis;
+    }
+
+    /**
+     * Checks if the snapshot came from disk because RPD could not be reached.
+     *
+     * @return true if RPD was unavailable
+     */
+    public boolean isOffline() {
+        return offline;
+    }
+
+    /**
+     * Checks if the snapshot is older than the vaultStockCacheMaxAge setting.
+     *
+     * @return true if the snapshot is stale
+     */
+    public boolean isStale() {
+        return stale;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("savedAt", savedAt)
+                .append("ageMillis", ageMillis)
+                .append("offline", offline)
+                .append("stale", stale)
+                .toString();
+    }
+}
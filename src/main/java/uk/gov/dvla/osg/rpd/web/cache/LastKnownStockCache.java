@@ -0,0 +1,175 @@
+package uk.gov.dvla.osg.rpd.web.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import uk.gov.dvla.osg.rpd.web.client.VaultStockClient;
+import uk.gov.dvla.osg.rpd.web.config.NetworkConfig;
+import uk.gov.dvla.osg.rpd.web.error.RpdErrorResponse;
+import uk.gov.dvla.osg.vault.data.VaultStock;
+
+/**
+ * Keeps the last vault stock received from RPD on disk, so that it can still be
+ * shown when RPD is unavailable.
+ * <p>
+ * Each successful request is written to the vaultStockCacheFile in a compact
+ * binary form. When RPD cannot be reached, times out or answers with a server
+ * error the last known stock is returned instead, marked as offline and with its
+ * age. Errors reported by RPD, such as an expired token, are returned as they
+ * are. The file is read when the cache is created, so getLastKnown can fill the
+ * first screen at startup without waiting for RPD.
+ */
+public class LastKnownStockCache {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final NetworkConfig config;
+    private final Path file;
+    private final long maxAgeMillis;
+    private volatile VaultStock stock;
+    private volatile long savedAt;
+    private volatile RpdErrorResponse error = new RpdErrorResponse();
+
+    /**
+     * Creates a cache using the vaultStockCacheFile and vaultStockCacheMaxAge
+     * settings in the config. If no file is set the last known stock is kept in
+     * memory only.
+     *
+     * @param config NetworkConfig object holding the vault url information.
+     * @return a new LastKnownStockCache
+     */
+    public static LastKnownStockCache getInstance(NetworkConfig config) {
+        return getInstance(config, config.getVaultStockCacheFile(),
+                TimeUnit.SECONDS.toMillis(config.getVaultStockCacheMaxAge()));
+    }
+
+    /**
+     * Creates a cache backed by the file.
+     *
+     * @param config NetworkConfig object holding the vault url information.
+     * @param filename the cache file, or an empty string to keep the stock in memory only
+     * @param maxAgeMillis the age after which the cached stock is marked as stale
+     * @return a new LastKnownStockCache
+     */
+    public static LastKnownStockCache getInstance(NetworkConfig config, String filename, long maxAgeMillis) {
+        return new LastKnownStockCache(config, StringUtils.isBlank(filename) ? null : Paths.get(filename), maxAgeMillis);
+    }
+
+    /**
+     * Instantiates a new last known stock cache and loads the file if it exists.
+     *
+     * @param config the network config
+     * @param file the cache file, or null
+     * @param maxAgeMillis the stale age
+     */
+    private LastKnownStockCache(NetworkConfig config, Path file, long maxAgeMillis) {
+        this.config = config;
+        this.file = file;
+        this.maxAgeMillis = maxAgeMillis;
+        if (file != null && Files.isRegularFile(file)) {
+            load();
+        }
+    }
+
+    /**
+     * Reads the cache file.
+     */
+    private void load() {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE))) {
+            long time = StockCodec.readSavedAt(in);
+            stock = StockCodec.read(in);
+            savedAt = time;
+            LOGGER.debug("Loaded vault stock from {} saved at {}", file, savedAt);
+        } catch (IOException ex) {
+            LOGGER.warn("Unable to read vault stock cache {}", file, ex);
+        }
+    }
+
+    /**
+     * Requests the vault stock from RPD, saving it if the request succeeds. If
+     * RPD is unavailable the last known stock is returned, marked as offline.
+     *
+     * @param token the session token to authenticate with RPD.
+     * @return the vault stock, or an empty optional if RPD rejected the request
+     *         or was unavailable and no stock has been saved. The error response
+     *         is available from getErrorResponse.
+     */
+    public Optional<CachedStock> getStock(String token) {
+        VaultStockClient client = VaultStockClient.getInstance(config);
+        Optional<VaultStock> fresh = client.getStock(token);
+        long now = System.currentTimeMillis();
+        if (fresh.isPresent()) {
+            save(fresh.get(), now);
+            return Optional.of(new CachedStock(fresh.get(), now, now, false, maxAgeMillis));
+        }
+        error = client.getErrorResponse();
+        VaultStock last = stock;
+        if (last == null || !client.isUnavailable()) {
+            return Optional.empty();
+        }
+        LOGGER.warn("Vault stock unavailable, using copy saved at {}: {}", savedAt, error);
+        return Optional.of(new CachedStock(last, savedAt, now, true, maxAgeMillis));
+    }
+
+    /**
+     * Gets the last known stock without contacting RPD.
+     *
+     * @return the last known stock, or an empty optional if none has been saved
+     */
+    public Optional<CachedStock> getLastKnown() {
+        VaultStock last = stock;
+        if (last == null) {
+            return Optional.empty();
+        }
+        return Optional.of(new CachedStock(last, savedAt, System.currentTimeMillis(), true, maxAgeMillis));
+    }
+
+    /**
+     * Keeps the stock in memory and writes it to the cache file. The file is
+     * written to a temporary file and moved into place, so a crash never leaves
+     * a partial file.
+     *
+     * @param received the stock
+     * @param time the time it was received
+     */
+    private synchronized void save(VaultStock received, long time) {
+        stock = received;
+        savedAt = time;
+        if (file == null) {
+            return;
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), BUFFER_SIZE))) {
+                StockCodec.write(out, time, received);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            LOGGER.warn("Unable to write vault stock cache {}", file, ex);
+        }
+    }
+
+    /**
+     * Retrieves the error response from the last failed request to RPD.
+     *
+     * @return an error response object.
+     */
+    public RpdErrorResponse getErrorResponse() {
+        return error;
+    }
+}
@@ -0,0 +1,198 @@
+package uk.gov.dvla.osg.rpd.web.cache;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import uk.gov.dvla.osg.vault.data.CardStock;
+import uk.gov.dvla.osg.vault.data.Environment;
+import uk.gov.dvla.osg.vault.data.StockTotals;
+import uk.gov.dvla.osg.vault.data.VaultStock;
+import uk.gov.dvla.osg.vault.data.Volume;
+
+/**
+ * Writes and reads a VaultStock in a compact binary form. Strings are written
+ * with a presence flag and modified UTF-8, numbers as fixed-width ints, and each
+ * list is preceded by its length, so a snapshot is read back in a single pass
+ * with no parsing. Card stock whose card class, site or status is not
+ * recognised is left out.
+ */
+final class StockCodec {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final int MAGIC = 0x52504456;
+    private static final int VERSION = 1;
+
+    /**
+     * Static methods only.
+     */
+    private StockCodec() { }
+
+    /**
+     * Writes a snapshot.
+     *
+     * @param out the output
+     * @param savedAt the time the snapshot was received from RPD
+     * @param stock the snapshot
+     * @throws IOException if the snapshot cannot be written
+     */
+    static void write(DataOutputStream out, long savedAt, VaultStock stock) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(savedAt);
+        StockTotals totals = stock.getStockTotals();
+        out.writeBoolean(totals != null);
+        if (totals != null) {
+            writeEnvironment(out, totals.getTest());
+            writeEnvironment(out, totals.getProduction());
+        }
+    }
+
+    /**
+     * Writes an environment.
+     */
+    private static void writeEnvironment(DataOutputStream out, Environment environment) throws IOException {
+        List<CardStock> cardStock = environment == null ? null : environment.getCardStock();
+        out.writeBoolean(environment != null);
+        if (environment == null) {
+            return;
+        }
+        List<CardStock> valid = new ArrayList<>();
+        if (cardStock != null) {
+            for (CardStock stock : cardStock) {
+                try {
+                    if (stock != null) {
+                        stock.getCardClass();
+                        stock.getSite();
+                        valid.add(stock);
+                    }
+                } catch (RuntimeException ex) {
+                    LOGGER.warn("Unrecognised card stock {} left out of vault stock cache", stock.getCardType());
+                }
+            }
+        }
+        out.writeInt(cardStock == null ? -1 : valid.size());
+        for (CardStock stock : valid) {
+            writeString(out, stock.getFirstUCI());
+            writeString(out, stock.getCardType());
+            writeString(out, stock.getCardClass().name());
+            writeString(out, stock.getSite().name());
+            writeVolumes(out, stock.getVolumes());
+        }
+    }
+
+    /**
+     * Writes the volumes of a card stock.
+     */
+    private static void writeVolumes(DataOutputStream out, List<Volume> volumes) throws IOException {
+        if (volumes == null) {
+            out.writeInt(-1);
+            return;
+        }
+        List<Volume> valid = new ArrayList<>();
+        for (Volume volume : volumes) {
+            try {
+                volume.getStatus();
+                valid.add(volume);
+            } catch (RuntimeException ex) {
+                LOGGER.warn("Unrecognised volume status left out of vault stock cache");
+            }
+        }
+        out.writeInt(valid.size());
+        for (Volume volume : valid) {
+            out.writeInt(volume.getContent());
+            writeString(out, volume.getStatus().name());
+        }
+    }
+
+    /**
+     * Writes a string that may be null.
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    /**
+     * Reads the time a snapshot was received from RPD. Must be called before read.
+     *
+     * @param in the input
+     * @return the time in milliseconds since the epoch
+     * @throws IOException if the input is not a vault stock cache
+     */
+    static long readSavedAt(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Not a vault stock cache file");
+        }
+        return in.readLong();
+    }
+
+    /**
+     * Reads a snapshot, following readSavedAt.
+     *
+     * @param in the input
+     * @return the snapshot
+     * @throws IOException if the input is truncated
+     */
+    static VaultStock read(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return new VaultStock(null);
+        }
+        Environment test = readEnvironment(in);
+        Environment production = readEnvironment(in);
+        return new VaultStock(new StockTotals(test, production));
+    }
+
+    /**
+     * Reads an environment.
+     */
+    private static Environment readEnvironment(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        int size = in.readInt();
+        if (size < 0) {
+            return new Environment(null);
+        }
+        List<CardStock> cardStock = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            String firstUCI = readString(in);
+            String cardType = readString(in);
+            String cardClass = readString(in);
+            String location = readString(in);
+            cardStock.add(new CardStock(firstUCI, cardType, cardClass, location, readVolumes(in)));
+        }
+        return new Environment(cardStock);
+    }
+
+    /**
+     * Reads the volumes of a card stock.
+     */
+    private static List<Volume> readVolumes(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        if (size < 0) {
+            return null;
+        }
+        List<Volume> volumes = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            int content = in.readInt();
+            volumes.add(new Volume(content, readString(in)));
+        }
+        return volumes;
+    }
+
+    /**
+     * Reads a string that may be null.
+     */
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
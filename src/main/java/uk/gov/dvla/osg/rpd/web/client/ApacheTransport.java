@@ -0,0 +1,203 @@
+package uk.gov.dvla.osg.rpd.web.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.util.EntityUtils;
+
+import uk.gov.dvla.osg.rpd.web.client.TransportRequest.Part;
+import uk.gov.dvla.osg.rpd.web.config.NetworkConfig;
+
+/**
+ * Sends requests with the shared Apache client held by the HttpClientPool, without
+ * the JAX-RS layer. The Apache client only blocks, so asynchronous requests are
+ * sent on a pool of daemon threads, one for each connection the pool may open.
+ * Requests beyond that wait in a queue rather than creating more threads.
+ */
+final class ApacheTransport implements Transport {
+
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(
+            Math.max(1, NetworkConfig.getInstance().getMaxConnections()), runnable -> {
+                Thread thread = new Thread(runnable, "rpd-apache-transport");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    @Override
+    public String getName() {
+        return TransportType.APACHE.getName();
+    }
+
+    @Override
+    public TransportResponse send(TransportRequest request) {
+        RequestBuilder builder = RequestBuilder.create(request.getMethod())
+                .setUri(uri(request))
+                .setHeader(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON);
+        request.getHeaders().forEach(builder::setHeader);
+        builder.setEntity(entity(request));
+        if (request.getTimeoutMillis() > 0) {
+            builder.setConfig(RequestConfig.copy(HttpClientPool.getInstance().getRequestConfig())
+                    .setConnectTimeout(request.getTimeoutMillis())
+                    .setConnectionRequestTimeout(request.getTimeoutMillis())
+                    .setSocketTimeout(request.getTimeoutMillis())
+                    .build());
+        }
+
+        try (CloseableHttpResponse response = HttpClientPool.getInstance().getApacheClient().execute(builder.build())) {
+            Map<String, List<String>> headers = new LinkedHashMap<>();
+            for (Header header : response.getAllHeaders()) {
+                headers.computeIfAbsent(header.getName(), name -> new ArrayList<>()).add(header.getValue());
+            }
+            HttpEntity entity = response.getEntity();
+            String body = entity == null ? "" : EntityUtils.toString(entity, StandardCharsets.UTF_8);
+            return new TransportResponse(response.getStatusLine().getStatusCode(), headers, body);
+        } catch (IOException ex) {
+            // Match the JAX-RS client, so the clients and the RetryPolicy see the same failure
+            throw new ProcessingException(ex);
+        }
+    }
+
+    @Override
+    public CompletionStage<TransportResponse> sendAsync(TransportRequest request) {
+        return CompletableFuture.supplyAsync(() -> send(request), EXECUTOR);
+    }
+
+    /**
+     * Builds the URL of a request, with its query parameters encoded.
+     *
+     * @param request the request
+     * @return the URL
+     */
+    private static String uri(TransportRequest request) {
+        try {
+            URIBuilder uri = new URIBuilder(request.getUrl());
+            request.getQueryParams().forEach(uri::addParameter);
+            return uri.build().toString();
+        } catch (URISyntaxException ex) {
+            throw new IllegalArgumentException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Creates the entity for the body of a request.
+     *
+     * @param request the request
+     * @return the entity, or null if the request has no body
+     */
+    private static HttpEntity entity(TransportRequest request) {
+        if (request.getForm() != null) {
+            List<NameValuePair> fields = new ArrayList<>();
+            request.getForm().forEach((name, value) -> fields.add(new BasicNameValuePair(name, value)));
+            return new UrlEncodedFormEntity(fields, StandardCharsets.UTF_8);
+        }
+        if (request.getJson() != null) {
+            return new StringEntity(request.getJson(), ContentType.APPLICATION_JSON);
+        }
+        if (request.getPart() != null) {
+            return new MultiPartEntity(request.getPart(), request.isChunked());
+        }
+        return null;
+    }
+
+    /**
+     * A multipart/form-data body holding a single file, written straight to the
+     * connection from the part's writer. The transport always writes the entity,
+     * but getContent is also supported for anything that reads or buffers it.
+     */
+    private static final class MultiPartEntity extends AbstractHttpEntity {
+
+        private final Part part;
+        private final byte[] head;
+        private final byte[] tail;
+
+        private MultiPartEntity(Part part, boolean chunked) {
+            String boundary = "Boundary_" + UUID.randomUUID().toString().replace("-", "");
+            this.part = part;
+            this.head = ("--" + boundary + "\r\n"
+                    + "Content-Disposition: form-data; name=\"" + part.getName() + "\"; filename=\"" + part.getFileName() + "\"\r\n"
+                    + "Content-Type: " + part.getMediaType() + "\r\n\r\n").getBytes(StandardCharsets.UTF_8);
+            this.tail = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+            setContentType(MediaType.MULTIPART_FORM_DATA + "; boundary=" + boundary);
+            setChunked(chunked);
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        @Override
+        public long getContentLength() {
+            return isChunked() ? -1 : head.length + part.getLength() + tail.length;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            InputStream content;
+            if (part.getFile() != null) {
+                content = Files.newInputStream(part.getFile().toPath());
+            } else {
+                // Only a writer is available, so its output is held in memory
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                part.getWriter().write(buffer);
+                content = new ByteArrayInputStream(buffer.toByteArray());
+            }
+            return new SequenceInputStream(Collections.enumeration(Arrays.asList(
+                    new ByteArrayInputStream(head), content, new ByteArrayInputStream(tail))));
+        }
+
+        @Override
+        public void writeTo(OutputStream output) throws IOException {
+            output.write(head);
+            CountingOutputStream content = new CountingOutputStream(output);
+            part.getWriter().write(content);
+            if (!isChunked() && content.getByteCount() != part.getLength()) {
+                // The declared Content-Length no longer matches, so RPD would receive a broken body
+                throw new IOException("Wrote " + content.getByteCount() + " bytes of " + part.getFileName()
+                        + " but declared " + part.getLength());
+            }
+            output.write(tail);
+            output.flush();
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return false;
+        }
+    }
+}
@@ -2,16 +2,17 @@ package uk.gov.dvla.osg.rpd.web.client;
 
 
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 import javax.ws.rs.ProcessingException;
 import javax.ws.rs.core.MediaType;
-import javax.ws.rs.core.Response;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import uk.gov.dvla.osg.rpd.web.config.NetworkConfig;
-import uk.gov.dvla.osg.rpd.web.config.Session;
+import uk.gov.dvla.osg.rpd.web.config.UserSession;
 import uk.gov.dvla.osg.rpd.web.error.RpdErrorResponse;
 import uk.gov.dvla.osg.rpd.web.json.JsonUtils;
 
@@ -24,26 +25,63 @@ public class CheckGroupClient {
     
     private static final Logger LOGGER = LogManager.getLogger();
     
+    // Group requests for the same user and token that are in flight, shared by all clients
+    private static final SingleFlight<String, Lookup> IN_FLIGHT = new SingleFlight<>();
+    
     private RpdErrorResponse error = new RpdErrorResponse();
     private String url;
+    private final UserSession session;
+    // The user whose groups are requested
+    private final String userName;
 	
     /**
-     * Gets a new instance of the RpdLoginClient
+     * Gets a new instance of the CheckGroupClient for the user in the Session singleton.
      * 
      * @param config
-     * @return a new instance of the RpdLoginClient.
+     * @return a new instance of the CheckGroupClient.
+     * @deprecated use getInstance(NetworkConfig, UserSession)
      */
+    @Deprecated
     public static CheckGroupClient getInstance(NetworkConfig config) {
-        return new CheckGroupClient(config);
+        UserSession session = uk.gov.dvla.osg.rpd.web.config.Session.getInstance().toUserSession();
+        return new CheckGroupClient(config, session, session.getUserName());
     }
 
     /**
-     * Instantiates a new rpd login client.
+     * Gets a new instance of the CheckGroupClient for a user.
+     * 
+     * @param config
+     * @param session the session of the user to check
+     * @return a new instance of the CheckGroupClient.
+     */
+    public static CheckGroupClient getInstance(NetworkConfig config, UserSession session) {
+        return new CheckGroupClient(config, session, session.getUserName());
+    }
+
+    /**
+     * Gets a new instance of the CheckGroupClient that checks another user, using
+     * the token of the session to authenticate.
+     * 
+     * @param config
+     * @param session the session used to authenticate with RPD
+     * @param userName the RPD login name of the user to check
+     * @return a new instance of the CheckGroupClient.
+     */
+    public static CheckGroupClient getInstance(NetworkConfig config, UserSession session, String userName) {
+        return new CheckGroupClient(config, session, userName);
+    }
+
+    /**
+     * Instantiates a new check group client.
      *
      * @param config the config
+     * @param session the session
+     * @param userName the user to check
      */
-    private CheckGroupClient(NetworkConfig config) {
-        this.url = config.getCheckIfAdminUrl() + Session.getInstance().getUserName();
+    private CheckGroupClient(NetworkConfig config, UserSession session, String userName) {
+        this.url = config.getCheckIfAdminUrl() + userName;
+        this.session = session;
+        this.userName = userName;
     }
     
 	/**
@@ -52,44 +90,114 @@ public class CheckGroupClient {
 	 * @return the optional
 	 */
 	public Optional<Boolean> IsUserAdmin() {
+	    // Callers arriving while an identical request is in flight share its result
+	    Lookup lookup = IN_FLIGHT.execute(url + " " + session.getToken(), this::lookup);
+	    if (!lookup.admin.isPresent()) {
+	        error = lookup.error.copy();
+	    }
+	    return lookup.admin;
+	}
+	
+	/**
+	 * Sends the request for IsUserAdmin.
+	 *
+	 * @return the outcome of the request
+	 */
+	private Lookup lookup() {
+	    Optional<Boolean> admin = Optional.empty();
+		try {
+		    TransportResponse response = Transports.getInstance().send(RpdRequests.group(url, userName, session.getToken()));
+		    admin = handleResponse(response);
+		} catch (Exception ex) {
+		    handleException(ex);
+		}
+		return new Lookup(admin, error);
+	}
+	
+	/**
+	 * Non-blocking version of IsUserAdmin. The request is sent through the
+	 * Transport and the response is processed on the supplied executor.
+	 *
+	 * @param executor the executor used to process the response
+	 * @return a future holding the admin flag, or an empty optional for error conditions
+	 */
+	public CompletableFuture<Optional<Boolean>> IsUserAdminAsync(Executor executor) {
+	    return Transports.getInstance().sendAsync(RpdRequests.group(url, userName, session.getToken()))
+	            .handleAsync((response, throwable) -> {
+	                if (throwable != null) {
+	                    handleException(RestClient.unwrap(throwable));
+	                    return Optional.<Boolean>empty();
+	                }
+	                try {
+	                    return handleResponse(response);
+	                } catch (Exception ex) {
+	                    handleException(ex);
+	                    return Optional.<Boolean>empty();
+	                }
+	            }, executor)
+	            .toCompletableFuture();
+	}
+	
+	/**
+	 * Checks the group response for membership of the Dev group, otherwise maps the error information.
+	 *
+	 * @param response the response from RPD
+	 * @return true if the user is an admin, or an empty optional if the request failed
+	 */
+	private Optional<Boolean> handleResponse(TransportResponse response) {
+	    MediaType mediaType = response.getMediaType();
+	    String data = response.getBody();
 	    
-		try (Response response = RestClient.rpdGroup(url)) {
-		    MediaType mediaType = response.getMediaType();
-		    String data = response.readEntity(String.class);
-		    
-			if (response.getStatus() == 200 && mediaType.equals(MediaType.APPLICATION_JSON_TYPE)) {
-			    LOGGER.trace(data);
-				return Optional.of(JsonUtils.isUserInDevGroup(data));
-			 } else if (mediaType.equals(MediaType.APPLICATION_JSON_TYPE)) {
-	                // RPD provides clear error information, and so is mapped to model
-	                error = JsonUtils.getError(data);
-	            } else {
-	                error.setCode("Check Group Error:");
-	                error.setMessage("Response is not JSON!");
-	                error.setAction("Please notify Dev Team.");
-	            }
-	        } catch (ProcessingException ex) {
-	            error.setCode("Check Group Error:");
-	            error.setMessage("Unable to connect to RPD web service. Connection timed out");
-	            error.setAction("Please wait a few minutes and then try again.");
-	            error.setException(ex);
-	        } catch (NullPointerException ex) {
-	            error.setCode("Check Group Error:");
-	            error.setMessage("Unable to connect to RPD web service. Invalid IP address for RPD");
-	            error.setAction("To resolve, check all parts of the login URL in the application config file.");
-	            error.setException(ex);
-	        } catch (IllegalArgumentException ex) {
-	            error.setCode("Check Group Error:");
-	            error.setMessage("Invalid URL in config file [" + url + "]. Please check configuration.");
-	            error.setAction("To resolve, check all parts of the login URL in the application config file. This problem is usually caused by either a missing value in the URL or an illegal character.");
-	            error.setException(ex);
-	        } catch (Exception ex) {
+	    if (response.getStatus() == 200 && mediaType.equals(MediaType.APPLICATION_JSON_TYPE)) {
+	        LOGGER.trace(data);
+	        return Optional.of(JsonUtils.isUserInDevGroup(data));
+	    } else if (mediaType.equals(MediaType.APPLICATION_JSON_TYPE)) {
+	        // RPD provides clear error information, and so is mapped to model
+	        error = JsonUtils.getError(data);
+	        if (error == null) {
+	            // RPD sent an error status without any details
+	            error = new RpdErrorResponse();
 	            error.setCode("Check Group Error:");
-	            error.setMessage("An unknown error occured while attempting to login to RPD");
+	            error.setMessage("RPD returned status " + response.getStatus() + " without any error details.");
 	            error.setAction("Please notify Dev Team.");
-	            error.setException(ex);
 	        }
-	        return Optional.empty();
+	    } else {
+	        error.setCode("Check Group Error:");
+	        error.setMessage("Response is not JSON!");
+	        error.setAction("Please notify Dev Team.");
+	    }
+	    return Optional.empty();
+	}
+	
+	/**
+	 * Maps an exception raised while contacting RPD to the error response.
+	 *
+	 * @param ex the exception
+	 */
+	private void handleException(Exception ex) {
+	    if (ex instanceof CircuitOpenException) {
+	        error.setCode("Check Group Error:");
+	        error.setMessage("Requests to RPD are paused after repeated failures. Retrying in "
+	                + (((CircuitOpenException) ex).getRetryAfterMillis() / 1000 + 1) + " seconds");
+	        error.setAction("Please wait a few minutes and then try again. If the problem persits, please contact Dev team.");
+	    } else if (ex instanceof ProcessingException) {
+	        error.setCode("Check Group Error:");
+	        error.setMessage("Unable to connect to RPD web service. Connection timed out");
+	        error.setAction("Please wait a few minutes and then try again.");
+	    } else if (ex instanceof NullPointerException) {
+	        error.setCode("Check Group Error:");
+	        error.setMessage("Unable to connect to RPD web service. Invalid IP address for RPD");
+	        error.setAction("To resolve, check all parts of the login URL in the application config file.");
+	    } else if (ex instanceof IllegalArgumentException) {
+	        error.setCode("Check Group Error:");
+	        error.setMessage("Invalid URL in config file [" + url + "]. Please check configuration.");
+	        error.setAction("To resolve, check all parts of the login URL in the application config file. This problem is usually caused by either a missing value in the URL or an illegal character.");
+	    } else {
+	        error.setCode("Check Group Error:");
+	        error.setMessage("An unknown error occured while attempting to login to RPD");
+	        error.setAction("Please notify Dev Team.");
+	    }
+	    error.setException(ex);
 	}
 	
     /**
@@ -101,4 +209,17 @@ public class CheckGroupClient {
     public RpdErrorResponse getErrorResponse() {
         return error;
     }
+
+    /**
+     * The outcome of an IsUserAdmin request, shared by every caller that waited for it.
+     */
+    private static final class Lookup {
+        private final Optional<Boolean> admin;
+        private final RpdErrorResponse error;
+
+        private Lookup(Optional<Boolean> admin, RpdErrorResponse error) {
+            this.admin = admin;
+            this.error = error;
+        }
+    }
 }
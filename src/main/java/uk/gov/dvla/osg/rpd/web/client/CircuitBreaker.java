@@ -0,0 +1,152 @@
+package uk.gov.dvla.osg.rpd.web.client;
+
+import java.net.URI;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import uk.gov.dvla.osg.rpd.web.config.NetworkConfig;
+
+/**
+ * Stops requests being sent to an RPD host that is failing.
+ * <p>
+ * The circuit for a host opens after circuitFailureThreshold consecutive
+ * failures, and every request to the host then fails straight away with a
+ * CircuitOpenException rather than waiting for the connect timeout. Once the
+ * circuitOpenTime has passed a single trial request is let through: if it
+ * succeeds the circuit closes, otherwise it opens again.
+ */
+public final class CircuitBreaker {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final ConcurrentMap<String, CircuitBreaker> BREAKERS = new ConcurrentHashMap<>();
+
+    /**
+     * The Enum State.
+     */
+    public enum State {
+        /** Requests are sent. */
+        CLOSED,
+        /** Requests fail fast. */
+        OPEN,
+        /** A trial request is in flight. */
+        HALF_OPEN
+    }
+
+    /**
+     * Gets the breaker for the host of a URL, creating it on first use from the
+     * NetworkConfig settings.
+     *
+     * @param url a URL on the host
+     * @return the breaker for the host
+     */
+    static CircuitBreaker forUrl(String url) {
+        return BREAKERS.computeIfAbsent(endpointOf(url), endpoint -> {
+            NetworkConfig config = NetworkConfig.getInstance();
+            return new CircuitBreaker(endpoint, config.getCircuitFailureThreshold(),
+                    TimeUnit.SECONDS.toNanos(config.getCircuitOpenTime()));
+        });
+    }
+
+    /**
+     * Gets the scheme, host and port of a URL.
+     *
+     * @param url the URL
+     * @return the endpoint, or the URL itself if it cannot be parsed
+     */
+    private static String endpointOf(String url) {
+        try {
+            URI uri = URI.create(url);
+            return uri.getAuthority() == null ? url : uri.getScheme() + "://" + uri.getAuthority();
+        } catch (IllegalArgumentException ex) {
+            return url;
+        }
+    }
+
+    private final String endpoint;
+    private final int failureThreshold;
+    private final long openNanos;
+    private State state = State.CLOSED;
+    private int failures = 0;
+    private long openUntil;
+
+    /**
+     * Instantiates a new circuit breaker.
+     *
+     * @param endpoint the host
+     * @param failureThreshold consecutive failures before the circuit opens
+     * @param openNanos the time the circuit stays open
+     */
+    private CircuitBreaker(String endpoint, int failureThreshold, long openNanos) {
+        this.endpoint = endpoint;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openNanos = openNanos;
+    }
+
+    /**
+     * Checks that a request may be sent. Must be followed by a call to onSuccess
+     * or onFailure once the request completes.
+     *
+     * @throws CircuitOpenException if the circuit is open or a trial request is already in flight
+     */
+    synchronized void acquire() throws CircuitOpenException {
+        if (state == State.CLOSED) {
+            return;
+        }
+        long now = System.nanoTime();
+        long remaining = openUntil - now;
+        if (remaining <= 0) {
+            // Also lets another trial through if the last one never reported back
+            state = State.HALF_OPEN;
+            openUntil = now + openNanos;
+            return;
+        }
+        throw new CircuitOpenException(endpoint, Math.max(0, TimeUnit.NANOSECONDS.toMillis(remaining)));
+    }
+
+    /**
+     * Records a successful request, closing the circuit.
+     */
+    synchronized void onSuccess() {
+        if (state != State.CLOSED) {
+            LOGGER.info("Circuit to {} closed", endpoint);
+        }
+        state = State.CLOSED;
+        failures = 0;
+    }
+
+    /**
+     * Records a failed request, opening the circuit if the threshold is reached
+     * or the trial request failed.
+     */
+    synchronized void onFailure() {
+        if (state == State.HALF_OPEN || ++failures >= failureThreshold) {
+            LOGGER.warn("Circuit to {} opened for {}s", endpoint, TimeUnit.NANOSECONDS.toSeconds(openNanos));
+            state = State.OPEN;
+            openUntil = System.nanoTime() + openNanos;
+            failures = 0;
+        }
+    }
+
+    /**
+     * Gets the state of the circuit.
+     *
+     * @return the state
+     */
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Gets the host the breaker protects.
+     *
+     * @return the scheme, host and port
+     */
+    public String getEndpoint() {
+        return endpoint;
+    }
+}
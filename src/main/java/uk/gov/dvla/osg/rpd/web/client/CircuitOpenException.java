@@ -0,0 +1,34 @@
+package uk.gov.dvla.osg.rpd.web.client;
+
+import javax.ws.rs.ProcessingException;
+
+/**
+ * Thrown instead of sending a request to an RPD host whose circuit breaker is
+ * open, because recent requests to it have failed.
+ */
+public class CircuitOpenException extends ProcessingException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long retryAfterMillis;
+
+    /**
+     * Instantiates a new circuit open exception.
+     *
+     * @param endpoint the host
+     * @param retryAfterMillis the time until a trial request will be let through
+     */
+    CircuitOpenException(String endpoint, long retryAfterMillis) {
+        super("Requests to " + endpoint + " are paused after repeated failures");
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    /**
+     * Gets the time until a trial request will be let through to the host.
+     *
+     * @return the time in milliseconds
+     */
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
@@ -0,0 +1,291 @@
+package uk.gov.dvla.osg.rpd.web.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import uk.gov.dvla.osg.rpd.web.config.NetworkConfig;
+
+/**
+ * Spreads requests across the RPD hosts listed in the NetworkConfig.
+ * <p>
+ * Each request goes to the better of two hosts picked at random, judged by the
+ * moving average of their response times multiplied by the number of requests
+ * they already have in flight. A host that fails ejectAfterFailures times in a
+ * row is left out for the ejectionTime. After that a single probe request is
+ * let through to it: if the probe succeeds the host is re-admitted, otherwise it
+ * is left out again. If every host is out the one due back soonest is used, so
+ * requests are never refused outright. Only the outcome of the probe decides
+ * whether a host that is out is re-admitted or left out for longer.
+ */
+public final class EndpointBalancer {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    // Weight of the latest response time in the moving average
+    private static final double EWMA_WEIGHT = 0.3;
+
+    /**
+     * ****************************************************************************************
+     *                              SINGLETON PATTERN
+     * ****************************************************************************************.
+     */
+
+    private static EndpointBalancer instance;
+
+    /**
+     * Gets the shared balancer, creating it from the NetworkConfig on first use.
+     *
+     * @return the shared balancer
+     */
+    public static synchronized EndpointBalancer getInstance() {
+        if (instance == null) {
+            NetworkConfig config = NetworkConfig.getInstance();
+            instance = new EndpointBalancer(config.getUrlBases(), config.getEjectAfterFailures(),
+                    TimeUnit.SECONDS.toNanos(config.getEjectionTime()));
+        }
+        return instance;
+    }
+
+    /** **************************************************************************************. */
+
+    private final List<Endpoint> endpoints;
+    private final int ejectAfterFailures;
+    private final long ejectionNanos;
+
+    /**
+     * Instantiates a new endpoint balancer.
+     *
+     * @param urlBases the base URL of each host, the first being the one in the configured URLs
+     * @param ejectAfterFailures consecutive failures before a host is left out
+     * @param ejectionNanos the time a host is left out before it is probed
+     */
+    private EndpointBalancer(List<String> urlBases, int ejectAfterFailures, long ejectionNanos) {
+        List<Endpoint> list = new ArrayList<>(urlBases.size());
+        for (String base : urlBases) {
+            list.add(new Endpoint(base));
+        }
+        this.endpoints = Collections.unmodifiableList(list);
+        this.ejectAfterFailures = Math.max(1, ejectAfterFailures);
+        this.ejectionNanos = ejectionNanos;
+    }
+
+    /**
+     * Gets the URL base that configured URLs begin with.
+     *
+     * @return the first URL base
+     */
+    String getPrimaryBase() {
+        return endpoints.get(0).urlBase;
+    }
+
+    /**
+     * Checks if there is more than one host to choose from.
+     *
+     * @return true if requests are balanced
+     */
+    boolean isBalancing() {
+        return endpoints.size() > 1;
+    }
+
+    /**
+     * Chooses the host for the next request. The caller must pass the lease to
+     * complete once the request has finished, or to release if it was never sent.
+     *
+     * @return the lease on the chosen endpoint
+     */
+    Lease select() {
+        long now = System.nanoTime();
+        Endpoint first = null;
+        Endpoint second = null;
+        int healthy = 0;
+        // Reservoir sample two healthy hosts in a single pass
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.isHealthy()) {
+                healthy++;
+                if (first == null) {
+                    first = endpoint;
+                } else if (second == null) {
+                    second = endpoint;
+                } else {
+                    int slot = ThreadLocalRandom.current().nextInt(healthy);
+                    if (slot == 0) {
+                        first = endpoint;
+                    } else if (slot == 1) {
+                        second = endpoint;
+                    }
+                }
+            } else if (endpoint.ejectedUntil - now <= 0 && endpoint.probing.compareAndSet(false, true)) {
+                // Ejection has expired, this request is the probe
+                LOGGER.info("Probing RPD host {}", endpoint.urlBase);
+                return endpoint.begin(true);
+            }
+        }
+        if (first == null) {
+            Endpoint soonest = endpoints.get(0);
+            for (Endpoint endpoint : endpoints) {
+                if (endpoint.ejectedUntil - soonest.ejectedUntil < 0) {
+                    soonest = endpoint;
+                }
+            }
+            return soonest.begin(false);
+        }
+        if (second == null) {
+            return first.begin(false);
+        }
+        return (first.score() <= second.score() ? first : second).begin(false);
+    }
+
+    /**
+     * Records the outcome of a request. A failure only counts against a host that
+     * is out if the request was its probe, so that requests sent there because
+     * every host is out do not keep extending its ejection.
+     *
+     * @param lease the lease from select
+     * @param elapsedNanos the time the request took
+     * @param success false if the host could not be reached or returned a server error
+     */
+    void complete(Lease lease, long elapsedNanos, boolean success) {
+        Endpoint endpoint = lease.endpoint;
+        endpoint.inFlight.decrementAndGet();
+        synchronized (endpoint) {
+            endpoint.latencyNanos = endpoint.latencyNanos == 0
+                    ? elapsedNanos
+                    : EWMA_WEIGHT * elapsedNanos + (1 - EWMA_WEIGHT) * endpoint.latencyNanos;
+            if (success) {
+                if (!endpoint.healthy) {
+                    LOGGER.info("RPD host {} re-admitted", endpoint.urlBase);
+                }
+                endpoint.failures = 0;
+                endpoint.healthy = true;
+            } else if (lease.probe || endpoint.healthy && ++endpoint.failures >= ejectAfterFailures) {
+                LOGGER.warn("RPD host {} ejected for {}s", endpoint.urlBase, TimeUnit.NANOSECONDS.toSeconds(ejectionNanos));
+                endpoint.healthy = false;
+                endpoint.ejectedUntil = System.nanoTime() + ejectionNanos;
+            }
+            if (lease.probe) {
+                endpoint.probing.set(false);
+            }
+        }
+    }
+
+    /**
+     * Returns a lease without recording an outcome, for a request that was never
+     * sent. A probe that is released is chosen again by a later request.
+     *
+     * @param lease the lease from select
+     */
+    void release(Lease lease) {
+        lease.endpoint.inFlight.decrementAndGet();
+        if (lease.probe) {
+            lease.endpoint.probing.set(false);
+        }
+    }
+
+    /**
+     * Gets the hosts and their current state.
+     *
+     * @return the endpoints
+     */
+    public List<Endpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    /**
+     * An RPD host and its health.
+     */
+    public static final class Endpoint {
+        private final String urlBase;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicBoolean probing = new AtomicBoolean(false);
+        private volatile double latencyNanos = 0;
+        private volatile boolean healthy = true;
+        private volatile long ejectedUntil;
+        private int failures = 0;
+
+        private Endpoint(String urlBase) {
+            this.urlBase = urlBase;
+        }
+
+        private Lease begin(boolean probe) {
+            inFlight.incrementAndGet();
+            return new Lease(this, probe);
+        }
+
+        private double score() {
+            // Untried hosts score as fast so that they are given a chance
+            return latencyNanos * (inFlight.get() + 1);
+        }
+
+        /**
+         * Gets the base URL of the host.
+         *
+         * @return the protocol, host and port
+         */
+        public String getUrlBase() {
+            return urlBase;
+        }
+
+        /**
+         * Gets the moving average response time of the host.
+         *
+         * @return the response time in milliseconds
+         */
+        public long getLatencyMillis() {
+            return TimeUnit.NANOSECONDS.toMillis((long) latencyNanos);
+        }
+
+        /**
+         * Gets the number of requests in flight to the host.
+         *
+         * @return the in flight count
+         */
+        public int getInFlight() {
+            return inFlight.get();
+        }
+
+        /**
+         * Checks if the host is receiving requests.
+         *
+         * @return false if the host has been ejected
+         */
+        public boolean isHealthy() {
+            return healthy;
+        }
+
+        @Override
+        public String toString() {
+            return urlBase + (healthy ? "" : " (ejected)") + " " + getLatencyMillis() + "ms";
+        }
+    }
+
+    /**
+     * The use of an endpoint by a single request.
+     */
+    static final class Lease {
+        private final Endpoint endpoint;
+        // True if the request is the probe of an ejected host
+        private final boolean probe;
+
+        private Lease(Endpoint endpoint, boolean probe) {
+            this.endpoint = endpoint;
+            this.probe = probe;
+        }
+
+        /**
+         * Gets the endpoint the request is sent to.
+         *
+         * @return the endpoint
+         */
+        Endpoint getEndpoint() {
+            return endpoint;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package uk.gov.dvla.osg.rpd.web.client;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+import uk.gov.dvla.osg.rpd.web.error.RpdErrorResponse;
+import uk.gov.dvla.osg.vault.data.VaultStock;
+
+/**
+ * The outcome of querying the vault on every RPD host. Holds the stock merged
+ * from the hosts that responded and the error from each host that did not.
+ */
+public class FanOutResult {
+
+    private final VaultStock stock;
+    private final List<String> responded;
+    private final Map<String, RpdErrorResponse> failures;
+
+    /**
+     * Instantiates a new fan out result.
+     *
+     * @param stock the merged stock, or null if no host responded
+     * @param responded the vault urls of the hosts that responded
+     * @param failures the error for each vault url that failed
+     */
+    FanOutResult(VaultStock stock, List<String> responded, Map<String, RpdErrorResponse> failures) {
+        this.stock = stock;
+        this.responded = Collections.unmodifiableList(responded);
+        this.failures = Collections.unmodifiableMap(failures);
+    }
+
+    /**
+     * Gets the stock merged from every host that responded.
+     *
+     * @return the merged stock, or an empty optional if every host failed
+     */
+    public Optional<VaultStock> getStock() {
+        return Optional.ofNullable(stock);
+    }
+
+    /**
+     * Gets the hosts that responded.
+     *
+     * @return the vault urls of the hosts that responded
+     */
+    public List<String> getResponded() {
+        return responded;
+    }
+
+    /**
+     * Gets the error from each host that failed or timed out.
+     *
+     * @return the error response by vault url
+     */
+    public Map<String, RpdErrorResponse> getFailures() {
+        return failures;
+    }
+
+    /**
+     * Checks if every host responded.
+     *
+     * @return true if no host failed
+     */
+    public boolean isComplete() {
+        return failures.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("responded", responded)
+                .append("failures", failures)
+                .toString();
+    }
+}
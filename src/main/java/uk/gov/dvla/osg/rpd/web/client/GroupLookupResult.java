@@ -0,0 +1,65 @@
+package uk.gov.dvla.osg.rpd.web.client;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+import uk.gov.dvla.osg.rpd.web.error.RpdErrorResponse;
+
+/**
+ * The outcome of checking the group membership of several users. Holds the admin
+ * flag of each user that was resolved and the error for each user that was not.
+ */
+public class GroupLookupResult {
+
+    private final Map<String, Boolean> admins;
+    private final Map<String, RpdErrorResponse> failures;
+
+    /**
+     * Instantiates a new group lookup result.
+     *
+     * @param admins the admin flag by user name
+     * @param failures the error by user name
+     */
+    GroupLookupResult(Map<String, Boolean> admins, Map<String, RpdErrorResponse> failures) {
+        this.admins = Collections.unmodifiableMap(admins);
+        this.failures = Collections.unmodifiableMap(failures);
+    }
+
+    /**
+     * Gets the users that were resolved.
+     *
+     * @return true for each user in the Dev group, false for every other user, by user name
+     */
+    public Map<String, Boolean> getAdmins() {
+        return admins;
+    }
+
+    /**
+     * Gets the error for each user that could not be resolved.
+     *
+     * @return the error response by user name
+     */
+    public Map<String, RpdErrorResponse> getFailures() {
+        return failures;
+    }
+
+    /**
+     * Checks if every user was resolved.
+     *
+     * @return true if no lookup failed
+     */
+    public boolean isComplete() {
+        return failures.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("admins", admins)
+                .append("failures", failures)
+                .toString();
+    }
+}
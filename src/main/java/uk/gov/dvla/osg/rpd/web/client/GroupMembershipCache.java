@@ -0,0 +1,324 @@
+package uk.gov.dvla.osg.rpd.web.client;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import uk.gov.dvla.osg.rpd.web.config.NetworkConfig;
+import uk.gov.dvla.osg.rpd.web.config.UserSession;
+import uk.gov.dvla.osg.rpd.web.error.RpdErrorResponse;
+
+/**
+ * Caches whether users are members of the Dev group, as returned by the
+ * CheckGroupClient.
+ * <p>
+ * A user's membership is returned from the cache for the time to live, after
+ * which the next check asks RPD again. Once the cache holds the maximum number of
+ * users, the least recently checked user is dropped. Failed lookups are not cached.
+ * <p>
+ * The cache is thread-safe and should be held for the lifetime of the application.
+ */
+public class GroupMembershipCache {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private final NetworkConfig config;
+    private final long ttlNanos;
+    private final Map<String, Membership> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private volatile RpdErrorResponse error = new RpdErrorResponse();
+
+    /**
+     * Creates a cache using the groupCacheTtl and groupCacheSize settings in the config.
+     *
+     * @param config NetworkConfig object holding the check group url.
+     * @return a new GroupMembershipCache
+     */
+    public static GroupMembershipCache getInstance(NetworkConfig config) {
+        return new GroupMembershipCache(config, TimeUnit.SECONDS.toMillis(config.getGroupCacheTtl()), config.getGroupCacheSize());
+    }
+
+    /**
+     * Creates a cache with the given lifetime and size.
+     *
+     * @param config NetworkConfig object holding the check group url.
+     * @param ttlMillis the time a membership is returned without contacting RPD
+     * @param maxEntries the maximum number of users held
+     * @return a new GroupMembershipCache
+     */
+    public static GroupMembershipCache getInstance(NetworkConfig config, long ttlMillis, int maxEntries) {
+        return new GroupMembershipCache(config, ttlMillis, maxEntries);
+    }
+
+    /**
+     * Instantiates a new group membership cache.
+     *
+     * @param config the network config
+     * @param ttlMillis the time to live
+     * @param maxEntries the maximum number of users
+     */
+    private GroupMembershipCache(NetworkConfig config, long ttlMillis, int maxEntries) {
+        this.config = config;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        int capacity = Math.max(1, maxEntries);
+        // Access order, so the eldest entry is the least recently checked
+        this.entries = new LinkedHashMap<String, Membership>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Membership> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Checks if the user of the session is a member of the Dev group.
+     *
+     * @param session the session of the user to check
+     * @return true if the user is an admin, or an empty optional if the lookup
+     *         failed. The error response is available from getErrorResponse.
+     */
+    public Optional<Boolean> isUserAdmin(UserSession session) {
+        return isUserAdmin(session, session.getUserName(), null);
+    }
+
+    /**
+     * Checks if a user is a member of the Dev group, authenticating with the token
+     * of another session.
+     *
+     * @param session the session used to authenticate with RPD
+     * @param userName the RPD login name of the user to check
+     * @return true if the user is an admin, or an empty optional if the lookup failed
+     */
+    public Optional<Boolean> isUserAdmin(UserSession session, String userName) {
+        return isUserAdmin(session, userName, null);
+    }
+
+    /**
+     * Checks a user against the cache, asking RPD on a miss.
+     *
+     * @param session the session used to authenticate with RPD
+     * @param userName the user to check
+     * @param failures receives the error if the lookup fails, or null
+     * @return the admin flag, or an empty optional if the lookup failed
+     */
+    private Optional<Boolean> isUserAdmin(UserSession session, String userName, Map<String, RpdErrorResponse> failures) {
+        Optional<Boolean> cached = get(userName);
+        if (cached.isPresent()) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        misses.incrementAndGet();
+        CheckGroupClient client = CheckGroupClient.getInstance(config, session, userName);
+        Optional<Boolean> admin = client.IsUserAdmin();
+        if (admin.isPresent()) {
+            put(userName, admin.get());
+        } else {
+            error = client.getErrorResponse();
+            if (failures != null) {
+                synchronized (failures) {
+                    failures.put(userName, error);
+                }
+            }
+        }
+        return admin;
+    }
+
+    /**
+     * Checks the group membership of many users, asking RPD for up to the given
+     * number of users at the same time. Users already in the cache are answered
+     * without contacting RPD.
+     *
+     * @param session the session used to authenticate with RPD
+     * @param userNames the RPD login names of the users to check
+     * @param parallelism the maximum number of requests sent at the same time
+     * @return the admin flag of each user that was resolved and the error for each user that was not
+     */
+    public GroupLookupResult resolveAll(UserSession session, Collection<String> userNames, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1 but was " + parallelism);
+        }
+        List<String> users = new ArrayList<>(new LinkedHashSet<>(userNames));
+        Map<String, Boolean> admins = new LinkedHashMap<>();
+        Map<String, RpdErrorResponse> failures = new LinkedHashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String user : users) {
+            Optional<Boolean> cached = get(user);
+            if (cached.isPresent()) {
+                hits.incrementAndGet();
+                admins.put(user, cached.get());
+            } else {
+                missing.add(user);
+            }
+        }
+        if (missing.isEmpty()) {
+            return new GroupLookupResult(admins, failures);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, missing.size()));
+        try {
+            List<Future<Optional<Boolean>>> futures = new ArrayList<>(missing.size());
+            for (String user : missing) {
+                futures.add(executor.submit(() -> isUserAdmin(session, user, failures)));
+            }
+            for (int i = 0; i < missing.size(); i++) {
+                String user = missing.get(i);
+                try {
+                    futures.get(i).get().ifPresent(admin -> admins.put(user, admin));
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    addFailure(failures, user, "Group lookup was interrupted before " + user + " was checked", ex);
+                } catch (ExecutionException ex) {
+                    addFailure(failures, user, "An unknown error occured while checking the groups of " + user, ex);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        if (!failures.isEmpty()) {
+            LOGGER.warn("Unable to check the groups of {} of {} users", failures.size(), users.size());
+        }
+        // Report users in the order they were given
+        Map<String, Boolean> ordered = new LinkedHashMap<>();
+        for (String user : users) {
+            if (admins.containsKey(user)) {
+                ordered.put(user, admins.get(user));
+            }
+        }
+        synchronized (failures) {
+            return new GroupLookupResult(ordered, new LinkedHashMap<>(failures));
+        }
+    }
+
+    /**
+     * Records a lookup that did not complete.
+     *
+     * @param failures the failures
+     * @param user the user
+     * @param message the error message
+     * @param ex the exception
+     */
+    private static void addFailure(Map<String, RpdErrorResponse> failures, String user, String message, Exception ex) {
+        RpdErrorResponse taskError = new RpdErrorResponse();
+        taskError.setCode("Check Group Error:");
+        taskError.setMessage(message);
+        taskError.setAction("Please try again.");
+        taskError.setException(ex);
+        synchronized (failures) {
+            failures.put(user, taskError);
+        }
+    }
+
+    /**
+     * Gets a cached membership that has not expired.
+     *
+     * @param userName the user
+     * @return the admin flag, or an empty optional if it is not cached
+     */
+    private synchronized Optional<Boolean> get(String userName) {
+        Membership entry = entries.get(userName);
+        if (entry == null) {
+            return Optional.empty();
+        }
+        if (System.nanoTime() - entry.expires >= 0) {
+            entries.remove(userName);
+            return Optional.empty();
+        }
+        return Optional.of(entry.admin);
+    }
+
+    /**
+     * Caches a membership.
+     *
+     * @param userName the user
+     * @param admin the admin flag
+     */
+    private synchronized void put(String userName, boolean admin) {
+        entries.put(userName, new Membership(admin, System.nanoTime() + ttlNanos));
+    }
+
+    /**
+     * Removes a user from the cache, so that the next check asks RPD. Call this
+     * when a user is added to or removed from a group.
+     *
+     * @param userName the user
+     */
+    public synchronized void invalidate(String userName) {
+        entries.remove(userName);
+    }
+
+    /**
+     * Removes every user from the cache.
+     */
+    public synchronized void invalidateAll() {
+        entries.clear();
+    }
+
+    /**
+     * Gets the number of users currently cached, including any that have expired
+     * but not yet been checked again.
+     *
+     * @return the number of users
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Gets the number of checks answered from the cache.
+     *
+     * @return the hit count
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Gets the number of checks that had to ask RPD.
+     *
+     * @return the miss count
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Retrieves the error response if an empty optional was returned from the
+     * isUserAdmin method.
+     *
+     * @return an error response object.
+     */
+    public RpdErrorResponse getErrorResponse() {
+        return error;
+    }
+
+    /**
+     * A cached membership and when it expires.
+     */
+    private static final class Membership {
+        private final boolean admin;
+        private final long expires;
+
+        private Membership(boolean admin, long expires) {
+            this.admin = admin;
+            this.expires = expires;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package uk.gov.dvla.osg.rpd.web.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.ConnectionConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.glassfish.jersey.apache.connector.ApacheClientProperties;
+import org.glassfish.jersey.apache.connector.ApacheConnectorProvider;
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.media.multipart.MultiPartFeature;
+
+import uk.gov.dvla.osg.rpd.web.config.NetworkConfig;
+
+/**
+ * Holds the single, long-lived JAX-RS client used to talk to RPD. The client is
+ * backed by a pooled Apache connector so that connections are kept alive and
+ * reused between requests, rather than a new connection being opened for each call.
+ * The client is thread-safe and should be shared by all callers in the JVM.
+ * <p>
+ * The Apache client draws on the same connection pool, for the apache Transport.
+ */
+public final class HttpClientPool implements Closeable {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    /**
+     * ****************************************************************************************
+     *                              SINGLETON PATTERN
+     * ****************************************************************************************.
+     */
+
+    private static HttpClientPool instance;
+
+    /**
+     * Gets the shared pool, creating it from the NetworkConfig on first use or
+     * after the pool has been shut down.
+     *
+     * @return the shared pool
+     */
+    public static synchronized HttpClientPool getInstance() {
+        if (instance == null) {
+            instance = new HttpClientPool(NetworkConfig.getInstance());
+        }
+        return instance;
+    }
+
+    /**
+     * Closes the shared client and all pooled connections. Should be called once
+     * when the application exits. A subsequent call to getInstance will create a new pool.
+     */
+    public static synchronized void shutdown() {
+        if (instance != null) {
+            instance.close();
+            instance = null;
+        }
+    }
+
+    /** **************************************************************************************. */
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final ScheduledExecutorService evictor;
+    private final Client client;
+    private final CloseableHttpClient apacheClient;
+    private final RequestConfig requestConfig;
+
+    /**
+     * Instantiates a new pool using the connection settings in the config.
+     *
+     * @param config the network configuration
+     */
+    private HttpClientPool(NetworkConfig config) {
+        connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(config.getMaxConnections());
+        connectionManager.setDefaultMaxPerRoute(config.getMaxConnectionsPerRoute());
+        // Socket buffer, and chunk size for streamed uploads
+        connectionManager.setDefaultConnectionConfig(ConnectionConfig.custom()
+                .setBufferSize(config.getUploadBufferSize())
+                .build());
+        // Stale connections are checked before reuse once they have been idle this long
+        connectionManager.setValidateAfterInactivity(1000);
+
+        // Use the Keep-Alive header sent by RPD, falling back to the configured timeout
+        long keepAliveMillis = TimeUnit.SECONDS.toMillis(config.getKeepAliveTimeout());
+        ConnectionKeepAliveStrategy keepAlive = (response, context) -> {
+            long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return duration > 0 ? duration : keepAliveMillis;
+        };
+
+        requestConfig = RequestConfig.custom()
+                .setConnectTimeout(config.getConnectTimeout())
+                .setConnectionRequestTimeout(config.getConnectTimeout())
+                .setSocketTimeout(config.getReadTimeout())
+                .build();
+
+        ClientConfig clientConfig = new ClientConfig()
+                .connectorProvider(new ApacheConnectorProvider())
+                .property(ApacheClientProperties.CONNECTION_MANAGER, connectionManager)
+                .property(ApacheClientProperties.CONNECTION_MANAGER_SHARED, false)
+                .property(ApacheClientProperties.KEEPALIVE_STRATEGY, keepAlive)
+                .property(ApacheClientProperties.REQUEST_CONFIG, requestConfig)
+                .property(ClientProperties.CONNECT_TIMEOUT, config.getConnectTimeout())
+                .property(ClientProperties.READ_TIMEOUT, config.getReadTimeout())
+                .property(ClientProperties.CHUNKED_ENCODING_SIZE, config.getUploadBufferSize())
+                .register(MultiPartFeature.class);
+
+        client = ClientBuilder.newClient(clientConfig);
+
+        apacheClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setConnectionManagerShared(true)
+                .setKeepAliveStrategy(keepAlive)
+                .setDefaultRequestConfig(requestConfig)
+                .build();
+
+        // Background eviction of expired and idle connections
+        int idleTimeout = config.getIdleConnectionTimeout();
+        evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rpd-connection-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        evictor.scheduleWithFixedDelay(() -> {
+            connectionManager.closeExpiredConnections();
+            connectionManager.closeIdleConnections(idleTimeout, TimeUnit.SECONDS);
+        }, idleTimeout, idleTimeout, TimeUnit.SECONDS);
+
+        LOGGER.debug("Connection pool created. Max total {}, max per route {}",
+                config.getMaxConnections(), config.getMaxConnectionsPerRoute());
+    }
+
+    /**
+     * Gets the shared JAX-RS client.
+     *
+     * @return the client
+     */
+    public Client getClient() {
+        return client;
+    }
+
+    /**
+     * Gets the timeouts used by the shared Apache client.
+     *
+     * @return the default request config
+     */
+    public RequestConfig getRequestConfig() {
+        return requestConfig;
+    }
+
+    /**
+     * Gets the shared Apache client, used by the apache Transport. Callers must not close it.
+     *
+     * @return the client
+     */
+    public CloseableHttpClient getApacheClient() {
+        return apacheClient;
+    }
+
+    /**
+     * Stops the eviction thread and closes the clients along with their pooled connections.
+     */
+    @Override
+    public void close() {
+        evictor.shutdownNow();
+        client.close();
+        try {
+            apacheClient.close();
+        } catch (IOException ex) {
+            LOGGER.warn("Unable to close the Apache client", ex);
+        }
+        connectionManager.shutdown();
+        LOGGER.debug("Connection pool closed");
+    }
+}
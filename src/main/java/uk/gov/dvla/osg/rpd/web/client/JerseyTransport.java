@@ -0,0 +1,153 @@
+package uk.gov.dvla.osg.rpd.web.client;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.Form;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.client.RequestEntityProcessing;
+import org.glassfish.jersey.media.multipart.BodyPart;
+import org.glassfish.jersey.media.multipart.FormDataBodyPart;
+import org.glassfish.jersey.media.multipart.FormDataContentDisposition;
+import org.glassfish.jersey.media.multipart.MultiPart;
+import org.glassfish.jersey.media.multipart.file.FileDataBodyPart;
+
+import uk.gov.dvla.osg.rpd.web.client.TransportRequest.Part;
+
+/**
+ * Sends requests with the shared JAX-RS client held by the HttpClientPool.
+ */
+final class JerseyTransport implements Transport {
+
+    @Override
+    public String getName() {
+        return TransportType.JERSEY.getName();
+    }
+
+    @Override
+    public TransportResponse send(TransportRequest request) {
+        MultiPart multiPart = toMultiPart(request.getPart());
+        try (Response response = invocation(request).method(request.getMethod(), entity(request, multiPart))) {
+            return toTransportResponse(response);
+        } finally {
+            cleanup(multiPart);
+        }
+    }
+
+    @Override
+    public CompletionStage<TransportResponse> sendAsync(TransportRequest request) {
+        MultiPart multiPart = toMultiPart(request.getPart());
+        CompletionStage<Response> stage;
+        try {
+            stage = invocation(request).rx().method(request.getMethod(), entity(request, multiPart));
+        } catch (RuntimeException ex) {
+            cleanup(multiPart);
+            throw ex;
+        }
+        return stage.thenApply(response -> {
+            try (Response closeable = response) {
+                return toTransportResponse(closeable);
+            }
+        }).whenComplete((response, throwable) -> cleanup(multiPart));
+    }
+
+    /**
+     * Builds the invocation for a request, without its body.
+     *
+     * @param request the request
+     * @return the invocation builder
+     */
+    private static Invocation.Builder invocation(TransportRequest request) {
+        WebTarget target = HttpClientPool.getInstance().getClient().target(request.getUrl());
+        for (Map.Entry<String, String> param : request.getQueryParams().entrySet()) {
+            target = target.queryParam(param.getKey(), param.getValue());
+        }
+        if (request.isChunked()) {
+            target = target.property(ClientProperties.REQUEST_ENTITY_PROCESSING, RequestEntityProcessing.CHUNKED);
+        }
+        if (request.getTimeoutMillis() > 0) {
+            target = target.property(ClientProperties.CONNECT_TIMEOUT, request.getTimeoutMillis())
+                           .property(ClientProperties.READ_TIMEOUT, request.getTimeoutMillis());
+        }
+        Invocation.Builder builder = target.request(MediaType.APPLICATION_JSON);
+        request.getHeaders().forEach(builder::header);
+        return builder;
+    }
+
+    /**
+     * Creates the entity for the body of a request.
+     *
+     * @param request the request
+     * @param multiPart the multipart body, or null
+     * @return the entity, or null if the request has no body
+     */
+    private static Entity<?> entity(TransportRequest request, MultiPart multiPart) {
+        if (request.getForm() != null) {
+            Form form = new Form();
+            request.getForm().forEach(form::param);
+            return Entity.form(form);
+        }
+        if (request.getJson() != null) {
+            return Entity.json(request.getJson());
+        }
+        if (multiPart != null) {
+            return Entity.entity(multiPart, multiPart.getMediaType());
+        }
+        return null;
+    }
+
+    /**
+     * Wraps the file of a request in a MultiPart.
+     *
+     * @param part the file, or null
+     * @return the MultiPart, or null if there is no file
+     */
+    private static MultiPart toMultiPart(Part part) {
+        if (part == null) {
+            return null;
+        }
+        BodyPart bodyPart;
+        if (part.getFile() != null) {
+            bodyPart = new FileDataBodyPart(part.getName(), part.getFile(), part.getMediaType());
+        } else {
+            FormDataBodyPart formPart = new FormDataBodyPart(part.getName(), part.getWriter(), part.getMediaType());
+            formPart.setFormDataContentDisposition(FormDataContentDisposition.name(part.getName())
+                                                                            .fileName(part.getFileName())
+                                                                            .size(part.getLength())
+                                                                            .build());
+            bodyPart = formPart;
+        }
+        return new MultiPart(MediaType.MULTIPART_FORM_DATA_TYPE).bodyPart(bodyPart);
+    }
+
+    /**
+     * Deletes any temporary files held by a MultiPart once it has been sent.
+     *
+     * @param multiPart the MultiPart, or null
+     */
+    private static void cleanup(MultiPart multiPart) {
+        if (multiPart != null) {
+            multiPart.cleanup();
+        }
+    }
+
+    /**
+     * Reads a JAX-RS response in full.
+     *
+     * @param response the response
+     * @return the transport response
+     */
+    private static TransportResponse toTransportResponse(Response response) {
+        Map<String, List<String>> headers = new LinkedHashMap<>(response.getStringHeaders());
+        String body = response.hasEntity() ? response.readEntity(String.class) : "";
+        return new TransportResponse(response.getStatus(), headers, body);
+    }
+}
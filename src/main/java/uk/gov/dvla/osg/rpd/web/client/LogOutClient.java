@@ -1,14 +1,16 @@
 package uk.gov.dvla.osg.rpd.web.client;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
 import javax.ws.rs.ProcessingException;
 import javax.ws.rs.core.MediaType;
-import javax.ws.rs.core.Response;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import uk.gov.dvla.osg.rpd.web.config.NetworkConfig;
-import uk.gov.dvla.osg.rpd.web.config.Session;
+import uk.gov.dvla.osg.rpd.web.config.UserSession;
 import uk.gov.dvla.osg.rpd.web.error.RpdErrorResponse;
 import uk.gov.dvla.osg.rpd.web.json.JsonUtils;
 
@@ -18,24 +20,40 @@ public class LogOutClient {
     
     private RpdErrorResponse error = new RpdErrorResponse();
     private String url;
+    private final UserSession session;
     
     /**
-     * Gets a new instance of the RpdLoginClient
+     * Gets a new instance of the LogOutClient for the user in the Session singleton.
      * 
      * @param config
-     * @return a new instance of the RpdLoginClient.
+     * @return a new instance of the LogOutClient.
+     * @deprecated use getInstance(NetworkConfig, UserSession)
      */
+    @Deprecated
     public static LogOutClient getInstance(NetworkConfig config) {
-        return new LogOutClient(config);
+        return new LogOutClient(config, uk.gov.dvla.osg.rpd.web.config.Session.getInstance().toUserSession());
+    }
+
+    /**
+     * Gets a new instance of the LogOutClient for a user.
+     * 
+     * @param config
+     * @param session the session to end
+     * @return a new instance of the LogOutClient.
+     */
+    public static LogOutClient getInstance(NetworkConfig config, UserSession session) {
+        return new LogOutClient(config, session);
     }
 
     /**
-     * Instantiates a new rpd login client.
+     * Instantiates a new log out client.
      *
      * @param config the config
+     * @param session the session
      */
-    private LogOutClient(NetworkConfig config) {
-        this.url = config.getLogoutUrl() + Session.getInstance().getUserName();
+    private LogOutClient(NetworkConfig config, UserSession session) {
+        this.url = config.getLogoutUrl() + session.getUserName();
+        this.session = session;
     }
     
     /**
@@ -45,43 +63,92 @@ public class LogOutClient {
      */
     public boolean logOut() {
         
-        try (Response response = RestClient.rpdLogOut(url)) {
-            MediaType mediaType = response.getMediaType();
-            String data = response.readEntity(String.class);
-            
-            if (response.getStatus() == 200) {
-                LOGGER.trace(data);
-                return true;
-             } else if (mediaType.equals(MediaType.APPLICATION_JSON_TYPE)) {
-                    // RPD provides clear error information, and so is mapped to model
-                    error = JsonUtils.getError(data);
-                } else {
-                    error.setCode("Check Group Error:");
-                    error.setMessage("Response is not JSON!");
-                    error.setAction("Please notify Dev Team.");
-                }
-            } catch (ProcessingException ex) {
-                error.setCode("Check Group Error:");
-                error.setMessage("Unable to connect to RPD web service. Connection timed out");
-                error.setAction("Please wait a few minutes and then try again.");
-                error.setException(ex);
-            } catch (NullPointerException ex) {
-                error.setCode("Check Group Error:");
-                error.setMessage("Unable to connect to RPD web service. Invalid IP address for RPD");
-                error.setAction("To resolve, check all parts of the login URL in the application config file.");
-                error.setException(ex);
-            } catch (IllegalArgumentException ex) {
-                error.setCode("Check Group Error:");
-                error.setMessage("Invalid URL in config file [" + url + "]. Please check configuration.");
-                error.setAction("To resolve, check all parts of the login URL in the application config file. This problem is usually caused by either a missing value in the URL or an illegal character.");
-                error.setException(ex);
-            } catch (Exception ex) {
-                error.setCode("Check Group Error:");
-                error.setMessage("An unknown error occured while attempting to login to RPD");
-                error.setAction("Please notify Dev Team.");
-                error.setException(ex);
-            }
-            return false;
+        try {
+            TransportResponse response = Transports.getInstance().send(RpdRequests.logOut(url, session.getUserName(), session.getToken()));
+            return handleResponse(response);
+        } catch (Exception ex) {
+            handleException(ex);
+        }
+        return false;
+    }
+    
+    /**
+     * Non-blocking version of logOut. The request is sent through the Transport
+     * and the response is processed on the supplied executor.
+     *
+     * @param executor the executor used to process the response
+     * @return a future holding true if the user was logged out
+     */
+    public CompletableFuture<Boolean> logOutAsync(Executor executor) {
+        return Transports.getInstance().sendAsync(RpdRequests.logOut(url, session.getUserName(), session.getToken()))
+                .handleAsync((response, throwable) -> {
+                    if (throwable != null) {
+                        handleException(RestClient.unwrap(throwable));
+                        return false;
+                    }
+                    try {
+                        return handleResponse(response);
+                    } catch (Exception ex) {
+                        handleException(ex);
+                        return false;
+                    }
+                }, executor)
+                .toCompletableFuture();
+    }
+    
+    /**
+     * Checks the logout response, mapping the error information if it failed.
+     *
+     * @param response the response from RPD
+     * @return true if the user was logged out
+     */
+    private boolean handleResponse(TransportResponse response) {
+        MediaType mediaType = response.getMediaType();
+        String data = response.getBody();
+        
+        if (response.getStatus() == 200) {
+            LOGGER.trace(data);
+            return true;
+        } else if (mediaType.equals(MediaType.APPLICATION_JSON_TYPE)) {
+            // RPD provides clear error information, and so is mapped to model
+            error = JsonUtils.getError(data);
+        } else {
+            error.setCode("Check Group Error:");
+            error.setMessage("Response is not JSON!");
+            error.setAction("Please notify Dev Team.");
+        }
+        return false;
+    }
+    
+    /**
+     * Maps an exception raised while contacting RPD to the error response.
+     *
+     * @param ex the exception
+     */
+    private void handleException(Exception ex) {
+        if (ex instanceof CircuitOpenException) {
+            error.setCode("Check Group Error:");
+            error.setMessage("Requests to RPD are paused after repeated failures. Retrying in "
+                    + (((CircuitOpenException) ex).getRetryAfterMillis() / 1000 + 1) + " seconds");
+            error.setAction("Please wait a few minutes and then try again. If the problem persits, please contact Dev team.");
+        } else if (ex instanceof ProcessingException) {
+            error.setCode("Check Group Error:");
+            error.setMessage("Unable to connect to RPD web service. Connection timed out");
+            error.setAction("Please wait a few minutes and then try again.");
+        } else if (ex instanceof NullPointerException) {
+            error.setCode("Check Group Error:");
+            error.setMessage("Unable to connect to RPD web service. Invalid IP address for RPD");
+            error.setAction("To resolve, check all parts of the login URL in the application config file.");
+        } else if (ex instanceof IllegalArgumentException) {
+            error.setCode("Check Group Error:");
+            error.setMessage("Invalid URL in config file [" + url + "]. Please check configuration.");
+            error.setAction("To resolve, check all parts of the login URL in the application config file. This problem is usually caused by either a missing value in the URL or an illegal character.");
+        } else {
+            error.setCode("Check Group Error:");
+            error.setMessage("An unknown error occured while attempting to login to RPD");
+            error.setAction("Please notify Dev Team.");
+        }
+        error.setException(ex);
     }
     
     /**
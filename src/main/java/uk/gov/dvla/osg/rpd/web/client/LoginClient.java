@@ -1,15 +1,17 @@
 package uk.gov.dvla.osg.rpd.web.client;
 
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 import javax.ws.rs.ProcessingException;
 import javax.ws.rs.core.MediaType;
-import javax.ws.rs.core.Response;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import uk.gov.dvla.osg.rpd.web.config.NetworkConfig;
+import uk.gov.dvla.osg.rpd.web.config.UserSession;
 import uk.gov.dvla.osg.rpd.web.error.RpdErrorResponse;
 import uk.gov.dvla.osg.rpd.web.json.JsonUtils;
 
@@ -23,6 +25,8 @@ public class LoginClient {
     
     private RpdErrorResponse error = new RpdErrorResponse();
     private final String url;
+    // True if the last login failed because RPD could not be reached or had a server error
+    private boolean unavailable = false;
 
     /**
      * Gets a new instance of the RpdLoginClient
@@ -52,51 +56,129 @@ public class LoginClient {
      *         conditions an empty optional.
      */
     public Optional<String> getSessionToken(String userName, String password) {
-        try (Response response = RestClient.rpdLogin(url, userName, password)) {
+        try {
+            TransportResponse response = Transports.getInstance().send(RpdRequests.login(url, userName, password));
+            return handleResponse(response);
+        } catch (Exception ex) {
+            handleException(ex);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Logs the user in to RPD.
+     * 
+     * @param userName the RPD login name of the user.
+     * @param password the RPD password for the user.
+     * @return the session for the user if the credentials are valid, for all
+     *         other conditions an empty optional.
+     */
+    public Optional<UserSession> login(String userName, String password) {
+        return getSessionToken(userName, password).map(token -> UserSession.of(userName, token));
+    }
+
+    /**
+     * Non-blocking version of getSessionToken. The request is sent through the
+     * Transport and the response is processed on the supplied executor.
+     * 
+     * @param userName the RPD login name of the user.
+     * @param password the RPD password for the user.
+     * @param executor the executor used to process the response.
+     * @return a future holding the session token if the credentials are valid, for
+     *         all other conditions an empty optional.
+     */
+    public CompletableFuture<Optional<String>> getSessionTokenAsync(String userName, String password, Executor executor) {
+        return Transports.getInstance().sendAsync(RpdRequests.login(url, userName, password))
+                .handleAsync((response, throwable) -> {
+                    if (throwable != null) {
+                        handleException(RestClient.unwrap(throwable));
+                        return Optional.<String>empty();
+                    }
+                    try {
+                        return handleResponse(response);
+                    } catch (Exception ex) {
+                        handleException(ex);
+                        return Optional.<String>empty();
+                    }
+                }, executor)
+                .toCompletableFuture();
+    }
+
+    /**
+     * Extracts the session token from the login response, or maps the error
+     * information if the login was unsuccessful.
+     * 
+     * @param response the response from RPD.
+     * @return the session token, or an empty optional if login failed.
+     */
+    private Optional<String> handleResponse(TransportResponse response) {
+        String data = response.getBody();
+        unavailable = response.getStatus() >= 500;
+        // If RPD url is incorrect or RPD is not available an HTML response is returned
+        MediaType mediaType = response.getMediaType();
+        
+        if (response.getStatus() == 200 && mediaType.equals(MediaType.APPLICATION_JSON_TYPE)) {
+            LOGGER.trace(data);
+            String token = JsonUtils.getTokenFromJson(data);
+            return Optional.of(token);
+        } else if (mediaType.equals(MediaType.APPLICATION_JSON_TYPE)) {
+            // RPD provides clear error information, and so is mapped to model
+            error = JsonUtils.getError(data);
+        } else {
+            error.setCode("Login Error:");
+            error.setName(data);
+            error.setMessage("Response is not valid JSON!");
+            error.setAction("Please notify Dev Team.");
+        }
+        return Optional.empty();
+    }
 
-            String data = response.readEntity(String.class);
-            // If RPD url is incorrect or RPD is not available an HTML response is returned
-            MediaType mediaType = response.getMediaType();
-            
-            if (response.getStatus() == 200 && mediaType.equals(MediaType.APPLICATION_JSON_TYPE)) {
-                LOGGER.trace(data);
-                String token = JsonUtils.getTokenFromJson(data);
-                return Optional.of(token);
-            } else if (mediaType.equals(MediaType.APPLICATION_JSON_TYPE)) {
-                // RPD provides clear error information, and so is mapped to model
-                error = JsonUtils.getError(data);
-            } else {
-                error.setCode("Login Error:");
-                error.setName(data);
-                error.setMessage("Response is not valid JSON!");
-                error.setAction("Please notify Dev Team.");
-            }
-        } catch (ProcessingException ex) {
+    /**
+     * Maps an exception raised while contacting RPD to the error response.
+     * 
+     * @param ex the exception.
+     */
+    private void handleException(Exception ex) {
+        // Connection failures and timeouts from either transport arrive as ProcessingException
+        unavailable = ex instanceof CircuitOpenException || ex instanceof ProcessingException;
+        if (ex instanceof CircuitOpenException) {
+            error.setCode("Login Error:");
+            error.setMessage("Requests to RPD are paused after repeated failures. Retrying in "
+                    + (((CircuitOpenException) ex).getRetryAfterMillis() / 1000 + 1) + " seconds");
+            error.setAction("Please wait a few minutes and then try again. If the problem persits, please contact Dev team.");
+        } else if (ex instanceof ProcessingException) {
             error.setCode("Login Error:");
             error.setName("Processing Exception");
             error.setMessage("Unable to connect to RPD web service. Connection timed out");
             error.setAction("Please wait a few minutes and then try again.");
-            error.setException(ex);
-        } catch (NullPointerException ex) {
+        } else if (ex instanceof NullPointerException) {
             error.setCode("Login Error:");
             error.setName("NullPointerException");
             error.setMessage("Unable to connect to RPD web service. Invalid IP address for RPD");
             error.setAction("To resolve, check all parts of the login URL in the application config file.");
-            error.setException(ex);
-        } catch (IllegalArgumentException ex) {
+        } else if (ex instanceof IllegalArgumentException) {
             error.setCode("Login Error:");
             error.setName("IllegalArgumentException");
             error.setMessage("Invalid URL in config file [" + url + "]. Please check configuration.");
             error.setAction("To resolve, check all parts of the login URL in the application config file. This problem is usually caused by either a missing value in the URL or an illegal character.");
-            error.setException(ex);
-        } catch (Exception ex) {
+        } else {
             error.setCode("Login Error:");
             error.setName("General Exception");
             error.setMessage("An unknown error occured while attempting to login to RPD");
             error.setAction("Please notify Dev Team.");
-            error.setException(ex);
         }
-        return Optional.empty();
+        error.setException(ex);
+    }
+
+    /**
+     * Checks if the last login failed because RPD could not be reached, timed
+     * out, was paused by the CircuitBreaker or answered with a server error,
+     * rather than because RPD rejected the credentials.
+     * 
+     * @return true if RPD was unavailable
+     */
+    public boolean isUnavailable() {
+        return unavailable;
     }
 
     /**
@@ -1,11 +1,10 @@
 package uk.gov.dvla.osg.rpd.web.client;
 
-import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.client.methods.HttpPatch;
-import org.apache.http.conn.HttpHostConnectException;
-import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import javax.ws.rs.ProcessingException;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -51,33 +50,31 @@ public class PasswordUpdateClient {
      * @return true if password succesfully updated in RPD
      */
     public boolean rpdUpdatePwd(String token, String json) {
-
-        // Create an Apache HttpClient as Jersey client has no PATCH method
-        try (CloseableHttpClient httpclient = HttpClientBuilder.create().build()) {
-            HttpPatch httpPatch = new HttpPatch(url);
-            // Add message headers
-            httpPatch.addHeader("token", token);
-            // Set content type and message body
-            StringEntity params = new StringEntity(json);
-            params.setContentType("application/json");
-            httpPatch.setEntity(params);
-            // Send the request to RPD
-            try (CloseableHttpResponse response = httpclient.execute(httpPatch)) {
-                int statusCode = response.getStatusLine().getStatusCode();
-                LOGGER.trace("Response Code for" + appName + ": " + response.getStatusLine().getStatusCode());
-                // Check the status of the response
-                if (statusCode == 200) {
-                    LOGGER.info(appName + " password updated");
-                    return true;
-                }
-                error.setCode(String.valueOf(statusCode));
-                error.setName("Update Password");
-                error.setMessage("Unable to update password for " + appName + ", Error code = " + statusCode);
-                error.setAction("Please notify Dev Team.");
+        try {
+            // The update is not idempotent, so it is only retried when the
+            // connection could not be made.
+            TransportResponse response = Transports.getInstance().send(RpdRequests.updatePassword(url, token, json));
+            int statusCode = response.getStatus();
+            LOGGER.trace("Response Code for" + appName + ": " + statusCode);
+            // Check the status of the response
+            if (statusCode == 200) {
+                LOGGER.info(appName + " password updated");
+                return true;
             }
-        } catch (HttpHostConnectException ex) {
+            error.setCode(String.valueOf(statusCode));
+            error.setName("Update Password");
+            error.setMessage("Unable to update password for " + appName + ", Error code = " + statusCode);
+            error.setAction("Please notify Dev Team.");
+        } catch (CircuitOpenException ex) {
+            error.setCode("Password Update Error:");
+            error.setName("CircuitOpenException");
+            error.setMessage("Requests to RPD are paused after repeated failures. Retrying in "
+                    + (ex.getRetryAfterMillis() / 1000 + 1) + " seconds");
+            error.setAction("Please wait a few minutes and then try again.");
+            error.setException(ex);
+        } catch (ProcessingException ex) {
             error.setCode("Password Update Error:");
-            error.setName("HttpHostConnectException");
+            error.setName("ProcessingException");
             error.setMessage("Unable to connect to RPD!");
             error.setAction("Please notify Dev Team.");
             error.setException(ex);
@@ -90,4 +87,35 @@ public class PasswordUpdateClient {
         }
         return false;
     }
+
+    /**
+     * Non-blocking version of rpdUpdatePwd. The blocking request is run on the
+     * supplied executor.
+     * 
+     * @param token Session token required by RPD
+     * @param json RPD reqires the HTML body to be in JSON format
+     * @param executor the executor used to send the request
+     * @return a future holding true if password succesfully updated in RPD
+     */
+    public CompletableFuture<Boolean> rpdUpdatePwdAsync(String token, String json, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> rpdUpdatePwd(token, json), executor);
+    }
+
+    /**
+     * Gets the application whose password is updated.
+     * 
+     * @return the application name
+     */
+    public String getAppName() {
+        return appName;
+    }
+
+    /**
+     * Retrieves the error response if false was returned from the rpdUpdatePwd method.
+     * 
+     * @return an error response object.
+     */
+    public RpdErrorResponse getErrorResponse() {
+        return error;
+    }
 }
@@ -1,25 +1,52 @@
 package uk.gov.dvla.osg.rpd.web.client;
 
-import javax.ws.rs.client.ClientBuilder;
+import java.util.Date;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+import javax.ws.rs.ProcessingException;
+
+import javax.ws.rs.client.Client;
 import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.Form;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.client.RequestEntityProcessing;
 import org.glassfish.jersey.media.multipart.MultiPart;
-import org.glassfish.jersey.media.multipart.MultiPartFeature;
 
-import uk.gov.dvla.osg.rpd.web.config.Session;
+import uk.gov.dvla.osg.rpd.web.client.EndpointBalancer.Lease;
 
 /**
  * Utility methods to transmit messages to the RPD REST service.
  * These are set by the RPD REST api and shouldn't be amended.
+ * All requests share the pooled client held by the HttpClientPool.
+ * <p>
+ * The clients send these requests through the configured Transport, built by
+ * RpdRequests. The methods here always use the JAX-RS client and remain for
+ * callers that want a JAX-RS Response.
  */
 public class RestClient {
     
     static final Logger LOGGER = LogManager.getLogger();
+    
+    /**
+     * Gets the shared client from the connection pool.
+     * @return the shared JAX-RS client
+     */
+    private static Client client() {
+        return HttpClientPool.getInstance().getClient();
+    }
 	
     /**
 	 * Sends a login request to RPD using credentials in the Session object.
@@ -32,68 +59,458 @@ public class RestClient {
         formData.param("name", userName);
         formData.param("pwd", password);
         
-        return ClientBuilder.newClient()
-                            .target(url)
-                            .request(MediaType.APPLICATION_JSON)
-                            .post(Entity.form(formData));
+        return execute(url, false, target -> client().target(target)
+                    .request(MediaType.APPLICATION_JSON)
+                    .post(Entity.form(formData)));
 	}
 	
 	/**
-     * Sends a login request to RPD using credentials in the Session object.
-     * @param url RPD login URL in format hostname:port address
-     * @return Response in JSON format, containing a session token for the currently logged in user
+     * Requests vault stock from RPD.
+     * @param url RPD vault URL in format hostname:port address
+     * @param token the session token to authenticate with RPD
+     * @return Response in JSON format
      */
-    public static Response vaultStock(String url) {
-        return ClientBuilder.newClient()
-                            .target(url)
-                            .request(MediaType.APPLICATION_JSON)
-                            .header("token", Session.getInstance().getToken())
-                            .get();
+    public static Response vaultStock(String url, String token) {
+        return execute(url, true, target -> client().target(target)
+                    .request(MediaType.APPLICATION_JSON)
+                    .header("token", token)
+                    .get());
+    }
+    
+    /**
+     * Requests vault stock only if it has changed since the previous response.
+     * @param url RPD vault URL in format hostname:port address
+     * @param token the session token to authenticate with RPD
+     * @param eTag entity tag from the previous response, or null
+     * @param lastModified last modified date from the previous response, or null
+     * @return Response in JSON format, or a 304 response if the stock is unchanged
+     */
+    public static Response vaultStockIfModified(String url, String token, EntityTag eTag, Date lastModified) {
+        return execute(url, true, target -> {
+            Invocation.Builder request = client().target(target)
+                    .request(MediaType.APPLICATION_JSON)
+                    .header("token", token);
+            if (eTag != null) {
+                request.header(HttpHeaders.IF_NONE_MATCH, eTag);
+            }
+            if (lastModified != null) {
+                request.header(HttpHeaders.IF_MODIFIED_SINCE, lastModified);
+            }
+            return request.get();
+        });
     }
     
 	/**
 	 * Requests the RPD Group the currently logged in user belongs to. Requires
 	 * a session token to already be set.
 	 * @param url RPD RestApi URL in format hostname:port address
+	 * @param userName the RPD login name of the user
+	 * @param token the session token to authenticate with RPD
 	 * @return Response in JSON format includes an array of groups to which the user belongs
 	 */
-	public static Response rpdGroup(String url) {
-        return ClientBuilder.newClient()
-                .register(MultiPartFeature.class)
-                .target(url)
-                .queryParam("attribute", "User.Groups")
-                .queryParam("criteria", "\"" + Session.getInstance().getUserName() + "\"")
-                .request(MediaType.APPLICATION_JSON)
-                .header("token", Session.getInstance().getToken())
-                .get();
+	public static Response rpdGroup(String url, String userName, String token) {
+        return execute(url, true, target -> client().target(target)
+                    .queryParam("attribute", "User.Groups")
+                    .queryParam("criteria", "\"" + userName + "\"")
+                    .request(MediaType.APPLICATION_JSON)
+                    .header("token", token)
+                    .get());
 	}
 
 	/**
 	 * Sends files to data input device in RPD. 
 	 * @param url RPD RestApi URL in format hostname:port address
+	 * @param token the session token to authenticate with RPD
 	 * @param multiPart Should contain the file(s) to transmit
 	 * @return 202 status code if file was transmitted successfully
 	 */
-	public static Response rpdSubmit(String url, MultiPart multiPart) {	
+	public static Response rpdSubmit(String url, String token, MultiPart multiPart) {	
         // Send file using the new token
-        return ClientBuilder.newClient()
-                .register(MultiPartFeature.class)
-                .target(url)
-                .request(MediaType.APPLICATION_JSON)
-                .header("token", Session.getInstance().getToken())
-                .post(Entity.entity(multiPart, multiPart.getMediaType()));
+        return execute(url, false, target -> client().target(target)
+                    .request(MediaType.APPLICATION_JSON)
+                    .header("token", token)
+                    .post(Entity.entity(multiPart, multiPart.getMediaType())));
+	}
+	
+	/**
+	 * Streams files to data input device in RPD using chunked transfer encoding,
+	 * so the request entity is never buffered in memory.
+	 * @param url RPD RestApi URL in format hostname:port address
+	 * @param token the session token to authenticate with RPD
+	 * @param multiPart Should contain the file(s) to transmit
+	 * @return 202 status code if file was transmitted successfully
+	 */
+	public static Response rpdSubmitStreaming(String url, String token, MultiPart multiPart) {
+        return execute(url, false, target -> client().target(target)
+                    .property(ClientProperties.REQUEST_ENTITY_PROCESSING, RequestEntityProcessing.CHUNKED)
+                    .request(MediaType.APPLICATION_JSON)
+                    .header("token", token)
+                    .post(Entity.entity(multiPart, multiPart.getMediaType())));
 	}
 	
 	/**
 	 * Log user out of RPD.
 	 * @param url RPD logout URL in format hostname:port address
+	 * @param userName the RPD login name of the user
+	 * @param token the session token to authenticate with RPD
 	 * @return Response in JSON format
 	 */
-	public static Response rpdLogOut(String url) {
-		return ClientBuilder.newClient().target(url)
-				.path(Session.getInstance().getUserName())
-				.request(MediaType.APPLICATION_JSON)
-				.header("token", Session.getInstance().getToken())
-				.post(null);
+	public static Response rpdLogOut(String url, String userName, String token) {
+		return execute(url, false, target -> client().target(target)
+    				.path(userName)
+    				.request(MediaType.APPLICATION_JSON)
+    				.header("token", token)
+    				.post(null));
+	}
+	
+	/**
+	 * Non-blocking version of rpdLogin.
+	 * @param url RPD login URL in format hostname:port address
+	 * @return a stage completed with the login response
+	 */
+	public static CompletionStage<Response> rpdLoginAsync(String url, String userName, String password) {
+        Form formData = new Form();
+        formData.param("name", userName);
+        formData.param("pwd", password);
+        
+        return executeAsync(url, false, target -> client().target(target)
+                    .request(MediaType.APPLICATION_JSON)
+                    .rx()
+                    .post(Entity.form(formData)));
+	}
+	
+	/**
+	 * Non-blocking version of vaultStock.
+	 * @param url RPD vault URL in format hostname:port address
+	 * @param token the session token to authenticate with RPD
+	 * @return a stage completed with the vault stock response
+	 */
+	public static CompletionStage<Response> vaultStockAsync(String url, String token) {
+        return executeAsync(url, true, target -> client().target(target)
+                    .request(MediaType.APPLICATION_JSON)
+                    .header("token", token)
+                    .rx()
+                    .get());
+	}
+	
+	/**
+	 * Non-blocking version of rpdGroup.
+	 * @param url RPD RestApi URL in format hostname:port address
+	 * @param userName the RPD login name of the user
+	 * @param token the session token to authenticate with RPD
+	 * @return a stage completed with the group response
+	 */
+	public static CompletionStage<Response> rpdGroupAsync(String url, String userName, String token) {
+        return executeAsync(url, true, target -> client().target(target)
+                    .queryParam("attribute", "User.Groups")
+                    .queryParam("criteria", "\"" + userName + "\"")
+                    .request(MediaType.APPLICATION_JSON)
+                    .header("token", token)
+                    .rx()
+                    .get());
+	}
+	
+	/**
+	 * Non-blocking version of rpdSubmit. The caller remains responsible for
+	 * closing the MultiPart once the stage has completed.
+	 * @param url RPD RestApi URL in format hostname:port address
+	 * @param token the session token to authenticate with RPD
+	 * @param multiPart Should contain the file(s) to transmit
+	 * @return a stage completed with the submit response
+	 */
+	public static CompletionStage<Response> rpdSubmitAsync(String url, String token, MultiPart multiPart) {
+        return executeAsync(url, false, target -> client().target(target)
+                    .request(MediaType.APPLICATION_JSON)
+                    .header("token", token)
+                    .rx()
+                    .post(Entity.entity(multiPart, multiPart.getMediaType())));
+	}
+	
+	/**
+	 * Non-blocking version of rpdLogOut.
+	 * @param url RPD logout URL in format hostname:port address
+	 * @param userName the RPD login name of the user
+	 * @param token the session token to authenticate with RPD
+	 * @return a stage completed with the logout response
+	 */
+	public static CompletionStage<Response> rpdLogOutAsync(String url, String userName, String token) {
+		return executeAsync(url, false, target -> client().target(target)
+    				.path(userName)
+    				.request(MediaType.APPLICATION_JSON)
+    				.header("token", token)
+    				.rx()
+    				.post(null));
+	}
+	
+    // Requests for the user held in the deprecated Session singleton
+
+    /**
+     * Sends vaultStock for the user in the Session singleton.
+     * @deprecated use vaultStock(String, String) with the token of a UserSession
+     */
+    @Deprecated
+    public static Response vaultStock(String url) {
+        return vaultStock(url, uk.gov.dvla.osg.rpd.web.config.Session.getInstance().getToken());
+    }
+
+    /**
+     * Sends vaultStockIfModified for the user in the Session singleton.
+     * @deprecated use vaultStockIfModified(String, String, EntityTag, Date) with the token of a UserSession
+     */
+    @Deprecated
+    public static Response vaultStockIfModified(String url, EntityTag eTag, Date lastModified) {
+        return vaultStockIfModified(url, uk.gov.dvla.osg.rpd.web.config.Session.getInstance().getToken(), eTag, lastModified);
+    }
+
+    /**
+     * Sends rpdGroup for the user in the Session singleton.
+     * @deprecated use rpdGroup(String, String, String) with the token of a UserSession
+     */
+    @Deprecated
+    public static Response rpdGroup(String url) {
+        return rpdGroup(url, uk.gov.dvla.osg.rpd.web.config.Session.getInstance().getUserName(), uk.gov.dvla.osg.rpd.web.config.Session.getInstance().getToken());
+    }
+
+    /**
+     * Sends rpdSubmit for the user in the Session singleton.
+     * @deprecated use rpdSubmit(String, String, MultiPart) with the token of a UserSession
+     */
+    @Deprecated
+    public static Response rpdSubmit(String url, MultiPart multiPart) {
+        return rpdSubmit(url, uk.gov.dvla.osg.rpd.web.config.Session.getInstance().getToken(), multiPart);
+    }
+
+    /**
+     * Sends rpdSubmitStreaming for the user in the Session singleton.
+     * @deprecated use rpdSubmitStreaming(String, String, MultiPart) with the token of a UserSession
+     */
+    @Deprecated
+    public static Response rpdSubmitStreaming(String url, MultiPart multiPart) {
+        return rpdSubmitStreaming(url, uk.gov.dvla.osg.rpd.web.config.Session.getInstance().getToken(), multiPart);
+    }
+
+    /**
+     * Sends rpdLogOut for the user in the Session singleton.
+     * @deprecated use rpdLogOut(String, String, String) with the token of a UserSession
+     */
+    @Deprecated
+    public static Response rpdLogOut(String url) {
+        return rpdLogOut(url, uk.gov.dvla.osg.rpd.web.config.Session.getInstance().getUserName(), uk.gov.dvla.osg.rpd.web.config.Session.getInstance().getToken());
+    }
+
+    /**
+     * Sends vaultStockAsync for the user in the Session singleton.
+     * @deprecated use vaultStockAsync(String, String) with the token of a UserSession
+     */
+    @Deprecated
+    public static CompletionStage<Response> vaultStockAsync(String url) {
+        return vaultStockAsync(url, uk.gov.dvla.osg.rpd.web.config.Session.getInstance().getToken());
+    }
+
+    /**
+     * Sends rpdGroupAsync for the user in the Session singleton.
+     * @deprecated use rpdGroupAsync(String, String, String) with the token of a UserSession
+     */
+    @Deprecated
+    public static CompletionStage<Response> rpdGroupAsync(String url) {
+        return rpdGroupAsync(url, uk.gov.dvla.osg.rpd.web.config.Session.getInstance().getUserName(), uk.gov.dvla.osg.rpd.web.config.Session.getInstance().getToken());
+    }
+
+    /**
+     * Sends rpdSubmitAsync for the user in the Session singleton.
+     * @deprecated use rpdSubmitAsync(String, String, MultiPart) with the token of a UserSession
+     */
+    @Deprecated
+    public static CompletionStage<Response> rpdSubmitAsync(String url, MultiPart multiPart) {
+        return rpdSubmitAsync(url, uk.gov.dvla.osg.rpd.web.config.Session.getInstance().getToken(), multiPart);
+    }
+
+    /**
+     * Sends rpdLogOutAsync for the user in the Session singleton.
+     * @deprecated use rpdLogOutAsync(String, String, String) with the token of a UserSession
+     */
+    @Deprecated
+    public static CompletionStage<Response> rpdLogOutAsync(String url) {
+        return rpdLogOutAsync(url, uk.gov.dvla.osg.rpd.web.config.Session.getInstance().getUserName(), uk.gov.dvla.osg.rpd.web.config.Session.getInstance().getToken());
+    }
+	
+	/**
+	 * Sends a request under the RetryPolicy. Each attempt goes through the
+	 * EndpointBalancer and the CircuitBreaker for the chosen host. When more than
+	 * one RPD host is configured, the host in a URL built from the NetworkConfig is
+	 * replaced with the host chosen by the balancer. The hosts must share sessions,
+	 * as the token is sent to whichever host is chosen.
+	 * @param url the URL built from the NetworkConfig
+	 * @param idempotent true if the request may safely be sent more than once
+	 * @param request sends the request to the URL it is given
+	 * @return the response
+	 */
+	static Response execute(String url, boolean idempotent, Function<String, Response> request) {
+		return execute(url, idempotent, request, Response::getStatus, Response::close);
+	}
+	
+	/**
+	 * Sends a request under the RetryPolicy, for any type of response.
+	 * @param url the URL built from the NetworkConfig
+	 * @param idempotent true if the request may safely be sent more than once
+	 * @param request sends the request to the URL it is given
+	 * @param status gets the HTTP status code of a response
+	 * @param discard releases a response that is retried
+	 * @return the response
+	 */
+	static <R> R execute(String url, boolean idempotent, Function<String, R> request,
+			ToIntFunction<R> status, Consumer<R> discard) {
+		return RetryPolicy.getInstance().execute(idempotent, () -> send(url, request, status),
+				response -> isServerUnavailable(status.applyAsInt(response)), discard);
+	}
+	
+	/**
+	 * Makes a single attempt at a request.
+	 * @param url the URL built from the NetworkConfig
+	 * @param request sends the request to the URL it is given
+	 * @param status gets the HTTP status code of a response
+	 * @return the response
+	 */
+	private static <R> R send(String url, Function<String, R> request, ToIntFunction<R> status) {
+		EndpointBalancer balancer = EndpointBalancer.getInstance();
+		String primary = balancer.getPrimaryBase();
+		Lease lease = balancer.isBalancing() && url.startsWith(primary) ? balancer.select() : null;
+		String target = lease == null ? url : lease.getEndpoint().getUrlBase() + url.substring(primary.length());
+		CircuitBreaker breaker = CircuitBreaker.forUrl(target);
+		long begin = System.nanoTime();
+		try {
+			breaker.acquire();
+		} catch (CircuitOpenException ex) {
+			// Refused locally, so the host was not tried
+			if (lease != null) {
+				balancer.release(lease);
+			}
+			throw ex;
+		}
+		// Left null when the failure says nothing about the host, such as an invalid URL
+		Boolean success = null;
+		try {
+			R response = request.apply(target);
+			success = status.applyAsInt(response) < 500;
+			return response;
+		} catch (ProcessingException ex) {
+			// Host could not be reached or timed out
+			success = false;
+			throw ex;
+		} finally {
+			record(breaker, balancer, lease, System.nanoTime() - begin, success);
+		}
+	}
+	
+	/**
+	 * Non-blocking version of execute. Retries are scheduled rather than blocking a thread.
+	 * @param url the URL built from the NetworkConfig
+	 * @param idempotent true if the request may safely be sent more than once
+	 * @param request sends the request to the URL it is given
+	 * @return a stage completed with the response
+	 */
+	static CompletionStage<Response> executeAsync(String url, boolean idempotent,
+			Function<String, CompletionStage<Response>> request) {
+		return executeAsync(url, idempotent, request, Response::getStatus, Response::close);
+	}
+	
+	/**
+	 * Non-blocking version of execute, for any type of response.
+	 * @param url the URL built from the NetworkConfig
+	 * @param idempotent true if the request may safely be sent more than once
+	 * @param request sends the request to the URL it is given
+	 * @param status gets the HTTP status code of a response
+	 * @param discard releases a response that is retried
+	 * @return a stage completed with the response
+	 */
+	static <R> CompletionStage<R> executeAsync(String url, boolean idempotent,
+			Function<String, CompletionStage<R>> request, ToIntFunction<R> status, Consumer<R> discard) {
+		return RetryPolicy.getInstance().executeAsync(idempotent, () -> sendAsync(url, request, status),
+				response -> isServerUnavailable(status.applyAsInt(response)), discard);
+	}
+	
+	/**
+	 * Makes a single asynchronous attempt at a request.
+	 * @param url the URL built from the NetworkConfig
+	 * @param request sends the request to the URL it is given
+	 * @param status gets the HTTP status code of a response
+	 * @return a stage completed with the response
+	 */
+	private static <R> CompletionStage<R> sendAsync(String url, Function<String, CompletionStage<R>> request,
+			ToIntFunction<R> status) {
+		EndpointBalancer balancer = EndpointBalancer.getInstance();
+		String primary = balancer.getPrimaryBase();
+		Lease lease = balancer.isBalancing() && url.startsWith(primary) ? balancer.select() : null;
+		String target = lease == null ? url : lease.getEndpoint().getUrlBase() + url.substring(primary.length());
+		CircuitBreaker breaker = CircuitBreaker.forUrl(target);
+		long begin = System.nanoTime();
+		try {
+			breaker.acquire();
+		} catch (CircuitOpenException ex) {
+			// Refused locally, so the host was not tried
+			if (lease != null) {
+				balancer.release(lease);
+			}
+			throw ex;
+		}
+		CompletionStage<R> stage;
+		try {
+			stage = request.apply(target);
+		} catch (RuntimeException ex) {
+			record(breaker, balancer, lease, System.nanoTime() - begin, ex instanceof ProcessingException ? false : null);
+			throw ex;
+		}
+		return stage.whenComplete((response, throwable) -> {
+			Boolean success;
+			if (throwable == null) {
+				success = status.applyAsInt(response) < 500;
+			} else {
+				success = unwrap(throwable) instanceof ProcessingException ? false : null;
+			}
+			record(breaker, balancer, lease, System.nanoTime() - begin, success);
+		});
+	}
+	
+	/**
+	 * Records the outcome of an attempt against the circuit breaker and the balancer.
+	 * @param breaker the circuit breaker for the host
+	 * @param balancer the balancer
+	 * @param lease the lease from the balancer, or null if the request was not balanced
+	 * @param elapsedNanos the time the attempt took
+	 * @param success true or false, or null if the outcome says nothing about the host
+	 */
+	private static void record(CircuitBreaker breaker, EndpointBalancer balancer, Lease lease,
+			long elapsedNanos, Boolean success) {
+		if (Boolean.TRUE.equals(success)) {
+			breaker.onSuccess();
+		} else if (Boolean.FALSE.equals(success)) {
+			breaker.onFailure();
+		}
+		if (lease != null) {
+			balancer.complete(lease, elapsedNanos, !Boolean.FALSE.equals(success));
+		}
+	}
+	
+	/**
+	 * Checks if a status code shows that RPD was temporarily unable to handle the request.
+	 * @param status the HTTP status code of the response
+	 * @return true for 502, 503 and 504 responses
+	 */
+	private static boolean isServerUnavailable(int status) {
+		return status == 502 || status == 503 || status == 504;
+	}
+	
+	/**
+	 * Strips the completion wrapper from an exception raised by an asynchronous request,
+	 * so that the clients can map it in the same way as a blocking call.
+	 * @param throwable the exception the stage completed with
+	 * @return the underlying exception
+	 */
+	static Exception unwrap(Throwable throwable) {
+		Throwable cause = throwable;
+		while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null) {
+			cause = cause.getCause();
+		}
+		return cause instanceof Exception ? (Exception) cause : new RuntimeException(cause);
 	}
 }
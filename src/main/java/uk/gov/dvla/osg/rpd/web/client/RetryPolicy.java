@@ -0,0 +1,259 @@
+package uk.gov.dvla.osg.rpd.web.client;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import javax.ws.rs.ProcessingException;
+
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import uk.gov.dvla.osg.rpd.web.config.NetworkConfig;
+
+/**
+ * Retries failed requests to RPD after a randomised, exponentially growing delay,
+ * so that clients which failed together do not all retry at the same moment.
+ * <p>
+ * A request that never reached RPD, because the connection could not be made,
+ * is always safe to retry. Any other failure, such as a read timeout or a 502,
+ * 503 or 504 response, is only retried for idempotent requests, where sending
+ * the request twice has the same effect as sending it once. Requests refused by
+ * an open circuit breaker are not retried.
+ */
+public final class RetryPolicy {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    /**
+     * A single attempt at a request.
+     *
+     * @param <T> the result
+     * @param <E> the exception the attempt may throw
+     */
+    @FunctionalInterface
+    interface Attempt<T, E extends Exception> {
+        T run() throws E;
+    }
+
+    /**
+     * ****************************************************************************************
+     *                              SINGLETON PATTERN
+     * ****************************************************************************************.
+     */
+
+    private static RetryPolicy instance;
+
+    /**
+     * Gets the shared policy, creating it from the NetworkConfig on first use.
+     *
+     * @return the shared policy
+     */
+    public static synchronized RetryPolicy getInstance() {
+        if (instance == null) {
+            NetworkConfig config = NetworkConfig.getInstance();
+            instance = new RetryPolicy(config.getMaxRetries(), config.getRetryBaseDelay(), config.getRetryMaxDelay());
+        }
+        return instance;
+    }
+
+    /** **************************************************************************************. */
+
+    private final int maxRetries;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Instantiates a new retry policy.
+     *
+     * @param maxRetries the number of retries after the first attempt
+     * @param baseDelayMillis the delay before the first retry
+     * @param maxDelayMillis the longest delay before a retry
+     */
+    private RetryPolicy(int maxRetries, long baseDelayMillis, long maxDelayMillis) {
+        this.maxRetries = Math.max(0, maxRetries);
+        this.baseDelayMillis = Math.max(1, baseDelayMillis);
+        this.maxDelayMillis = Math.max(this.baseDelayMillis, maxDelayMillis);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rpd-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Runs a request, retrying it while it fails in a way that is safe to retry.
+     *
+     * @param idempotent true if the request may be sent more than once
+     * @param attempt sends the request
+     * @param retryableResult tests whether a result should be retried, or null if results are never retried
+     * @param discard releases a result that is being retried, such as closing a response
+     * @return the result of the last attempt
+     * @throws E the exception from the last attempt
+     */
+    <T, E extends Exception> T execute(boolean idempotent, Attempt<T, E> attempt,
+            Predicate<T> retryableResult, Consumer<T> discard) throws E {
+        for (int retry = 0; ; retry++) {
+            boolean last = retry >= maxRetries;
+            T result;
+            try {
+                result = attempt.run();
+            } catch (Exception ex) {
+                if (last || !isRetryable(ex, idempotent) || !pause(retry, ex)) {
+                    throw ex;
+                }
+                continue;
+            }
+            if (last || !idempotent || retryableResult == null || !retryableResult.test(result)) {
+                return result;
+            }
+            if (!pause(retry, result)) {
+                return result;
+            }
+            discard.accept(result);
+        }
+    }
+
+    /**
+     * Non-blocking version of execute. Retries are scheduled rather than slept.
+     *
+     * @param idempotent true if the request may be sent more than once
+     * @param attempt sends the request
+     * @param retryableResult tests whether a result should be retried, or null if results are never retried
+     * @param discard releases a result that is being retried, such as closing a response
+     * @return a stage completed with the result of the last attempt
+     */
+    <T> CompletionStage<T> executeAsync(boolean idempotent, Supplier<CompletionStage<T>> attempt,
+            Predicate<T> retryableResult, Consumer<T> discard) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        attemptAsync(0, idempotent, attempt, retryableResult, discard, future);
+        return future;
+    }
+
+    /**
+     * Makes one asynchronous attempt, scheduling the next if it is retryable.
+     */
+    private <T> void attemptAsync(int retry, boolean idempotent, Supplier<CompletionStage<T>> attempt,
+            Predicate<T> retryableResult, Consumer<T> discard, CompletableFuture<T> future) {
+        CompletionStage<T> stage;
+        try {
+            stage = attempt.get();
+        } catch (RuntimeException ex) {
+            stage = failed(ex);
+        }
+        stage.whenComplete((result, throwable) -> {
+            boolean last = retry >= maxRetries;
+            boolean again;
+            if (throwable != null) {
+                again = !last && isRetryable(RestClient.unwrap(throwable), idempotent);
+            } else {
+                again = !last && idempotent && retryableResult != null && retryableResult.test(result);
+            }
+            if (!again) {
+                if (throwable != null) {
+                    future.completeExceptionally(throwable);
+                } else {
+                    future.complete(result);
+                }
+                return;
+            }
+            if (result != null) {
+                discard.accept(result);
+            }
+            long delay = delay(retry);
+            LOGGER.debug("Retrying request in {}ms", delay);
+            scheduler.schedule(() -> attemptAsync(retry + 1, idempotent, attempt, retryableResult, discard, future),
+                    delay, TimeUnit.MILLISECONDS);
+        });
+    }
+
+    /**
+     * Creates a stage that has already failed.
+     */
+    private static <T> CompletionStage<T> failed(Throwable ex) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(ex);
+        return future;
+    }
+
+    /**
+     * Waits before the next retry.
+     *
+     * @param retry the number of retries so far
+     * @param reason the failure being retried, for logging
+     * @return false if the wait was interrupted, in which case there is no retry
+     */
+    private boolean pause(int retry, Object reason) {
+        long delay = delay(retry);
+        LOGGER.debug("Retrying request in {}ms after {}", delay, reason);
+        try {
+            Thread.sleep(delay);
+            return true;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Gets a random delay between zero and the exponential backoff for the retry.
+     *
+     * @param retry the number of retries so far
+     * @return the delay in milliseconds
+     */
+    private long delay(int retry) {
+        long ceiling = Math.min(maxDelayMillis, baseDelayMillis << Math.min(retry, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    /**
+     * Checks if a failed request may be retried.
+     *
+     * @param ex the exception the request failed with
+     * @param idempotent true if the request may be sent more than once
+     * @return true if the request may be retried
+     */
+    static boolean isRetryable(Throwable ex, boolean idempotent) {
+        if (ex instanceof CircuitOpenException) {
+            return false;
+        }
+        if (isConnectFailure(ex)) {
+            return true;
+        }
+        return idempotent && (ex instanceof ProcessingException || ex instanceof IOException);
+    }
+
+    /**
+     * Checks if an exception shows that the request was never sent, because a
+     * connection to the host could not be made or timed out while connecting.
+     *
+     * @param ex the exception
+     * @return true if the connection failed
+     */
+    static boolean isConnectFailure(Throwable ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConnectException || cause instanceof NoRouteToHostException
+                    || cause instanceof UnknownHostException || cause instanceof ConnectTimeoutException
+                    || cause instanceof ConnectionPoolTimeoutException) {
+                return true;
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,142 @@
+package uk.gov.dvla.osg.rpd.web.client;
+
+import java.io.File;
+import java.util.Date;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.apache.http.client.utils.DateUtils;
+
+/**
+ * Builds the requests sent to the RPD REST service, for any Transport.
+ * These are set by the RPD REST api and shouldn't be amended.
+ */
+final class RpdRequests {
+
+    private RpdRequests() {
+    }
+
+    /**
+     * Creates a login request.
+     *
+     * @param url RPD login URL in format hostname:port address
+     * @param userName the RPD login name of the user
+     * @param password the password
+     * @return the request
+     */
+    static TransportRequest login(String url, String userName, String password) {
+        // webform data encoded in body of the HTTP request
+        return TransportRequest.post(url)
+                .form("name", userName)
+                .form("pwd", password);
+    }
+
+    /**
+     * Creates a request for vault stock.
+     *
+     * @param url RPD vault URL in format hostname:port address
+     * @param token the session token to authenticate with RPD
+     * @return the request
+     */
+    static TransportRequest vaultStock(String url, String token) {
+        return TransportRequest.get(url).header("token", token);
+    }
+
+    /**
+     * Creates a request for vault stock that RPD only answers in full if the stock
+     * has changed since the previous response.
+     *
+     * @param url RPD vault URL in format hostname:port address
+     * @param token the session token to authenticate with RPD
+     * @param eTag entity tag from the previous response, or null
+     * @param lastModified last modified date from the previous response, or null
+     * @return the request
+     */
+    static TransportRequest vaultStockIfModified(String url, String token, EntityTag eTag, Date lastModified) {
+        TransportRequest request = vaultStock(url, token);
+        if (eTag != null) {
+            request.header(HttpHeaders.IF_NONE_MATCH, eTag.toString());
+        }
+        if (lastModified != null) {
+            request.header(HttpHeaders.IF_MODIFIED_SINCE, DateUtils.formatDate(lastModified));
+        }
+        return request;
+    }
+
+    /**
+     * Creates a request for the groups a user belongs to.
+     *
+     * @param url RPD RestApi URL in format hostname:port address
+     * @param userName the RPD login name of the user
+     * @param token the session token to authenticate with RPD
+     * @return the request
+     */
+    static TransportRequest group(String url, String userName, String token) {
+        return TransportRequest.get(url)
+                .queryParam("attribute", "User.Groups")
+                .queryParam("criteria", "\"" + userName + "\"")
+                .header("token", token);
+    }
+
+    /**
+     * Creates a request that sends a file to the data input device in RPD.
+     *
+     * @param url RPD RestApi URL in format hostname:port address
+     * @param token the session token to authenticate with RPD
+     * @param file the file to transmit
+     * @return the request
+     */
+    static TransportRequest submit(String url, String token, File file) {
+        return TransportRequest.post(url)
+                .header("token", token)
+                .file("file", file, MediaType.TEXT_PLAIN_TYPE);
+    }
+
+    /**
+     * Creates a request that streams a file to the data input device in RPD using
+     * chunked transfer encoding.
+     *
+     * @param url RPD RestApi URL in format hostname:port address
+     * @param token the session token to authenticate with RPD
+     * @param file the file to transmit
+     * @param writer writes the content of the file
+     * @return the request
+     */
+    static TransportRequest submitStreaming(String url, String token, File file, StreamingOutput writer) {
+        return TransportRequest.post(url)
+                .header("token", token)
+                .stream("file", file.getName(), file.length(), writer, MediaType.TEXT_PLAIN_TYPE)
+                .chunked();
+    }
+
+    /**
+     * Creates a request that logs a user out of RPD.
+     *
+     * @param url RPD logout URL in format hostname:port address
+     * @param userName the RPD login name of the user
+     * @param token the session token to authenticate with RPD
+     * @return the request
+     */
+    static TransportRequest logOut(String url, String userName, String token) {
+        return TransportRequest.post(url)
+                .path(userName)
+                .header("token", token);
+    }
+
+    /**
+     * Creates a request that updates the password of an application.
+     *
+     * @param url RPD password update URL for the application
+     * @param token the session token to authenticate with RPD
+     * @param json the JSON body of the update
+     * @return the request
+     */
+    static TransportRequest updatePassword(String url, String token, String json) {
+        return TransportRequest.patch(url)
+                .header("token", token)
+                .json(json);
+    }
+}
@@ -0,0 +1,65 @@
+package uk.gov.dvla.osg.rpd.web.client;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces identical requests. The first caller for a key runs the request, and
+ * any caller that arrives with the same key while it is in flight waits for it
+ * and is given the same result, instead of sending a request of its own. Once
+ * the request completes the next caller for the key starts a new one.
+ * <p>
+ * Only suitable for idempotent reads, where every caller would have received the
+ * same response.
+ *
+ * @param <K> the key identifying identical requests
+ * @param <V> the result of the request
+ */
+final class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Runs the request, or waits for the identical request already in flight.
+     *
+     * @param key the key identifying the request
+     * @param request the request
+     * @return the result of the request
+     */
+    V execute(K key, Supplier<V> request) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            try {
+                return existing.join();
+            } catch (CompletionException ex) {
+                if (ex.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) ex.getCause();
+                }
+                throw ex;
+            }
+        }
+        try {
+            V result = request.get();
+            flight.complete(result);
+            return result;
+        } catch (RuntimeException | Error ex) {
+            flight.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    /**
+     * Gets the number of requests currently in flight.
+     *
+     * @return the in flight count
+     */
+    int getInFlightCount() {
+        return inFlight.size();
+    }
+}
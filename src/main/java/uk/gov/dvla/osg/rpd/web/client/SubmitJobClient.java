@@ -1,20 +1,42 @@
 package uk.gov.dvla.osg.rpd.web.client;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import javax.ws.rs.ProcessingException;
 import javax.ws.rs.core.MediaType;
-import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.glassfish.jersey.media.multipart.MultiPart;
-import org.glassfish.jersey.media.multipart.file.FileDataBodyPart;
 
 import uk.gov.dvla.osg.rpd.web.config.NetworkConfig;
+import uk.gov.dvla.osg.rpd.web.config.UserSession;
 import uk.gov.dvla.osg.rpd.web.error.RpdErrorResponse;
 import uk.gov.dvla.osg.rpd.web.json.JsonUtils;
+import uk.gov.dvla.osg.rpd.web.submit.SubmissionIndex;
 import uk.gov.dvla.osg.rpd.web.xml.xmlUtils;
 
 public class SubmitJobClient {
@@ -23,24 +45,58 @@ public class SubmitJobClient {
 
     private RpdErrorResponse error = new RpdErrorResponse();
     private String url;
+    // Supplies and renews the session, or null if the session is fixed
+    private final TokenManager tokens;
+    private volatile UserSession session;
+    // Status of the last response, zero if no response was received
+    private volatile int status = 0;
+    // Content hash of the file being submitted, zero when deduplication is disabled
+    private long fingerprint = 0;
+    private boolean duplicate = false;
 
     /**
-     * Gets a new instance of the RpdLoginClient
+     * Gets a new instance of the SubmitJobClient for the user in the Session singleton.
      * 
-     * @param config
-     * @return a new instance of the RpdLoginClient.
+     * @return a new instance of the SubmitJobClient.
+     * @deprecated use getInstance(UserSession)
      */
+    @Deprecated
     public static SubmitJobClient getInstance() {
-        return new SubmitJobClient();
+        return new SubmitJobClient(uk.gov.dvla.osg.rpd.web.config.Session.getInstance().toUserSession(), null);
     }
 
     /**
-     * Instantiates a new rpd login client.
+     * Gets a new instance of the SubmitJobClient that submits on behalf of a user.
+     * 
+     * @param session the session of the user submitting the files
+     * @return a new instance of the SubmitJobClient.
+     */
+    public static SubmitJobClient getInstance(UserSession session) {
+        return new SubmitJobClient(session, null);
+    }
+
+    /**
+     * Gets a new instance of the SubmitJobClient that takes its session from a
+     * TokenManager. If RPD rejects the token, the user is logged in again and the
+     * file is sent once more.
+     * 
+     * @param tokens the token manager of the user submitting the files
+     * @return a new instance of the SubmitJobClient.
+     */
+    public static SubmitJobClient getInstance(TokenManager tokens) {
+        return new SubmitJobClient(null, tokens);
+    }
+
+    /**
+     * Instantiates a new submit job client.
      *
-     * @param config the config
+     * @param session the session, or null if it is taken from the token manager
+     * @param tokens the token manager, or null if the session is fixed
      */
-    private SubmitJobClient() {
+    private SubmitJobClient(UserSession session, TokenManager tokens) {
         this.url = NetworkConfig.getInstance().getSubmitJobUrl();
+        this.session = session;
+        this.tokens = tokens;
     }
 
     public boolean submit(String filename) {
@@ -48,59 +104,528 @@ public class SubmitJobClient {
     }
 
     /**
-     * Constructs the header and file body for the HTML message as a MultiPart
-     * object and then passes it to the RestClient to send to RPD.
+     * Submits every regular file in the directory to RPD.
+     *
+     * @param directory the directory containing the files to submit
+     * @param parallelism the maximum number of files uploaded at the same time
+     * @return a result for each file, in filename order
+     * @throws IOException if the directory cannot be read
+     * @deprecated use submitDirectory(String, int, UserSession)
+     */
+    @Deprecated
+    public static List<SubmitResult> submitDirectory(String directory, int parallelism) throws IOException {
+        return submitDirectory(directory, parallelism, uk.gov.dvla.osg.rpd.web.config.Session.getInstance().toUserSession());
+    }
+
+    /**
+     * Submits every regular file in the directory to RPD on behalf of a user.
+     *
+     * @param directory the directory containing the files to submit
+     * @param parallelism the maximum number of files uploaded at the same time
+     * @param session the session of the user submitting the files
+     * @return a result for each file, in filename order
+     * @throws IOException if the directory cannot be read
+     */
+    public static List<SubmitResult> submitDirectory(String directory, int parallelism, UserSession session) throws IOException {
+        return submitAll(listFiles(directory), parallelism, session);
+    }
+
+    /**
+     * Submits every regular file in the directory to RPD, taking the session from
+     * a TokenManager so that the token is renewed as the batch runs.
+     *
+     * @param directory the directory containing the files to submit
+     * @param parallelism the maximum number of files uploaded at the same time
+     * @param tokens the token manager of the user submitting the files
+     * @return a result for each file, in filename order
+     * @throws IOException if the directory cannot be read
+     */
+    public static List<SubmitResult> submitDirectory(String directory, int parallelism, TokenManager tokens) throws IOException {
+        return submitAll(listFiles(directory), parallelism, tokens);
+    }
+
+    /**
+     * Lists the regular files in a directory.
+     *
+     * @param directory the directory
+     * @return the files, in filename order
+     * @throws IOException if the directory cannot be read
+     */
+    private static List<File> listFiles(String directory) throws IOException {
+        try (Stream<Path> paths = Files.list(Paths.get(directory))) {
+            return paths.filter(Files::isRegularFile)
+                        .sorted()
+                        .map(Path::toFile)
+                        .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Submits the files to RPD, uploading up to the given number of files at the
+     * same time. All uploads share the session token, and each file is sent by its
+     * own client so that the error response for each file is kept separate.
+     *
+     * @param files the files to submit
+     * @param parallelism the maximum number of files uploaded at the same time
+     * @return a result for each file, in the same order as the files
+     * @deprecated use submitAll(List, int, UserSession)
+     */
+    @Deprecated
+    public static List<SubmitResult> submitAll(List<File> files, int parallelism) {
+        return submitAll(files, parallelism, uk.gov.dvla.osg.rpd.web.config.Session.getInstance().toUserSession());
+    }
+
+    /**
+     * Submits the files to RPD on behalf of a user, uploading up to the given
+     * number of files at the same time. Several users may submit at once, each
+     * with their own session.
+     *
+     * @param files the files to submit
+     * @param parallelism the maximum number of files uploaded at the same time
+     * @param session the session of the user submitting the files
+     * @return a result for each file, in the same order as the files
+     */
+    public static List<SubmitResult> submitAll(List<File> files, int parallelism, UserSession session) {
+        return submitAll(files, parallelism, () -> SubmitJobClient.getInstance(session));
+    }
+
+    /**
+     * Submits the files to RPD, taking the session from a TokenManager. A token
+     * that expires part way through the batch is renewed once for all uploads,
+     * and each rejected file is sent again with the new token.
+     *
+     * @param files the files to submit
+     * @param parallelism the maximum number of files uploaded at the same time
+     * @param tokens the token manager of the user submitting the files
+     * @return a result for each file, in the same order as the files
+     */
+    public static List<SubmitResult> submitAll(List<File> files, int parallelism, TokenManager tokens) {
+        return submitAll(files, parallelism, () -> SubmitJobClient.getInstance(tokens));
+    }
+
+    /**
+     * Submits the files, each with its own client.
+     *
+     * @param files the files to submit
+     * @param parallelism the maximum number of files uploaded at the same time
+     * @param clients creates the client for each file
+     * @return a result for each file, in the same order as the files
+     */
+    private static List<SubmitResult> submitAll(List<File> files, int parallelism, Supplier<SubmitJobClient> clients) {
+        if (files.isEmpty()) {
+            return new ArrayList<>();
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1 but was " + parallelism);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, files.size()));
+        try {
+            List<Future<SubmitResult>> futures = new ArrayList<>(files.size());
+            for (File file : files) {
+                futures.add(executor.submit(() -> submitTimed(file, clients.get())));
+            }
+            List<SubmitResult> results = new ArrayList<>(files.size());
+            for (int i = 0; i < files.size(); i++) {
+                results.add(awaitResult(files.get(i), futures.get(i)));
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Submits a single file with a new client and times the upload.
+     *
+     * @param file the file to submit
+     * @param client the client to submit the file with
+     * @return the result for the file
+     */
+    private static SubmitResult submitTimed(File file, SubmitJobClient client) {
+        long start = System.nanoTime();
+        boolean accepted = client.trySubmit(file);
+        long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        LOGGER.debug("{} {} in {}ms", file.getName(), accepted ? "accepted" : "rejected", duration);
+        return new SubmitResult(file, accepted, client.isDuplicate(), accepted ? null : client.getErrorResponse(), duration);
+    }
+
+    /**
+     * Waits for a batch upload to complete, converting an interrupted or failed
+     * task into an error result.
+     *
+     * @param file the file being submitted
+     * @param future the pending upload
+     * @return the result for the file
+     */
+    private static SubmitResult awaitResult(File file, Future<SubmitResult> future) {
+        RpdErrorResponse taskError = new RpdErrorResponse();
+        taskError.setCode("Submit Job Error:");
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            taskError.setMessage("Batch submission was interrupted before " + file.getName() + " was sent");
+            taskError.setAction("Please resubmit the file.");
+            taskError.setException(ex);
+        } catch (ExecutionException ex) {
+            taskError.setMessage("An unknown error occured while attempting to submit a file to RPD");
+            taskError.setAction("Please notify Dev Team.");
+            taskError.setException(ex);
+        }
+        return new SubmitResult(file, false, false, taskError, 0);
+    }
+
+    /**
+     * Constructs the header and file body for the HTML message as a multipart
+     * request and then passes it to the Transport to send to RPD.
      *
      * @param filename Full path to the file in the working directory
      * @return true, if successful
      */
     public boolean trySubmit(File file) {
+        if (isDuplicate(file)) {
+            return false;
+        }
+        return whileReserved(() -> withSession(() -> send(file)));
+    }
+
+    /**
+     * Sends the file once with the current session.
+     *
+     * @param file the file to submit
+     * @return true, if successful
+     */
+    private boolean send(File file) {
         // construct html body with file as attachment
-        FileDataBodyPart fdbp = new FileDataBodyPart("file", file, MediaType.TEXT_PLAIN_TYPE);
-        
-            try (MultiPart multiPart = new MultiPart(MediaType.MULTIPART_FORM_DATA_TYPE);
-                    MultiPart body = multiPart.bodyPart(fdbp); 
-                    Response response = RestClient.rpdSubmit(url, body)) {
-                MediaType mediaType = response.getMediaType();
-                String data = response.readEntity(String.class);
-                // 202 response means file received by RPD
-                if (response.getStatus() == 202) {
-                    // File received by RPD, file can be safely deleted
-                    FileUtils.deleteQuietly(file);
-                    return true;
-                } else if (mediaType.equals(MediaType.APPLICATION_JSON_TYPE)) {
-                    error = JsonUtils.getError(data);
-                } else if (mediaType.equals(MediaType.APPLICATION_XML_TYPE)) {
-                    error = new xmlUtils().getXmlError(data);
-                } else {
-                    error.setCode("Submit Job Error:");
-                    error.setMessage(data);
-                    error.setAction("Please notify Dev Team.");
+        try {
+            TransportResponse response = Transports.getInstance().send(RpdRequests.submit(url, session.getToken(), file));
+            return handleResponse(response, file);
+        } catch (Exception ex) {
+            handleException(ex);
+        }
+        return false;
+    }
+
+    /**
+     * Streams the file to RPD with chunked transfer encoding. The file is copied
+     * from a FileChannel in fixed-size chunks, so memory use does not grow with
+     * the size of the file.
+     *
+     * @param file the file to submit
+     * @param listener receives the number of bytes sent after each chunk
+     * @return true, if successful
+     */
+    public boolean trySubmitStreaming(File file, UploadProgressListener listener) {
+        if (isDuplicate(file)) {
+            return false;
+        }
+        return whileReserved(() -> withSession(() -> sendStreaming(file, listener)));
+    }
+
+    /**
+     * Streams the file once with the current session.
+     *
+     * @param file the file to submit
+     * @param listener receives the number of bytes sent after each chunk
+     * @return true, if successful
+     */
+    private boolean sendStreaming(File file, UploadProgressListener listener) {
+        try {
+            TransportResponse response = Transports.getInstance()
+                    .send(RpdRequests.submitStreaming(url, session.getToken(), file, streamFile(file, listener)));
+            return handleResponse(response, file);
+        } catch (Exception ex) {
+            handleException(ex);
+        }
+        return false;
+    }
+
+    /**
+     * Creates the entity that writes the file to the request body a chunk at a time.
+     *
+     * @param file the file to send
+     * @param listener receives the number of bytes sent after each chunk
+     * @return the streaming entity
+     */
+    private StreamingOutput streamFile(File file, UploadProgressListener listener) {
+        int chunkSize = NetworkConfig.getInstance().getUploadBufferSize();
+        return output -> {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                WritableByteChannel target = Channels.newChannel(output);
+                long size = channel.size();
+                long position = 0;
+                while (position < size) {
+                    long sent = channel.transferTo(position, Math.min(chunkSize, size - position), target);
+                    if (sent == 0 && position >= channel.size()) {
+                        // Truncated or replaced since the upload began, so the rest will never arrive
+                        throw new IOException(file + " was truncated while it was being sent, after "
+                                + position + " of " + size + " bytes");
+                    }
+                    position += sent;
+                    listener.onProgress(position, size);
                 }
-            } catch (ProcessingException ex) {
-                error.setCode("Submit Job Error:");
-                error.setMessage("Unable to connect to RPD web service. Connection timed out");
-                error.setAction("Please wait a few minutes and then try again.");
-                error.setException(ex);
-            } catch (NullPointerException ex) {
-                error.setCode("Submit Job Error:");
-                error.setMessage("Unable to connect to RPD web service. Invalid IP address for RPD");
-                error.setAction("To resolve, check all parts of the login URL in the application config file.");
-                error.setException(ex);
-            } catch (IllegalArgumentException ex) {
-                error.setCode("Submit Job Error:");
-                error.setMessage("Invalid URL in config file [" + url + "]. Please check configuration.");
-                error.setAction("To resolve, check all parts of the login URL in the application config file. This problem is usually caused by either a missing value in the URL or an illegal character.");
-                error.setException(ex);
-            } catch (Exception ex) {
-                error.setCode("Submit Job Error:");
-                error.setMessage("An unknown error occured while attempting to submit a file to RPD");
-                error.setAction("Please notify Dev Team.");
-                error.setException(ex);
             }
+        };
+    }
+
+    /**
+     * Non-blocking version of trySubmit. The file is sent through the Transport
+     * and the response is processed on the supplied executor.
+     *
+     * @param file the file to submit
+     * @param executor the executor used to process the response
+     * @return a future holding true if RPD accepted the file
+     */
+    public CompletableFuture<Boolean> trySubmitAsync(File file, Executor executor) {
+        if (isDuplicate(file)) {
+            return CompletableFuture.completedFuture(false);
+        }
+        long reservation = fingerprint;
+        try {
+            return submitAsync(file, executor).whenComplete((accepted, throwable) -> {
+                if (!Boolean.TRUE.equals(accepted)) {
+                    release(reservation);
+                }
+            });
+        } catch (RuntimeException ex) {
+            release(reservation);
+            throw ex;
+        }
+    }
+
+    /**
+     * Sends the file without blocking, renewing the token once if RPD rejects it
+     * and the session comes from a TokenManager.
+     *
+     * @param file the file to submit
+     * @param executor the executor used to process the response
+     * @return a future holding true if RPD accepted the file
+     */
+    private CompletableFuture<Boolean> submitAsync(File file, Executor executor) {
+        if (tokens == null) {
+            return sendAsync(file, executor);
+        }
+        // Logging in blocks, so it is done on the executor
+        return CompletableFuture.supplyAsync(tokens::getSession, executor)
+                .thenCompose(current -> {
+                    if (!current.isPresent()) {
+                        error = tokens.getErrorResponse().copy();
+                        return CompletableFuture.completedFuture(false);
+                    }
+                    session = current.get();
+                    return sendAsync(file, executor).thenCompose(accepted -> {
+                        if (accepted || !isAuthFailure()) {
+                            return CompletableFuture.completedFuture(accepted);
+                        }
+                        return CompletableFuture.supplyAsync(() -> tokens.renew(current.get()), executor)
+                                .thenCompose(renewed -> {
+                                    if (!renewed.isPresent()) {
+                                        return CompletableFuture.completedFuture(false);
+                                    }
+                                    session = renewed.get();
+                                    return sendAsync(file, executor);
+                                });
+                    });
+                });
+    }
+
+    /**
+     * Sends the file once with the current session, without blocking.
+     *
+     * @param file the file to submit
+     * @param executor the executor used to process the response
+     * @return a future holding true if RPD accepted the file
+     */
+    private CompletableFuture<Boolean> sendAsync(File file, Executor executor) {
+        status = 0;
+        return Transports.getInstance().sendAsync(RpdRequests.submit(url, session.getToken(), file))
+                .handleAsync((response, throwable) -> {
+                    try {
+                        if (throwable != null) {
+                            handleException(RestClient.unwrap(throwable));
+                            return false;
+                        }
+                        return handleResponse(response, file);
+                    } catch (Exception ex) {
+                        handleException(ex);
+                        return false;
+                    }
+                }, executor)
+                .toCompletableFuture();
+    }
+
+    /**
+     * Runs a send with the current session. When the session comes from a
+     * TokenManager and RPD rejects the token, the send is repeated once with a
+     * renewed token.
+     *
+     * @param send sends the file
+     * @return true if RPD accepted the file
+     */
+    private boolean withSession(BooleanSupplier send) {
+        if (tokens == null) {
+            status = 0;
+            return send.getAsBoolean();
+        }
+        Optional<Boolean> accepted = tokens.execute(current -> {
+            session = current;
+            status = 0;
+            return send.getAsBoolean();
+        }, ok -> !ok && isAuthFailure());
+        if (!accepted.isPresent()) {
+            error = tokens.getErrorResponse().copy();
+            return false;
+        }
+        return accepted.get();
+    }
+
+    /**
+     * Runs an upload of a file whose fingerprint has been reserved, releasing the
+     * reservation unless RPD accepted the file.
+     *
+     * @param upload sends the file
+     * @return true if RPD accepted the file
+     */
+    private boolean whileReserved(BooleanSupplier upload) {
+        long reservation = fingerprint;
+        boolean accepted = false;
+        try {
+            accepted = upload.getAsBoolean();
+            return accepted;
+        } finally {
+            if (!accepted) {
+                release(reservation);
+            }
+        }
+    }
+
+    /**
+     * Releases a fingerprint reserved in the submission index.
+     *
+     * @param reservation the fingerprint, or 0 if none was reserved
+     */
+    private static void release(long reservation) {
+        if (reservation != 0) {
+            SubmissionIndex.getShared().ifPresent(index -> index.release(reservation));
+        }
+    }
+
+    /**
+     * Checks the content hash of the file against the submission index, if one is
+     * configured, and reserves it for this upload. A duplicate file is not
+     * uploaded and is left in place. A file with the same content as one being
+     * uploaded by another client is also treated as a duplicate.
+     *
+     * @param file the file to submit
+     * @return true if the file has already been submitted or is being submitted
+     */
+    private boolean isDuplicate(File file) {
+        // Each attempt starts afresh, as a client may be used for several files
+        duplicate = false;
+        fingerprint = 0;
+        Optional<SubmissionIndex> index = SubmissionIndex.getShared();
+        if (!index.isPresent()) {
+            return false;
+        }
+        try {
+            fingerprint = SubmissionIndex.fingerprint(file);
+        } catch (IOException ex) {
+            // Unreadable file, the upload will report the problem
+            LOGGER.warn("Unable to hash {} for duplicate check", file, ex);
+            return false;
+        }
+        if (!index.get().reserve(fingerprint)) {
+            LOGGER.warn("{} has already been submitted and will not be sent again", file);
+            duplicate = true;
+            error.setCode("Duplicate Submission:");
+            error.setMessage("File " + file.getName() + " has the same content as a file already submitted to RPD");
+            error.setAction("Check the file has not been copied to the output folder twice.");
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks the submit response. The file is deleted once RPD has accepted it,
+     * otherwise the error information is mapped.
+     *
+     * @param response the response from RPD
+     * @param file the submitted file
+     * @return true if RPD accepted the file
+     */
+    private boolean handleResponse(TransportResponse response, File file) throws IOException {
+        MediaType mediaType = response.getMediaType();
+        String data = response.getBody();
+        status = response.getStatus();
+        // 202 response means file received by RPD
+        if (response.getStatus() == 202) {
+            // File received by RPD, file can be safely deleted
+            FileUtils.deleteQuietly(file);
+            if (fingerprint != 0) {
+                SubmissionIndex.getShared().ifPresent(index -> index.record(fingerprint));
+            }
+            return true;
+        } else if (mediaType.equals(MediaType.APPLICATION_JSON_TYPE)) {
+            error = JsonUtils.getError(data);
+        } else if (mediaType.equals(MediaType.APPLICATION_XML_TYPE)) {
+            error = new xmlUtils().getXmlError(data);
+        } else {
+            error.setCode("Submit Job Error:");
+            error.setMessage(data);
+            error.setAction("Please notify Dev Team.");
+        }
         return false;
     }
 
+    /**
+     * Maps an exception raised while contacting RPD to the error response.
+     *
+     * @param ex the exception
+     */
+    private void handleException(Exception ex) {
+        if (ex instanceof CircuitOpenException) {
+            error.setCode("Submit Job Error:");
+            error.setMessage("Requests to RPD are paused after repeated failures. Retrying in "
+                    + (((CircuitOpenException) ex).getRetryAfterMillis() / 1000 + 1) + " seconds");
+            error.setAction("Please wait a few minutes and then try again. If the problem persits, please contact Dev team.");
+        } else if (ex instanceof ProcessingException) {
+            error.setCode("Submit Job Error:");
+            error.setMessage("Unable to connect to RPD web service. Connection timed out");
+            error.setAction("Please wait a few minutes and then try again.");
+        } else if (ex instanceof NullPointerException) {
+            error.setCode("Submit Job Error:");
+            error.setMessage("Unable to connect to RPD web service. Invalid IP address for RPD");
+            error.setAction("To resolve, check all parts of the login URL in the application config file.");
+        } else if (ex instanceof IllegalArgumentException) {
+            error.setCode("Submit Job Error:");
+            error.setMessage("Invalid URL in config file [" + url + "]. Please check configuration.");
+            error.setAction("To resolve, check all parts of the login URL in the application config file. This problem is usually caused by either a missing value in the URL or an illegal character.");
+        } else {
+            error.setCode("Submit Job Error:");
+            error.setMessage("An unknown error occured while attempting to submit a file to RPD");
+            error.setAction("Please notify Dev Team.");
+        }
+        error.setException(ex);
+    }
+
+    /**
+     * Checks if RPD rejected the last file because the session token was not accepted.
+     * 
+     * @return true if the response was 401 or 403
+     */
+    public boolean isAuthFailure() {
+        return status == 401 || status == 403;
+    }
+
+    /**
+     * Checks if the last file was skipped because it had already been submitted.
+     * 
+     * @return true if the file was a duplicate
+     */
+    public boolean isDuplicate() {
+        return duplicate;
+    }
+
     /**
      * Retrieves the error response if an empty optional was returned from the
      * getSessionToken method.
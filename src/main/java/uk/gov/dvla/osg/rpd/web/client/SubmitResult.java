@@ -0,0 +1,94 @@
+package uk.gov.dvla.osg.rpd.web.client;
+
+import java.io.File;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+import uk.gov.dvla.osg.rpd.web.error.RpdErrorResponse;
+
+/**
+ * The outcome of submitting a single file to RPD as part of a batch.
+ */
+public class SubmitResult {
+
+    private final File file;
+    private final boolean accepted;
+    private final boolean duplicate;
+    private final RpdErrorResponse error;
+    private final long durationMillis;
+
+    /**
+     * Instantiates a new submit result.
+     *
+     * @param file the submitted file
+     * @param accepted true if RPD returned a 202 response
+     * @param duplicate true if the file was skipped as it had already been submitted
+     * @param error the error response if the file was not accepted, otherwise null
+     * @param durationMillis time taken to upload the file in milliseconds
+     */
+    SubmitResult(File file, boolean accepted, boolean duplicate, RpdErrorResponse error, long durationMillis) {
+        this.file = file;
+        this.accepted = accepted;
+        this.duplicate = duplicate;
+        this.error = error;
+        this.durationMillis = durationMillis;
+    }
+
+    /**
+     * Gets the submitted file.
+     *
+     * @return the file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Checks if RPD accepted the file.
+     *
+     * @return true if RPD returned a 202 response
+     */
+    public boolean isAccepted() {
+        return accepted;
+    }
+
+    /**
+     * Checks if the file was skipped because a file with the same content had
+     * already been submitted.
+     *
+     * @return true if the file was a duplicate
+     */
+    public boolean isDuplicate() {
+        return duplicate;
+    }
+
+    /**
+     * Gets the error response if the file was not accepted.
+     *
+     * @return the error, or null if the file was accepted
+     */
+    public RpdErrorResponse getError() {
+        return error;
+    }
+
+    /**
+     * Gets the time taken to upload the file.
+     *
+     * @return the duration in milliseconds
+     */
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("file", file)
+                .append("accepted", accepted)
+                .append("duplicate", duplicate)
+                .append("durationMillis", durationMillis)
+                .append("error", error)
+                .toString();
+    }
+}
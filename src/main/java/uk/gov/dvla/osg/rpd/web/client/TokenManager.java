@@ -0,0 +1,262 @@
+package uk.gov.dvla.osg.rpd.web.client;
+
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import uk.gov.dvla.osg.rpd.web.config.NetworkConfig;
+import uk.gov.dvla.osg.rpd.web.config.SessionRegistry;
+import uk.gov.dvla.osg.rpd.web.config.UserSession;
+import uk.gov.dvla.osg.rpd.web.error.RpdErrorResponse;
+
+/**
+ * Keeps a valid RPD session token for a user.
+ * <p>
+ * The token is renewed in the background tokenRefreshMargin seconds before the
+ * tokenLifetime runs out, so long batches do not fail part way through. If RPD
+ * rejects a token before then, execute logs in again and repeats the call once.
+ * A background renewal that fails because RPD is unavailable is retried while the
+ * current token is still valid. If RPD rejects the credentials, or the token
+ * expires first, the background renewal stops and the next getSession logs in.
+ * However many threads find the token has expired at the same moment, only one
+ * login request is sent for the user and every thread is given its result.
+ * <p>
+ * Each new session is also registered in the SessionRegistry.
+ */
+public final class TokenManager {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final ConcurrentMap<String, TokenManager> MANAGERS = new ConcurrentHashMap<>();
+
+    // Logins in flight, keyed by user name
+    private static final SingleFlight<String, Login> LOGINS = new SingleFlight<>();
+
+    private static final ScheduledExecutorService REFRESHER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "rpd-token-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Gets the token manager for a user, creating it on first use. The user is
+     * not logged in until a session is first needed.
+     *
+     * @param userName the RPD login name of the user
+     * @param password the RPD password for the user, replacing any held for the user
+     * @return the token manager for the user
+     */
+    public static TokenManager getInstance(String userName, String password) {
+        TokenManager manager = MANAGERS.computeIfAbsent(userName, name -> new TokenManager(name, password, NetworkConfig.getInstance()));
+        manager.password = password;
+        return manager;
+    }
+
+    private final String userName;
+    private final long lifetimeNanos;
+    private final long marginNanos;
+    private volatile String password;
+    private volatile UserSession session;
+    private volatile long issuedAt;
+    private volatile RpdErrorResponse error = new RpdErrorResponse();
+    private ScheduledFuture<?> refresh;
+    private boolean closed = false;
+
+    /**
+     * Instantiates a new token manager.
+     *
+     * @param userName the user name
+     * @param password the password
+     * @param config the network config
+     */
+    private TokenManager(String userName, String password, NetworkConfig config) {
+        this.userName = userName;
+        this.password = password;
+        this.lifetimeNanos = TimeUnit.SECONDS.toNanos(Math.max(0, config.getTokenLifetime()));
+        this.marginNanos = Math.min(lifetimeNanos / 2, TimeUnit.SECONDS.toNanos(Math.max(0, config.getTokenRefreshMargin())));
+    }
+
+    /**
+     * Gets a session with a token that has not expired, logging in if needed.
+     *
+     * @return the session, or an empty optional if the login failed. The error
+     *         response is available from getErrorResponse.
+     */
+    public Optional<UserSession> getSession() {
+        UserSession current = session;
+        if (current != null && !isExpired()) {
+            return Optional.of(current);
+        }
+        return renew(current);
+    }
+
+    /**
+     * Logs in again because RPD rejected a token. If another thread has already
+     * renewed the token, its session is returned without logging in again.
+     *
+     * @param rejected the session whose token was rejected, or null
+     * @return the new session, or an empty optional if the login failed
+     */
+    public Optional<UserSession> renew(UserSession rejected) {
+        UserSession current = session;
+        if (current != null && rejected != null && !Objects.equals(current.getToken(), rejected.getToken()) && !isExpired()) {
+            return Optional.of(current);
+        }
+        return LOGINS.execute(userName, this::login).session;
+    }
+
+    /**
+     * Runs a call with the current session. If the result shows the token was
+     * rejected, the user is logged in again and the call is repeated once with
+     * the new session.
+     *
+     * @param call the call to make with the session
+     * @param authFailed tests whether the result shows the token was rejected
+     * @return the result of the call, or an empty optional if no session could
+     *         be obtained
+     */
+    public <T> Optional<T> execute(Function<UserSession, T> call, Predicate<T> authFailed) {
+        Optional<UserSession> first = getSession();
+        if (!first.isPresent()) {
+            return Optional.empty();
+        }
+        T result = call.apply(first.get());
+        if (!authFailed.test(result)) {
+            return Optional.ofNullable(result);
+        }
+        LOGGER.info("Token for {} rejected by RPD, logging in again", userName);
+        Optional<UserSession> second = renew(first.get());
+        return second.isPresent() ? Optional.ofNullable(call.apply(second.get())) : Optional.of(result);
+    }
+
+    /**
+     * Sends the login request. Only one thread runs this for a user at a time.
+     *
+     * @return the outcome of the login
+     */
+    private Login login() {
+        LoginClient client = LoginClient.getInstance();
+        Optional<UserSession> fresh = client.login(userName, password);
+        if (!fresh.isPresent()) {
+            error = client.getErrorResponse();
+            LOGGER.warn("Login for {} failed: {}", userName, error);
+            return new Login(Optional.empty(), client.isUnavailable());
+        }
+        UserSession previous = session;
+        UserSession renewed = previous == null ? fresh.get() : fresh.get().withAdmin(previous.isAdmin());
+        issuedAt = System.nanoTime();
+        session = renewed;
+        SessionRegistry.getInstance().register(renewed);
+        LOGGER.debug("Token for {} renewed", userName);
+        scheduleRefresh(lifetimeNanos - marginNanos);
+        return new Login(Optional.of(renewed), false);
+    }
+
+    /**
+     * Schedules the background renewal of the token.
+     *
+     * @param delayNanos the time until the renewal
+     */
+    private synchronized void scheduleRefresh(long delayNanos) {
+        if (closed || lifetimeNanos == 0) {
+            return;
+        }
+        if (refresh != null) {
+            refresh.cancel(false);
+        }
+        refresh = REFRESHER.schedule(this::refresh, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Renews the token ahead of expiry. If RPD was unavailable the login is tried
+     * again after a quarter of the refresh margin, while the old token still
+     * works. Any other failure stops the renewal, so a rejected password is not
+     * sent again and again, and the next getSession logs in on demand.
+     */
+    private void refresh() {
+        Login login;
+        try {
+            login = LOGINS.execute(userName, this::login);
+        } catch (RuntimeException ex) {
+            LOGGER.error("Token refresh for {} failed, the next request will log in", userName, ex);
+            return;
+        }
+        if (login.session.isPresent()) {
+            return;
+        }
+        if (login.unavailable && !isExpired()) {
+            scheduleRefresh(Math.max(TimeUnit.SECONDS.toNanos(1), marginNanos / 4));
+        } else {
+            LOGGER.warn("Background token refresh for {} stopped, the next request will log in", userName);
+        }
+    }
+
+    /**
+     * Checks if the token has reached the end of its lifetime.
+     *
+     * @return true if the token has expired
+     */
+    private boolean isExpired() {
+        return lifetimeNanos > 0 && System.nanoTime() - issuedAt >= lifetimeNanos;
+    }
+
+    /**
+     * Stops renewing the token and forgets the user. The session is removed from
+     * the SessionRegistry but is not logged out of RPD.
+     */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            if (refresh != null) {
+                refresh.cancel(false);
+            }
+        }
+        MANAGERS.remove(userName, this);
+        UserSession current = session;
+        if (current != null) {
+            SessionRegistry.getInstance().remove(current);
+        }
+    }
+
+    /**
+     * Gets the user name.
+     *
+     * @return the user name
+     */
+    public String getUserName() {
+        return userName;
+    }
+
+    /**
+     * Retrieves the error response if the last login failed.
+     *
+     * @return an error response object.
+     */
+    public RpdErrorResponse getErrorResponse() {
+        return error;
+    }
+
+    /**
+     * The outcome of a login, shared by every thread that waited for it.
+     */
+    private static final class Login {
+        private final Optional<UserSession> session;
+        // True if the login failed because RPD was unavailable
+        private final boolean unavailable;
+
+        private Login(Optional<UserSession> session, boolean unavailable) {
+            this.session = session;
+            this.unavailable = unavailable;
+        }
+    }
+}
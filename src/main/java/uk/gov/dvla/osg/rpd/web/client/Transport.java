@@ -0,0 +1,38 @@
+package uk.gov.dvla.osg.rpd.web.client;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Sends HTTP requests to RPD. Every client builds a TransportRequest and sends it
+ * through the Transport returned by Transports.getInstance, so the HTTP library
+ * underneath can be changed in the config file without touching the clients.
+ * <p>
+ * Implementations must be thread-safe. A failure to reach the host or to read the
+ * response is raised as a ProcessingException, and an invalid URL as an
+ * IllegalArgumentException, whichever library is used.
+ */
+public interface Transport {
+
+    /**
+     * Gets the name of the transport, as used in the config file.
+     *
+     * @return the name
+     */
+    String getName();
+
+    /**
+     * Sends a request and reads the whole response.
+     *
+     * @param request the request
+     * @return the response
+     */
+    TransportResponse send(TransportRequest request);
+
+    /**
+     * Non-blocking version of send.
+     *
+     * @param request the request
+     * @return a stage completed with the response
+     */
+    CompletionStage<TransportResponse> sendAsync(TransportRequest request);
+}
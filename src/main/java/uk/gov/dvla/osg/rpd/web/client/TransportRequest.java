@@ -0,0 +1,390 @@
+package uk.gov.dvla.osg.rpd.web.client;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.core.UriBuilder;
+
+/**
+ * A request to RPD that any Transport can send. The body is either a form, a JSON
+ * document or a single multipart file, or is empty.
+ * <p>
+ * A request is built once and must not be changed after it has been sent, as it may
+ * be sent again by the RetryPolicy.
+ */
+public final class TransportRequest {
+
+    private final String method;
+    private String url;
+    private final Map<String, String> headers = new LinkedHashMap<>();
+    private final Map<String, String> queryParams = new LinkedHashMap<>();
+    private Map<String, String> form;
+    private String json;
+    private Part part;
+    private boolean chunked;
+    private boolean pinned;
+    private int timeoutMillis;
+
+    /**
+     * Creates a GET request.
+     *
+     * @param url the URL
+     * @return the request
+     */
+    public static TransportRequest get(String url) {
+        return new TransportRequest("GET", url);
+    }
+
+    /**
+     * Creates a POST request.
+     *
+     * @param url the URL
+     * @return the request
+     */
+    public static TransportRequest post(String url) {
+        return new TransportRequest("POST", url);
+    }
+
+    /**
+     * Creates a PATCH request.
+     *
+     * @param url the URL
+     * @return the request
+     */
+    public static TransportRequest patch(String url) {
+        return new TransportRequest("PATCH", url);
+    }
+
+    /**
+     * Instantiates a new transport request.
+     *
+     * @param method the HTTP method
+     * @param url the URL
+     */
+    private TransportRequest(String method, String url) {
+        this.method = method;
+        this.url = url;
+    }
+
+    /**
+     * Adds a header.
+     *
+     * @param name the header name
+     * @param value the header value
+     * @return this request
+     */
+    public TransportRequest header(String name, String value) {
+        headers.put(name, value);
+        return this;
+    }
+
+    /**
+     * Adds a query parameter. The value is encoded by the transport.
+     *
+     * @param name the parameter name
+     * @param value the parameter value
+     * @return this request
+     */
+    public TransportRequest queryParam(String name, String value) {
+        queryParams.put(name, value);
+        return this;
+    }
+
+    /**
+     * Appends an encoded path segment to the URL.
+     *
+     * @param segment the path segment
+     * @return this request
+     */
+    public TransportRequest path(String segment) {
+        url = UriBuilder.fromUri(url).path(segment).build().toString();
+        return this;
+    }
+
+    /**
+     * Adds a field to a form encoded body.
+     *
+     * @param name the field name
+     * @param value the field value
+     * @return this request
+     */
+    public TransportRequest form(String name, String value) {
+        if (form == null) {
+            form = new LinkedHashMap<>();
+        }
+        form.put(name, value);
+        return this;
+    }
+
+    /**
+     * Sets a JSON body.
+     *
+     * @param json the JSON document
+     * @return this request
+     */
+    public TransportRequest json(String json) {
+        this.json = json;
+        return this;
+    }
+
+    /**
+     * Sets a multipart body holding a single file.
+     *
+     * @param name the form field name
+     * @param file the file
+     * @param mediaType the media type of the file
+     * @return this request
+     */
+    public TransportRequest file(String name, File file, MediaType mediaType) {
+        part = new Part(name, file.getName(), file, output -> Files.copy(file.toPath(), output), file.length(), mediaType);
+        return this;
+    }
+
+    /**
+     * Sets a multipart body holding a single file written by the given writer.
+     *
+     * @param name the form field name
+     * @param fileName the file name sent to RPD
+     * @param length the number of bytes the writer produces
+     * @param writer writes the file content
+     * @param mediaType the media type of the file
+     * @return this request
+     */
+    public TransportRequest stream(String name, String fileName, long length, StreamingOutput writer, MediaType mediaType) {
+        part = new Part(name, fileName, null, writer, length, mediaType);
+        return this;
+    }
+
+    /**
+     * Sends the body with chunked transfer encoding, so that it is never buffered
+     * in memory.
+     *
+     * @return this request
+     */
+    public TransportRequest chunked() {
+        chunked = true;
+        return this;
+    }
+
+    /**
+     * Sends the request to exactly the host in the URL, bypassing the
+     * EndpointBalancer, the CircuitBreaker and the RetryPolicy. Used when every
+     * host is queried in turn.
+     *
+     * @return this request
+     */
+    public TransportRequest pinned() {
+        pinned = true;
+        return this;
+    }
+
+    /**
+     * Limits the time allowed to connect and to wait for each read of the
+     * response, in place of the connectTimeout and readTimeout settings.
+     *
+     * @param timeoutMillis the timeout in milliseconds, or 0 to use the settings
+     * @return this request
+     */
+    public TransportRequest timeout(int timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+        return this;
+    }
+
+    /**
+     * Creates a copy of the request sent to another URL.
+     *
+     * @param url the URL
+     * @return the copy
+     */
+    TransportRequest withUrl(String url) {
+        TransportRequest copy = new TransportRequest(method, url);
+        copy.headers.putAll(headers);
+        copy.queryParams.putAll(queryParams);
+        copy.form = form;
+        copy.json = json;
+        copy.part = part;
+        copy.chunked = chunked;
+        copy.pinned = pinned;
+        copy.timeoutMillis = timeoutMillis;
+        return copy;
+    }
+
+    /**
+     * Gets the HTTP method.
+     *
+     * @return the method
+     */
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * Gets the URL, without the query parameters.
+     *
+     * @return the URL
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * Gets the headers.
+     *
+     * @return the headers by name
+     */
+    public Map<String, String> getHeaders() {
+        return Collections.unmodifiableMap(headers);
+    }
+
+    /**
+     * Gets the query parameters.
+     *
+     * @return the query parameters by name
+     */
+    public Map<String, String> getQueryParams() {
+        return Collections.unmodifiableMap(queryParams);
+    }
+
+    /**
+     * Gets the fields of a form encoded body.
+     *
+     * @return the fields by name, or null if the body is not a form
+     */
+    public Map<String, String> getForm() {
+        return form == null ? null : Collections.unmodifiableMap(form);
+    }
+
+    /**
+     * Gets the JSON body.
+     *
+     * @return the JSON document, or null if the body is not JSON
+     */
+    public String getJson() {
+        return json;
+    }
+
+    /**
+     * Gets the file of a multipart body.
+     *
+     * @return the part, or null if the body is not multipart
+     */
+    public Part getPart() {
+        return part;
+    }
+
+    /**
+     * Checks if the body is sent with chunked transfer encoding.
+     *
+     * @return true if chunked
+     */
+    public boolean isChunked() {
+        return chunked;
+    }
+
+    /**
+     * Checks if the request bypasses the balancer, breaker and retries.
+     *
+     * @return true if pinned to the host in the URL
+     */
+    public boolean isPinned() {
+        return pinned;
+    }
+
+    /**
+     * Gets the connect and read timeout for this request.
+     *
+     * @return the timeout in milliseconds, or 0 if the settings apply
+     */
+    public int getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * Checks if the request may safely be sent more than once.
+     *
+     * @return true for GET requests
+     */
+    public boolean isIdempotent() {
+        return "GET".equals(method);
+    }
+
+    /**
+     * A file sent as the only part of a multipart/form-data body.
+     */
+    public static final class Part {
+        private final String name;
+        private final String fileName;
+        private final File file;
+        private final StreamingOutput writer;
+        private final long length;
+        private final MediaType mediaType;
+
+        private Part(String name, String fileName, File file, StreamingOutput writer, long length, MediaType mediaType) {
+            this.name = name;
+            this.fileName = fileName;
+            this.file = file;
+            this.writer = writer;
+            this.length = length;
+            this.mediaType = mediaType;
+        }
+
+        /**
+         * Gets the form field name.
+         *
+         * @return the name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Gets the file name sent to RPD.
+         *
+         * @return the file name
+         */
+        public String getFileName() {
+            return fileName;
+        }
+
+        /**
+         * Gets the file, when the part was created from one.
+         *
+         * @return the file, or null if the content comes only from the writer
+         */
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * Gets the writer of the file content. It may be called once for each attempt.
+         *
+         * @return the writer
+         */
+        public StreamingOutput getWriter() {
+            return writer;
+        }
+
+        /**
+         * Gets the length of the content.
+         *
+         * @return the number of bytes
+         */
+        public long getLength() {
+            return length;
+        }
+
+        /**
+         * Gets the media type of the content.
+         *
+         * @return the media type
+         */
+        public MediaType getMediaType() {
+            return mediaType;
+        }
+    }
+}
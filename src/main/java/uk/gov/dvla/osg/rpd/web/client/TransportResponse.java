@@ -0,0 +1,118 @@
+package uk.gov.dvla.osg.rpd.web.client;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+import org.apache.http.client.utils.DateUtils;
+
+/**
+ * A response from RPD, read in full by the Transport. As the body has already been
+ * read, the response holds no connection and does not need to be closed.
+ */
+public final class TransportResponse {
+
+    private final int status;
+    private final Map<String, List<String>> headers;
+    private final String body;
+
+    /**
+     * Instantiates a new transport response.
+     *
+     * @param status the HTTP status code
+     * @param headers the header values by name
+     * @param body the body, or an empty string if there was none
+     */
+    TransportResponse(int status, Map<String, List<String>> headers, String body) {
+        Map<String, List<String>> copy = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        copy.putAll(headers);
+        this.status = status;
+        this.headers = Collections.unmodifiableMap(copy);
+        this.body = body == null ? "" : body;
+    }
+
+    /**
+     * Gets the HTTP status code.
+     *
+     * @return the status
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * Gets the body.
+     *
+     * @return the body, or an empty string if there was none
+     */
+    public String getBody() {
+        return body;
+    }
+
+    /**
+     * Gets the first value of a header.
+     *
+     * @param name the header name, in any case
+     * @return the value, or null if the header was not sent
+     */
+    public String getHeader(String name) {
+        List<String> values = headers.get(name);
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
+    /**
+     * Gets all the headers.
+     *
+     * @return the header values by name
+     */
+    public Map<String, List<String>> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Gets the media type of the body.
+     *
+     * @return the media type, or null if RPD did not send one
+     */
+    public MediaType getMediaType() {
+        String contentType = getHeader(HttpHeaders.CONTENT_TYPE);
+        return contentType == null ? null : MediaType.valueOf(contentType);
+    }
+
+    /**
+     * Gets the entity tag.
+     *
+     * @return the entity tag, or null if RPD did not send one
+     */
+    public EntityTag getEntityTag() {
+        String eTag = getHeader(HttpHeaders.ETAG);
+        return eTag == null ? null : EntityTag.valueOf(eTag);
+    }
+
+    /**
+     * Gets the last modified date.
+     *
+     * @return the date, or null if RPD did not send one or it could not be parsed
+     */
+    public Date getLastModified() {
+        String lastModified = getHeader(HttpHeaders.LAST_MODIFIED);
+        return lastModified == null ? null : DateUtils.parseDate(lastModified);
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("status", status)
+                .append("mediaType", getHeader(HttpHeaders.CONTENT_TYPE))
+                .append("length", body.length())
+                .toString();
+    }
+}
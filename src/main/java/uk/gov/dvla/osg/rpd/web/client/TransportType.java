@@ -0,0 +1,46 @@
+package uk.gov.dvla.osg.rpd.web.client;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * The HTTP libraries a Transport can be built on, selected with the transport
+ * property in the config file.
+ */
+public enum TransportType {
+
+    /** The JAX-RS client, over the pooled Apache connector. The default. */
+    JERSEY("jersey"),
+    /** The Apache client directly, sharing the same connection pool. */
+    APACHE("apache");
+
+    private final String name;
+
+    TransportType(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Gets the name used in the config file.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the type with the given config name, ignoring case.
+     *
+     * @param name the name from the config file
+     * @return the type
+     * @throws IllegalArgumentException if no type has the name
+     */
+    public static TransportType fromName(String name) {
+        for (TransportType type : values()) {
+            if (type.name.equalsIgnoreCase(StringUtils.trim(name))) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Value [" + name + "] is not valid for the property [transport].");
+    }
+}
@@ -0,0 +1,125 @@
+package uk.gov.dvla.osg.rpd.web.client;
+
+import java.util.concurrent.CompletionStage;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import uk.gov.dvla.osg.rpd.web.config.NetworkConfig;
+
+/**
+ * Creates the Transport used by the clients. The HTTP library is chosen with the
+ * transport property in the config file, jersey or apache, defaulting to jersey.
+ * <p>
+ * Whichever library is chosen, each request goes through the EndpointBalancer, the
+ * CircuitBreaker for its host and the RetryPolicy, and both libraries share the
+ * connections held by the HttpClientPool.
+ */
+public final class Transports {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    /**
+     * ****************************************************************************************
+     *                              SINGLETON PATTERN
+     * ****************************************************************************************.
+     */
+
+    private static Transport instance;
+
+    /**
+     * Gets the transport selected in the NetworkConfig, creating it on first use.
+     *
+     * @return the shared transport
+     */
+    public static synchronized Transport getInstance() {
+        if (instance == null) {
+            instance = create(fromConfig(NetworkConfig.getInstance()));
+            LOGGER.debug("Sending requests to RPD with the {} transport", instance.getName());
+        }
+        return instance;
+    }
+
+    /**
+     * Discards the shared transport, so that the next call to getInstance reads the
+     * NetworkConfig again. The connections are held by the HttpClientPool and are
+     * not closed.
+     */
+    public static synchronized void reset() {
+        instance = null;
+    }
+
+    /** **************************************************************************************. */
+
+    private Transports() {
+    }
+
+    /**
+     * Creates a new transport on the given library, so that the libraries can be
+     * compared side by side with the same requests.
+     *
+     * @param type the library
+     * @return the transport
+     */
+    public static Transport create(TransportType type) {
+        switch (type) {
+        case APACHE:
+            return new ResilientTransport(new ApacheTransport());
+        case JERSEY:
+        default:
+            return new ResilientTransport(new JerseyTransport());
+        }
+    }
+
+    /**
+     * Reads the library from the config, falling back to jersey if the value is
+     * not recognised.
+     *
+     * @param config the network config
+     * @return the library
+     */
+    private static TransportType fromConfig(NetworkConfig config) {
+        try {
+            return TransportType.fromName(config.getTransport());
+        } catch (IllegalArgumentException ex) {
+            LOGGER.warn("{} Using the {} transport", ex.getMessage(), TransportType.JERSEY.getName());
+            return TransportType.JERSEY;
+        }
+    }
+
+    /**
+     * Sends each request through the balancer, breaker and retry policy before
+     * handing it to the underlying library. Pinned requests go straight to the library.
+     */
+    private static final class ResilientTransport implements Transport {
+
+        private final Transport delegate;
+
+        private ResilientTransport(Transport delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public String getName() {
+            return delegate.getName();
+        }
+
+        @Override
+        public TransportResponse send(TransportRequest request) {
+            if (request.isPinned()) {
+                return delegate.send(request);
+            }
+            return RestClient.execute(request.getUrl(), request.isIdempotent(),
+                    url -> delegate.send(request.withUrl(url)), TransportResponse::getStatus, response -> { });
+        }
+
+        @Override
+        public CompletionStage<TransportResponse> sendAsync(TransportRequest request) {
+            if (request.isPinned()) {
+                return delegate.sendAsync(request);
+            }
+            return RestClient.executeAsync(request.getUrl(), request.isIdempotent(),
+                    url -> delegate.sendAsync(request.withUrl(url)), TransportResponse::getStatus, response -> { });
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package uk.gov.dvla.osg.rpd.web.client;
+
+/**
+ * Receives progress updates while a file is streamed to RPD.
+ */
+@FunctionalInterface
+public interface UploadProgressListener {
+
+    /**
+     * Called each time a chunk of the file has been written to the connection.
+     *
+     * @param bytesSent the number of bytes of the file sent so far
+     * @param totalBytes the size of the file in bytes
+     */
+    void onProgress(long bytesSent, long totalBytes);
+}
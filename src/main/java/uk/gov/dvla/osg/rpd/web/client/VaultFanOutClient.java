@@ -0,0 +1,229 @@
+package uk.gov.dvla.osg.rpd.web.client;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import uk.gov.dvla.osg.rpd.web.config.NetworkConfig;
+import uk.gov.dvla.osg.rpd.web.error.RpdErrorResponse;
+import uk.gov.dvla.osg.vault.data.CardStock;
+import uk.gov.dvla.osg.vault.data.Environment;
+import uk.gov.dvla.osg.vault.data.StockTotals;
+import uk.gov.dvla.osg.vault.data.VaultStock;
+import uk.gov.dvla.osg.vault.data.Volume;
+import uk.gov.dvla.osg.vault.enums.Status;
+
+/**
+ * Queries the vault on every RPD host listed in the NetworkConfig at the same
+ * time and merges the responses into a single VaultStock. Volumes of the same
+ * card type, card class, site and status are added together across hosts.
+ * <p>
+ * Each host has until the timeout to respond. The timeout is also set as the
+ * connect and read timeout of each request, so a host that misses it does not
+ * hold its thread and connection for long afterwards. A host that fails or does
+ * not respond in time is reported in the result, and the stock is merged from
+ * the hosts that did respond.
+ */
+public class VaultFanOutClient {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    // One thread for each host
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(
+            Math.max(1, NetworkConfig.getInstance().getVaultUrls().size()), runnable -> {
+                Thread thread = new Thread(runnable, "rpd-vault-fan-out");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private final List<String> urls;
+
+    /**
+     * Creates a new instance of VaultFanOutClient
+     *
+     * @param config NetworkConfig object holding the host and vault url information.
+     * @return a new instance of VaultFanOutClient
+     */
+    public static VaultFanOutClient getInstance(NetworkConfig config) {
+        return new VaultFanOutClient(config.getVaultUrls());
+    }
+
+    /**
+     * Instantiates a new vault fan out client.
+     *
+     * @param urls the vault url on each host
+     */
+    private VaultFanOutClient(List<String> urls) {
+        this.urls = urls;
+    }
+
+    /**
+     * Requests the vault stock from every host and merges the responses.
+     *
+     * @param token the session token to authenticate with RPD.
+     * @param timeoutMillis the time allowed for every host to respond
+     * @return the merged stock along with any host failures
+     */
+    public FanOutResult getStock(String token, long timeoutMillis) {
+        List<VaultStockClient> clients = new ArrayList<>(urls.size());
+        List<CompletableFuture<Optional<VaultStock>>> futures = new ArrayList<>(urls.size());
+        int requestTimeout = (int) Math.min(Integer.MAX_VALUE, Math.max(1, timeoutMillis));
+        for (String url : urls) {
+            VaultStockClient client = VaultStockClient.forUrl(url, requestTimeout);
+            clients.add(client);
+            futures.add(CompletableFuture.supplyAsync(() -> client.getStock(token), EXECUTOR));
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        List<VaultStock> responses = new ArrayList<>();
+        List<String> responded = new ArrayList<>();
+        Map<String, RpdErrorResponse> failures = new LinkedHashMap<>();
+        for (int i = 0; i < urls.size(); i++) {
+            String url = urls.get(i);
+            CompletableFuture<Optional<VaultStock>> future = futures.get(i);
+            try {
+                Optional<VaultStock> stock = future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                if (stock.isPresent()) {
+                    responses.add(stock.get());
+                    responded.add(url);
+                } else {
+                    failures.put(url, clients.get(i).getErrorResponse());
+                }
+            } catch (TimeoutException ex) {
+                // The request gives up by itself once its read or connect timeout passes
+                failures.put(url, timeoutError(url, timeoutMillis));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                failures.put(url, timeoutError(url, timeoutMillis));
+            } catch (ExecutionException ex) {
+                failures.put(url, clients.get(i).getErrorResponse());
+            }
+        }
+        failures.forEach((url, error) -> LOGGER.warn("Vault query to {} failed: {}", url, error));
+        return new FanOutResult(responses.isEmpty() ? null : merge(responses), responded, failures);
+    }
+
+    /**
+     * Creates the error response for a host that did not respond in time.
+     *
+     * @param url the vault url
+     * @param timeoutMillis the timeout
+     * @return the error response
+     */
+    private static RpdErrorResponse timeoutError(String url, long timeoutMillis) {
+        RpdErrorResponse error = new RpdErrorResponse();
+        error.setCode("Vault Connection Error:");
+        error.setMessage("No response from [" + url + "] within " + timeoutMillis + "ms");
+        error.setAction("Please wait a few minutes and then try again. If the problem persits, please contact Dev team.");
+        return error;
+    }
+
+    /**
+     * Merges the stock from several hosts. Card stock with a card class, site or
+     * status that is not recognised is left out.
+     *
+     * @param responses the stock from each host
+     * @return the merged stock
+     */
+    static VaultStock merge(List<VaultStock> responses) {
+        if (responses.size() == 1) {
+            return responses.get(0);
+        }
+        Map<String, Merged> test = null;
+        Map<String, Merged> production = null;
+        for (VaultStock stock : responses) {
+            StockTotals totals = stock.getStockTotals();
+            if (totals == null) {
+                continue;
+            }
+            if (totals.getTest() != null) {
+                test = add(test, totals.getTest());
+            }
+            if (totals.getProduction() != null) {
+                production = add(production, totals.getProduction());
+            }
+        }
+        return new VaultStock(new StockTotals(toEnvironment(test), toEnvironment(production)));
+    }
+
+    /**
+     * Adds the card stock of an environment to the merged entries. Card stock is
+     * checked in full before it is added, so unrecognised card stock never leaves
+     * a partly merged entry.
+     *
+     * @param merged the merged entries, or null if there are none yet
+     * @param environment the environment
+     * @return the merged entries
+     */
+    private static Map<String, Merged> add(Map<String, Merged> merged, Environment environment) {
+        Map<String, Merged> result = merged == null ? new LinkedHashMap<>() : merged;
+        if (environment.getCardStock() == null) {
+            return result;
+        }
+        for (CardStock stock : environment.getCardStock()) {
+            if (stock == null) {
+                continue;
+            }
+            String key;
+            Map<Status, Integer> volumes = new EnumMap<>(Status.class);
+            try {
+                key = stock.getCardType() + "|" + stock.getCardClass() + "|" + stock.getSite();
+                if (stock.getVolumes() != null) {
+                    for (Volume volume : stock.getVolumes()) {
+                        volumes.merge(volume.getStatus(), volume.getContent(), Integer::sum);
+                    }
+                }
+            } catch (RuntimeException ex) {
+                LOGGER.warn("Unrecognised card stock {} left out of merged vault stock", stock.getCardType());
+                continue;
+            }
+            Merged entry = result.computeIfAbsent(key, k -> new Merged(stock));
+            volumes.forEach((status, content) -> entry.volumes.merge(status, content, Integer::sum));
+        }
+        return result;
+    }
+
+    /**
+     * Builds an environment from the merged entries.
+     *
+     * @param merged the merged entries, or null if no host returned the environment
+     * @return the environment, or null
+     */
+    private static Environment toEnvironment(Map<String, Merged> merged) {
+        if (merged == null) {
+            return null;
+        }
+        List<CardStock> cardStock = new ArrayList<>(merged.size());
+        for (Merged entry : merged.values()) {
+            List<Volume> volumes = new ArrayList<>(entry.volumes.size());
+            entry.volumes.forEach((status, content) -> volumes.add(new Volume(content, status.name())));
+            cardStock.add(new CardStock(entry.stock.getFirstUCI(), entry.stock.getCardType(),
+                    entry.stock.getCardClass().name(), entry.stock.getSite().name(), volumes));
+        }
+        return new Environment(cardStock);
+    }
+
+    /**
+     * A card type, card class and site with its volumes totalled across hosts.
+     */
+    private static final class Merged {
+        private final CardStock stock;
+        private final Map<Status, Integer> volumes = new EnumMap<>(Status.class);
+
+        private Merged(CardStock stock) {
+            this.stock = stock;
+        }
+    }
+}
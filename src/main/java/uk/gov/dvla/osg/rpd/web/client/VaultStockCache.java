@@ -0,0 +1,241 @@
+package uk.gov.dvla.osg.rpd.web.client;
+
+import java.util.Date;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.ws.rs.core.EntityTag;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import uk.gov.dvla.osg.rpd.web.config.NetworkConfig;
+import uk.gov.dvla.osg.rpd.web.error.RpdErrorResponse;
+import uk.gov.dvla.osg.vault.data.VaultStock;
+
+/**
+ * Caches the VaultStock returned by the VaultStockClient.
+ * <p>
+ * Within the time to live the cached stock is returned without contacting RPD.
+ * For the stale period after that the cached stock is still returned, but a
+ * single background request refreshes it. Once the stale period has passed the
+ * caller waits for a fresh copy. Refresh requests send the ETag and Last-Modified
+ * values of the cached response, so an unchanged payload costs only a 304 response.
+ * <p>
+ * Cached stock is only returned to callers presenting the session token it was
+ * fetched with. A different token, such as the one issued after a new login,
+ * always goes to RPD, so it is checked there before any stock is returned.
+ * A token that RPD revokes is still served from the cache until the entry
+ * needs to be refreshed; call invalidate() when logging out.
+ * <p>
+ * The cache is thread-safe and should be held for the lifetime of the application.
+ */
+public class VaultStockCache {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    // Shared by every cache, so caches need not be closed
+    private static final ExecutorService REFRESHER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "rpd-vault-cache-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final NetworkConfig config;
+    private final long ttlMillis;
+    private final long staleMillis;
+    private final AtomicBoolean refreshing = new AtomicBoolean(false);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+
+    private volatile Entry entry;
+    private volatile RpdErrorResponse error = new RpdErrorResponse();
+
+    /**
+     * Creates a cache using the vaultCacheTtl and vaultCacheStaleTtl settings in the config.
+     *
+     * @param config NetworkConfig object holding the vault url information.
+     * @return a new VaultStockCache
+     */
+    public static VaultStockCache getInstance(NetworkConfig config) {
+        return new VaultStockCache(config,
+                TimeUnit.SECONDS.toMillis(config.getVaultCacheTtl()),
+                TimeUnit.SECONDS.toMillis(config.getVaultCacheStaleTtl()));
+    }
+
+    /**
+     * Creates a cache with the given lifetimes.
+     *
+     * @param config NetworkConfig object holding the vault url information.
+     * @param ttlMillis the time cached stock is returned without contacting RPD
+     * @param staleMillis the time after the ttl that cached stock is returned while it is refreshed
+     * @return a new VaultStockCache
+     */
+    public static VaultStockCache getInstance(NetworkConfig config, long ttlMillis, long staleMillis) {
+        return new VaultStockCache(config, ttlMillis, staleMillis);
+    }
+
+    /**
+     * Instantiates a new vault stock cache.
+     *
+     * @param config the network config
+     * @param ttlMillis the time to live
+     * @param staleMillis the stale period
+     */
+    private VaultStockCache(NetworkConfig config, long ttlMillis, long staleMillis) {
+        this.config = config;
+        this.ttlMillis = ttlMillis;
+        this.staleMillis = staleMillis;
+    }
+
+    /**
+     * Gets the vault stock, from the cache where possible.
+     *
+     * @param token the session token to authenticate with RPD.
+     * @return VaultStock if available, an empty optional if it could not be retrieved.
+     */
+    public Optional<VaultStock> getStock(String token) {
+        Entry current = entry;
+        long now = System.currentTimeMillis();
+        if (current != null && Objects.equals(current.token, token)) {
+            long age = now - current.fetched;
+            if (age < ttlMillis) {
+                hits.incrementAndGet();
+                return Optional.of(current.stock);
+            }
+            if (age < ttlMillis + staleMillis) {
+                hits.incrementAndGet();
+                if (refreshing.compareAndSet(false, true)) {
+                    REFRESHER.execute(() -> {
+                        try {
+                            refresh(token);
+                        } finally {
+                            refreshing.set(false);
+                        }
+                    });
+                }
+                return Optional.of(current.stock);
+            }
+        }
+        misses.incrementAndGet();
+        return load(token, now);
+    }
+
+    /**
+     * Fetches the stock while the caller waits. Concurrent callers wait for the
+     * first one rather than each sending a request.
+     *
+     * @param token the session token
+     * @param requested the time the caller asked for the stock
+     * @return the stock, or an empty optional if it could not be retrieved
+     */
+    private synchronized Optional<VaultStock> load(String token, long requested) {
+        Entry current = entry;
+        // Refreshed by another thread with the same token while this one was waiting
+        if (current != null && Objects.equals(current.token, token) && current.fetched >= requested) {
+            return Optional.of(current.stock);
+        }
+        Entry refreshed = refresh(token);
+        return refreshed == null ? Optional.empty() : Optional.of(refreshed.stock);
+    }
+
+    /**
+     * Sends a request to RPD and updates the cache. The request is conditional
+     * only if the cached stock was fetched with the same token.
+     *
+     * @param token the session token
+     * @return the new cache entry, or null if the request failed
+     */
+    private Entry refresh(String token) {
+        Entry current = entry;
+        VaultStockClient client = VaultStockClient.getInstance(config);
+        if (current != null && !Objects.equals(current.token, token)) {
+            current = null;
+        }
+        Optional<VaultStock> stock = current == null
+                ? client.getStock(token)
+                : client.getStockIfModified(token, current.eTag, current.lastModified);
+        long now = System.currentTimeMillis();
+        if (stock.isPresent()) {
+            entry = new Entry(token, stock.get(), client.getETag(), client.getLastModified(), now);
+        } else if (client.isNotModified()) {
+            notModified.incrementAndGet();
+            entry = new Entry(token, current.stock, current.eTag, current.lastModified, now);
+        } else {
+            error = client.getErrorResponse();
+            LOGGER.warn("Unable to refresh vault stock: {}", error);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Removes the cached stock, so that the next call fetches a fresh copy.
+     */
+    public void invalidate() {
+        entry = null;
+    }
+
+    /**
+     * Gets the number of requests served from the cache, including stale responses.
+     *
+     * @return the hit count
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Gets the number of requests that had to wait for RPD.
+     *
+     * @return the miss count
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Gets the number of refreshes answered with 304 Not Modified.
+     *
+     * @return the not modified count
+     */
+    public long getNotModifiedCount() {
+        return notModified.get();
+    }
+
+    /**
+     * Retrieves the error response if an empty optional was returned from the
+     * getStock method.
+     *
+     * @return an error response object.
+     */
+    public RpdErrorResponse getErrorResponse() {
+        return error;
+    }
+
+    /**
+     * A cached response along with its validators and the token it was fetched with.
+     */
+    private static final class Entry {
+        private final String token;
+        private final VaultStock stock;
+        private final EntityTag eTag;
+        private final Date lastModified;
+        private final long fetched;
+
+        private Entry(String token, VaultStock stock, EntityTag eTag, Date lastModified, long fetched) {
+            this.token = token;
+            this.stock = stock;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            this.fetched = fetched;
+        }
+    }
+}
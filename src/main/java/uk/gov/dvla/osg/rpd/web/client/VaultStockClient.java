@@ -1,10 +1,14 @@
 package uk.gov.dvla.osg.rpd.web.client;
 
+import java.io.IOException;
+import java.util.Date;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 import javax.ws.rs.ProcessingException;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.MediaType;
-import javax.ws.rs.core.Response;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -23,8 +27,21 @@ public class VaultStockClient {
 
     private static final Logger LOGGER = LogManager.getLogger();
 
+    // Requests for the same stock and token that are in flight, shared by all clients
+    private static final SingleFlight<String, Fetch> IN_FLIGHT = new SingleFlight<>();
+
     private RpdErrorResponse error = new RpdErrorResponse();
     private final String url;
+    // True if requests must go to the host in the url rather than through the EndpointBalancer
+    private final boolean pinned;
+    // Connect and read timeout for each request, or 0 to use the NetworkConfig settings
+    private final int timeoutMillis;
+    // Cache validators from the last response
+    private boolean notModified = false;
+    // True if the last request failed because RPD could not be reached or had a server error
+    private boolean unavailable = false;
+    private EntityTag eTag;
+    private Date lastModified;
 
     /**
      * Creates a new instance of VaultStockClient
@@ -36,8 +53,25 @@ public class VaultStockClient {
         return new VaultStockClient(config);
     }
 
+    /**
+     * Creates a new instance of VaultStockClient for the vault on a specific host.
+     * 
+     * @param url the vault url on the host.
+     * @param timeoutMillis the connect and read timeout for each request.
+     * @return a new instance of VaultStockClient
+     */
+    static VaultStockClient forUrl(String url, int timeoutMillis) {
+        return new VaultStockClient(url, true, timeoutMillis);
+    }
+
     private VaultStockClient(NetworkConfig config) {
-        this.url = config.getvaultUrl();
+        this(config.getvaultUrl(), false, 0);
+    }
+
+    private VaultStockClient(String url, boolean pinned, int timeoutMillis) {
+        this.url = url;
+        this.pinned = pinned;
+        this.timeoutMillis = timeoutMillis;
     }
 
     /**
@@ -49,40 +83,189 @@ public class VaultStockClient {
      *         conditions.
      */
     public Optional<VaultStock> getStock(String token) {
-        try (Response response = RestClient.vaultStock(url)) {
+        // Callers arriving while an identical request is in flight share its result
+        Fetch fetch = IN_FLIGHT.execute(url + (pinned ? " pinned " : " ") + token, () -> fetch(token));
+        eTag = fetch.eTag;
+        lastModified = fetch.lastModified;
+        unavailable = fetch.unavailable;
+        if (!fetch.stock.isPresent()) {
+            error = fetch.error.copy();
+        }
+        return fetch.stock;
+    }
+
+    /**
+     * Sends the request for getStock.
+     * 
+     * @param token the session token to authenticate with RPD.
+     * @return the outcome of the request
+     */
+    private Fetch fetch(String token) {
+        Optional<VaultStock> stock = Optional.empty();
+        try {
+            TransportRequest request = RpdRequests.vaultStock(url, token).timeout(timeoutMillis);
+            TransportResponse response = Transports.getInstance().send(pinned ? request.pinned() : request);
+            stock = handleResponse(response);
+        } catch (Exception ex) {
+            handleException(ex);
+        }
+        return new Fetch(stock, error, unavailable, eTag, lastModified);
+    }
 
-            String data = response.readEntity(String.class);
-            if (response.getStatus() == 200) {
-                LOGGER.trace(data);
-                return Optional.ofNullable(JsonUtils.loadStockFile(data));
+    /**
+     * Requests VaultStock data from RPD, sending the validators from a previous
+     * response so that RPD can reply with 304 Not Modified if the stock is unchanged.
+     * 
+     * @param token the session token to authenticate with RPD.
+     * @param eTag the entity tag from the previous response, or null.
+     * @param lastModified the last modified date from the previous response, or null.
+     * @return VaultStock if the stock has changed, an empty optional if it is
+     *         unchanged (isNotModified is true) or for error conditions.
+     */
+    public Optional<VaultStock> getStockIfModified(String token, EntityTag eTag, Date lastModified) {
+        notModified = false;
+        try {
+            TransportResponse response = Transports.getInstance().send(RpdRequests.vaultStockIfModified(url, token, eTag, lastModified));
+            if (response.getStatus() == 304) {
+                notModified = true;
+                return Optional.empty();
             }
-            MediaType mediaType = response.getMediaType();
-            // If RPD has been contacted an RPD error response is recieved in XML format
-            if (mediaType.equals(MediaType.APPLICATION_XML_TYPE)) {
-                error = new xmlUtils().getXmlError(data);
-            } else {
-                error.setCode("Login Error:");
-                error.setMessage("Response is not JSON!");
+            return handleResponse(response);
+        } catch (Exception ex) {
+            handleException(ex);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Non-blocking version of getStock. The request is sent through the Transport
+     * and the response is converted on the supplied executor.
+     * 
+     * @param token the session token to authenticate with RPD.
+     * @param executor the executor used to process the response.
+     * @return a future holding the VaultStock if session token is valid, an empty
+     *         optional for error conditions.
+     */
+    public CompletableFuture<Optional<VaultStock>> getStockAsync(String token, Executor executor) {
+        return Transports.getInstance().sendAsync(RpdRequests.vaultStock(url, token))
+                .handleAsync((response, throwable) -> {
+                    if (throwable != null) {
+                        handleException(RestClient.unwrap(throwable));
+                        return Optional.<VaultStock>empty();
+                    }
+                    try {
+                        return handleResponse(response);
+                    } catch (Exception ex) {
+                        handleException(ex);
+                        return Optional.<VaultStock>empty();
+                    }
+                }, executor)
+                .toCompletableFuture();
+    }
+
+    /**
+     * Converts a successful response to a VaultStock object, otherwise maps the
+     * error information.
+     * 
+     * @param response the response from RPD.
+     * @return the VaultStock, or an empty optional if the request failed.
+     */
+    private Optional<VaultStock> handleResponse(TransportResponse response) throws IOException {
+        String data = response.getBody();
+        unavailable = response.getStatus() >= 500;
+        if (response.getStatus() == 200) {
+            LOGGER.trace(data);
+            eTag = response.getEntityTag();
+            lastModified = response.getLastModified();
+            return Optional.ofNullable(JsonUtils.loadStockFile(data));
+        }
+        MediaType mediaType = response.getMediaType();
+        // If RPD has been contacted an RPD error response is recieved in XML format
+        if (mediaType.equals(MediaType.APPLICATION_XML_TYPE)) {
+            error = new xmlUtils().getXmlError(data);
+            if (error == null) {
+                // RPD sent an error status without any details
+                error = new RpdErrorResponse();
+                error.setCode("Vault Connection Error:");
+                error.setMessage("RPD returned status " + response.getStatus() + " without any error details.");
                 error.setAction("Please notify Dev Team.");
             }
-        } catch (ProcessingException ex) {
+        } else {
+            error.setCode("Login Error:");
+            error.setMessage("Response is not JSON!");
+            error.setAction("Please notify Dev Team.");
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Maps an exception raised while contacting RPD to the error response.
+     * 
+     * @param ex the exception.
+     */
+    private void handleException(Exception ex) {
+        // Connection failures and timeouts from either transport arrive as ProcessingException
+        unavailable = ex instanceof CircuitOpenException || ex instanceof ProcessingException;
+        if (ex instanceof CircuitOpenException) {
+            error.setCode("Vault Connection Error:");
+            error.setMessage("Requests to RPD are paused after repeated failures. Retrying in "
+                    + (((CircuitOpenException) ex).getRetryAfterMillis() / 1000 + 1) + " seconds");
+            error.setAction("Please wait a few minutes and then try again. If the problem persits, please contact Dev team.");
+        } else if (ex instanceof ProcessingException) {
             error.setCode("Vault Connection Error:");
             error.setMessage("Unable to connect to RPD web service. Connection timed out");
             error.setAction("Please wait a few minutes and then try again. If the problem persits, please contact Dev team.");
-        } catch (NullPointerException ex) {
+        } else if (ex instanceof NullPointerException) {
             error.setCode("Vault Connection Error:");
             error.setMessage("Unable to connect to RPD web service. Invalid IP address for RPD");
             error.setAction("To resolve, check all parts of the login URL in the application config file.");
-        } catch (IllegalArgumentException ex) {
+        } else if (ex instanceof IllegalArgumentException) {
             error.setCode("Vault Connection Error:");
             error.setMessage("Invalid URL in config file [" + url + "]. Please check configuration.");
             error.setAction("To resolve, check all parts of the login URL in the application config file. " + "This problem is usually caused by either a missing value in the URL or an illegal character.");
-        } catch (Exception ex) {
+        } else {
             error.setCode("Vault Connection Error:");
             error.setMessage("Unable to connect to vault.");
             error.setAction("Please contact Dev Team");
         }
-        return Optional.empty();
+    }
+
+    /**
+     * Checks if RPD replied that the stock is unchanged.
+     * 
+     * @return true if a 304 response was received
+     */
+    public boolean isNotModified() {
+        return notModified;
+    }
+
+    /**
+     * Checks if the last request failed because RPD could not be reached, timed
+     * out, was paused by the CircuitBreaker or answered with a server error. Other
+     * failures, such as an expired token, are reported by RPD and are not outages.
+     * 
+     * @return true if RPD was unavailable
+     */
+    public boolean isUnavailable() {
+        return unavailable;
+    }
+
+    /**
+     * Gets the entity tag of the last successful response.
+     * 
+     * @return the entity tag, or null if RPD did not send one
+     */
+    public EntityTag getETag() {
+        return eTag;
+    }
+
+    /**
+     * Gets the last modified date of the last successful response.
+     * 
+     * @return the last modified date, or null if RPD did not send one
+     */
+    public Date getLastModified() {
+        return lastModified;
     }
 
     /**
@@ -95,4 +278,22 @@ public class VaultStockClient {
         return error;
     }
 
+    /**
+     * The outcome of a getStock request, shared by every caller that waited for it.
+     */
+    private static final class Fetch {
+        private final Optional<VaultStock> stock;
+        private final RpdErrorResponse error;
+        private final boolean unavailable;
+        private final EntityTag eTag;
+        private final Date lastModified;
+
+        private Fetch(Optional<VaultStock> stock, RpdErrorResponse error, boolean unavailable, EntityTag eTag, Date lastModified) {
+            this.stock = stock;
+            this.error = error;
+            this.unavailable = unavailable;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+        }
+    }
 }
@@ -0,0 +1,26 @@
+package uk.gov.dvla.osg.rpd.web.client;
+
+import uk.gov.dvla.osg.rpd.web.error.RpdErrorResponse;
+import uk.gov.dvla.osg.vault.data.VaultStock;
+
+/**
+ * Receives the vault stock retrieved by the VaultStockPoller.
+ */
+@FunctionalInterface
+public interface VaultStockListener {
+
+    /**
+     * Called with the first snapshot and with each later snapshot that differs
+     * from the one before.
+     *
+     * @param stock the vault stock
+     */
+    void onStock(VaultStock stock);
+
+    /**
+     * Called when a poll fails.
+     *
+     * @param error the error response
+     */
+    default void onError(RpdErrorResponse error) { }
+}
@@ -0,0 +1,325 @@
+package uk.gov.dvla.osg.rpd.web.client;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import javax.ws.rs.core.EntityTag;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import uk.gov.dvla.osg.rpd.web.config.NetworkConfig;
+import uk.gov.dvla.osg.rpd.web.config.UserSession;
+import uk.gov.dvla.osg.rpd.web.error.RpdErrorResponse;
+import uk.gov.dvla.osg.vault.data.VaultStock;
+import uk.gov.dvla.osg.vault.diff.StockDiff;
+
+/**
+ * Polls RPD for the vault stock on behalf of every consumer in the JVM and passes
+ * each new snapshot to the registered listeners.
+ * <p>
+ * The interval between polls adapts to the data. It is halved each time the stock
+ * changes and grows by half each time it is unchanged, within the
+ * vaultPollMinInterval and vaultPollMaxInterval settings. It is never less than
+ * ten times the last response time, so a slow RPD is not polled harder. After a
+ * failed poll the interval doubles for each consecutive failure, up to the maximum.
+ */
+public final class VaultStockPoller {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    // Minimum ratio of the poll interval to the response time
+    private static final int RESPONSE_TIME_FACTOR = 10;
+
+    /**
+     * ****************************************************************************************
+     *                              SINGLETON PATTERN
+     * ****************************************************************************************.
+     */
+
+    private static VaultStockPoller instance;
+
+    /**
+     * Gets the shared poller, creating it from the NetworkConfig on first use or
+     * after the poller has been shut down. Call start to begin polling.
+     *
+     * @return the shared poller
+     */
+    public static synchronized VaultStockPoller getInstance() {
+        if (instance == null) {
+            instance = new VaultStockPoller(NetworkConfig.getInstance());
+        }
+        return instance;
+    }
+
+    /**
+     * Stops the shared poller. A subsequent call to getInstance will create a new poller.
+     */
+    public static synchronized void shutdown() {
+        if (instance != null) {
+            instance.scheduler.shutdownNow();
+            instance = null;
+        }
+    }
+
+    /** **************************************************************************************. */
+
+    private final NetworkConfig config;
+    private final long minIntervalMillis;
+    private final long maxIntervalMillis;
+    private final ScheduledExecutorService scheduler;
+    private final List<VaultStockListener> listeners = new CopyOnWriteArrayList<>();
+    private boolean started = false;
+    private volatile Supplier<UserSession> sessionSource;
+
+    private final AtomicLong polls = new AtomicLong();
+    private final AtomicLong changes = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    // Only accessed from the scheduler thread, apart from volatile reads by getters
+    private volatile long intervalMillis;
+    private volatile long lastResponseMillis;
+    private volatile VaultStock stock;
+    private volatile RpdErrorResponse error = new RpdErrorResponse();
+    private int consecutiveErrors = 0;
+    private EntityTag eTag;
+    private Date lastModified;
+
+    /**
+     * Instantiates a new vault stock poller.
+     *
+     * @param config the network config
+     */
+    private VaultStockPoller(NetworkConfig config) {
+        this.config = config;
+        this.minIntervalMillis = TimeUnit.SECONDS.toMillis(Math.max(1, config.getVaultPollMinInterval()));
+        this.maxIntervalMillis = Math.max(minIntervalMillis, TimeUnit.SECONDS.toMillis(config.getVaultPollMaxInterval()));
+        this.intervalMillis = minIntervalMillis;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rpd-vault-poller");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts polling immediately. Has no effect if the poller is already running.
+     *
+     * @throws IllegalStateException if no session source has been set
+     */
+    public synchronized void start() {
+        if (sessionSource == null) {
+            throw new IllegalStateException("Set the session source before starting the vault stock poller");
+        }
+        if (!started) {
+            started = true;
+            scheduler.execute(this::poll);
+        }
+    }
+
+    /**
+     * Sets where the session used to poll is taken from. It is asked for the
+     * session before every poll, so it may return a session with a refreshed
+     * token. It must be set before the poller is started.
+     *
+     * @param sessionSource supplies the session to poll with
+     */
+    public void setSessionSource(Supplier<UserSession> sessionSource) {
+        this.sessionSource = sessionSource;
+    }
+
+    /**
+     * Adds a listener. If a snapshot has already been retrieved it is passed to
+     * the listener straight away, on the polling thread.
+     *
+     * @param listener the listener
+     */
+    public void addListener(VaultStockListener listener) {
+        listeners.add(listener);
+        VaultStock current = stock;
+        if (current != null && !scheduler.isShutdown()) {
+            scheduler.execute(() -> {
+                try {
+                    listener.onStock(current);
+                } catch (RuntimeException ex) {
+                    LOGGER.error("Vault stock listener failed", ex);
+                }
+            });
+        }
+    }
+
+    /**
+     * Removes a listener.
+     *
+     * @param listener the listener
+     * @return true if the listener was registered
+     */
+    public boolean removeListener(VaultStockListener listener) {
+        return listeners.remove(listener);
+    }
+
+    /**
+     * Requests the stock, adjusts the interval and schedules the next poll.
+     */
+    private void poll() {
+        try {
+            pollOnce();
+        } catch (RuntimeException ex) {
+            LOGGER.error("Vault stock poll failed", ex);
+        } finally {
+            if (!scheduler.isShutdown()) {
+                scheduler.schedule(this::poll, intervalMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Performs a single poll.
+     */
+    private void pollOnce() {
+        VaultStockClient client = VaultStockClient.getInstance(config);
+        String token = sessionSource.get().getToken();
+        long begin = System.nanoTime();
+        Optional<VaultStock> result = stock == null
+                ? client.getStock(token)
+                : client.getStockIfModified(token, eTag, lastModified);
+        lastResponseMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+        polls.incrementAndGet();
+
+        if (result.isPresent()) {
+            consecutiveErrors = 0;
+            eTag = client.getETag();
+            lastModified = client.getLastModified();
+            VaultStock previous = stock;
+            stock = result.get();
+            if (previous == null || !StockDiff.compare(previous, stock).isEmpty()) {
+                changes.incrementAndGet();
+                adjust(intervalMillis / 2);
+                notifyStock(stock);
+            } else {
+                adjust(intervalMillis + intervalMillis / 2);
+            }
+        } else if (client.isNotModified()) {
+            consecutiveErrors = 0;
+            adjust(intervalMillis + intervalMillis / 2);
+        } else {
+            errors.incrementAndGet();
+            error = client.getErrorResponse();
+            long backoff = minIntervalMillis << Math.min(++consecutiveErrors, 20);
+            adjust(Math.max(intervalMillis, backoff));
+            LOGGER.warn("Vault stock poll failed, next attempt in {}ms: {}", intervalMillis, error);
+            notifyError(error);
+        }
+    }
+
+    /**
+     * Sets the interval, keeping it within the configured bounds and above the
+     * floor set by the last response time.
+     *
+     * @param proposed the proposed interval in milliseconds
+     */
+    private void adjust(long proposed) {
+        long floor = Math.max(minIntervalMillis, lastResponseMillis * RESPONSE_TIME_FACTOR);
+        intervalMillis = Math.min(maxIntervalMillis, Math.max(floor, proposed));
+    }
+
+    /**
+     * Passes a new snapshot to each listener.
+     *
+     * @param snapshot the vault stock
+     */
+    private void notifyStock(VaultStock snapshot) {
+        for (VaultStockListener listener : listeners) {
+            try {
+                listener.onStock(snapshot);
+            } catch (RuntimeException ex) {
+                LOGGER.error("Vault stock listener failed", ex);
+            }
+        }
+    }
+
+    /**
+     * Passes an error to each listener.
+     *
+     * @param response the error response
+     */
+    private void notifyError(RpdErrorResponse response) {
+        for (VaultStockListener listener : listeners) {
+            try {
+                listener.onError(response);
+            } catch (RuntimeException ex) {
+                LOGGER.error("Vault stock listener failed", ex);
+            }
+        }
+    }
+
+    /**
+     * Gets the most recent snapshot.
+     *
+     * @return the vault stock, or an empty optional if no poll has succeeded
+     */
+    public Optional<VaultStock> getStock() {
+        return Optional.ofNullable(stock);
+    }
+
+    /**
+     * Gets the current time between polls.
+     *
+     * @return the interval in milliseconds
+     */
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    /**
+     * Gets the response time of the last poll.
+     *
+     * @return the response time in milliseconds
+     */
+    public long getLastResponseMillis() {
+        return lastResponseMillis;
+    }
+
+    /**
+     * Gets the number of polls sent to RPD.
+     *
+     * @return the poll count
+     */
+    public long getPollCount() {
+        return polls.get();
+    }
+
+    /**
+     * Gets the number of polls that found a change in the stock.
+     *
+     * @return the change count
+     */
+    public long getChangeCount() {
+        return changes.get();
+    }
+
+    /**
+     * Gets the number of polls that failed.
+     *
+     * @return the error count
+     */
+    public long getErrorCount() {
+        return errors.get();
+    }
+
+    /**
+     * Retrieves the error response from the most recent failed poll.
+     *
+     * @return an error response object.
+     */
+    public RpdErrorResponse getErrorResponse() {
+        return error;
+    }
+}
@@ -2,6 +2,9 @@ package uk.gov.dvla.osg.rpd.web.config;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
@@ -69,6 +72,61 @@ public class NetworkConfig {
     private String despatchUrl = "";
     private String submitJobUrl;
     private String passwordUpdateUrl;
+    
+    // The base URL of every RPD host, the first being the one used by default
+    private List<String> urlBases;
+    private String vaultPath;
+    
+    // Host health tracking, used when more than one host is configured
+    private int ejectAfterFailures;
+    private int ejectionTime;
+    
+    // Retry and circuit breaker settings for every request to RPD
+    private int maxRetries;
+    private int retryBaseDelay;
+    private int retryMaxDelay;
+    private int circuitFailureThreshold;
+    private int circuitOpenTime;
+    private int tokenLifetime;
+    private int tokenRefreshMargin;
+    
+    // Password rotation, resume is disabled when no journal is configured
+    private int passwordRotationParallelism;
+    private String passwordRotationJournal;
+    private String transport;
+    
+    // Connection pool settings, all optional in the configuration file
+    private int maxConnections;
+    private int maxConnectionsPerRoute;
+    private int idleConnectionTimeout;
+    private int keepAliveTimeout;
+    private int connectTimeout;
+    private int readTimeout;
+    private int uploadBufferSize;
+    
+    // Duplicate submission index, disabled when no file is configured
+    private String dedupIndexFile;
+    private int dedupIndexCapacity;
+    private int dedupExpiryHours;
+    
+    // Vault stock cache lifetimes in seconds
+    private int vaultCacheTtl;
+    private int vaultCacheStaleTtl;
+    
+    // Group membership cache lifetime in seconds and maximum number of users
+    private int groupCacheTtl;
+    private int groupCacheSize;
+    
+    // Vault stock polling interval bounds in seconds
+    private int vaultPollMinInterval;
+    private int vaultPollMaxInterval;
+    
+    // Low stock alert rules, disabled when no file is configured
+    private String alertRulesFile;
+    
+    // Last known vault stock kept on disk for use when RPD is unavailable
+    private String vaultStockCacheFile;
+    private int vaultStockCacheMaxAge;
   
     /**
      * Instantiates a new network config from the fields in the property file.
@@ -79,9 +137,21 @@ public class NetworkConfig {
         try {
             PropertyLoader loader = PropertyLoader.getInstance(filename);
             String protocol = loader.getProperty("protocol");
-            String host = loader.getProperty("host");
-            String port = loader.getProperty("port");
-            String urlBase = protocol + host + ":" + port;
+            urlBases = loadUrlBases(loader, protocol);
+            String urlBase = urlBases.get(0);
+            vaultPath = loader.getProperty("vaultUrl");
+            ejectAfterFailures = loader.getPropertyInt("ejectAfterFailures", 3);
+            ejectionTime = loader.getPropertyInt("ejectionTime", 30);
+            maxRetries = loader.getPropertyInt("maxRetries", 2);
+            retryBaseDelay = loader.getPropertyInt("retryBaseDelay", 200);
+            retryMaxDelay = loader.getPropertyInt("retryMaxDelay", 5000);
+            circuitFailureThreshold = loader.getPropertyInt("circuitFailureThreshold", 5);
+            circuitOpenTime = loader.getPropertyInt("circuitOpenTime", 30);
+            tokenLifetime = loader.getPropertyInt("tokenLifetime", 1800);
+            tokenRefreshMargin = loader.getPropertyInt("tokenRefreshMargin", 120);
+            passwordRotationParallelism = loader.getPropertyInt("passwordRotationParallelism", 4);
+            passwordRotationJournal = loader.getProperty("passwordRotationJournal", "");
+            transport = loader.getProperty("transport", "jersey");
             loginUrl = urlBase + loader.getProperty("loginUrl");
             logoutUrl = urlBase + loader.getProperty("logoutUrl");
             vaultUrl = urlBase + loader.getProperty("vaultUrl");
@@ -89,6 +159,29 @@ public class NetworkConfig {
             despatchUrl = urlBase + loader.getProperty("despatchUrl");
             submitJobUrl = urlBase + loader.getProperty("submitJobUrl");
             passwordUpdateUrl = urlBase + loader.getProperty("updateUrl");
+            maxConnections = loader.getPropertyInt("maxConnections", 20);
+            maxConnectionsPerRoute = loader.getPropertyInt("maxConnectionsPerRoute", 10);
+            idleConnectionTimeout = loader.getPropertyInt("idleConnectionTimeout", 30);
+            if (idleConnectionTimeout < 1) {
+                // Also the period of the evictor, which cannot run every 0 seconds
+                throw new RuntimeException("Value [" + idleConnectionTimeout + "] is not valid for the property [idleConnectionTimeout].");
+            }
+            keepAliveTimeout = loader.getPropertyInt("keepAliveTimeout", 60);
+            connectTimeout = loader.getPropertyInt("connectTimeout", 10000);
+            readTimeout = loader.getPropertyInt("readTimeout", 60000);
+            uploadBufferSize = loader.getPropertyInt("uploadBufferSize", 65536);
+            dedupIndexFile = loader.getProperty("dedupIndexFile", "");
+            dedupIndexCapacity = loader.getPropertyInt("dedupIndexCapacity", 65536);
+            dedupExpiryHours = loader.getPropertyInt("dedupExpiryHours", 72);
+            vaultCacheTtl = loader.getPropertyInt("vaultCacheTtl", 5);
+            vaultCacheStaleTtl = loader.getPropertyInt("vaultCacheStaleTtl", 30);
+            groupCacheTtl = loader.getPropertyInt("groupCacheTtl", 300);
+            groupCacheSize = loader.getPropertyInt("groupCacheSize", 1000);
+            vaultPollMinInterval = loader.getPropertyInt("vaultPollMinInterval", 5);
+            vaultPollMaxInterval = loader.getPropertyInt("vaultPollMaxInterval", 300);
+            alertRulesFile = loader.getProperty("alertRulesFile", "");
+            vaultStockCacheFile = loader.getProperty("vaultStockCacheFile", "");
+            vaultStockCacheMaxAge = loader.getPropertyInt("vaultStockCacheMaxAge", 300);
         } catch (IOException ex) {
             LOGGER.fatal("Unable to load properties from Network Configuration File {}", filename);
             System.exit(1);
@@ -100,6 +193,35 @@ public class NetworkConfig {
         }
     }
 
+    /**
+     * Builds the base URL of each RPD host. Hosts are taken from the optional
+     * hosts property, a comma separated list of host or host:port entries where
+     * the port property is used for entries without a port. If hosts is not set
+     * the single host and port properties are used.
+     *
+     * @param loader the property loader
+     * @param protocol the protocol prefix
+     * @return the base URLs, never empty
+     * @throws RuntimeException if a required property is missing
+     */
+    private static List<String> loadUrlBases(PropertyLoader loader, String protocol) throws RuntimeException {
+        String hosts = loader.getProperty("hosts", "");
+        if (StringUtils.isBlank(hosts)) {
+            return Collections.singletonList(protocol + loader.getProperty("host") + ":" + loader.getProperty("port"));
+        }
+        List<String> bases = new ArrayList<>();
+        for (String host : StringUtils.split(hosts, ',')) {
+            String entry = host.trim();
+            if (!entry.isEmpty()) {
+                bases.add(protocol + (entry.contains(":") ? entry : entry + ":" + loader.getProperty("port")));
+            }
+        }
+        if (bases.isEmpty()) {
+            throw new RuntimeException("Value [" + hosts + "] is not valid for the property [hosts].");
+        }
+        return Collections.unmodifiableList(bases);
+    }
+
     /**
      * Gets the RPD vault url.
      *
@@ -157,4 +279,310 @@ public class NetworkConfig {
     public String getPasswordUpdateUrl() {
         return passwordUpdateUrl;
     }
+
+    /**
+     * Gets the maximum number of pooled connections across all RPD routes.
+     *
+     * @return the maximum total connections
+     */
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * Gets the maximum number of pooled connections to a single RPD host.
+     *
+     * @return the maximum connections per route
+     */
+    public int getMaxConnectionsPerRoute() {
+        return maxConnectionsPerRoute;
+    }
+
+    /**
+     * Gets the time in seconds after which an idle pooled connection is evicted.
+     *
+     * @return the idle connection timeout in seconds, at least 1
+     */
+    public int getIdleConnectionTimeout() {
+        return idleConnectionTimeout;
+    }
+
+    /**
+     * Gets the time in seconds a connection is kept alive when RPD does not
+     * send a Keep-Alive header.
+     *
+     * @return the keep alive timeout in seconds
+     */
+    public int getKeepAliveTimeout() {
+        return keepAliveTimeout;
+    }
+
+    /**
+     * Gets the connect timeout in milliseconds.
+     *
+     * @return the connect timeout
+     */
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    /**
+     * Gets the read timeout in milliseconds.
+     *
+     * @return the read timeout
+     */
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    /**
+     * Gets the size in bytes of the buffer and chunks used when streaming files to RPD.
+     *
+     * @return the upload buffer size
+     */
+    public int getUploadBufferSize() {
+        return uploadBufferSize;
+    }
+
+    /**
+     * Gets the path of the duplicate submission index.
+     *
+     * @return the index file, or a blank string if deduplication is disabled
+     */
+    public String getDedupIndexFile() {
+        return dedupIndexFile;
+    }
+
+    /**
+     * Gets the number of slots in a new duplicate submission index.
+     *
+     * @return the index capacity
+     */
+    public int getDedupIndexCapacity() {
+        return dedupIndexCapacity;
+    }
+
+    /**
+     * Gets the number of hours after which a resubmitted file is no longer treated as a duplicate.
+     *
+     * @return the expiry time in hours
+     */
+    public int getDedupExpiryHours() {
+        return dedupExpiryHours;
+    }
+
+    /**
+     * Gets the time in seconds that cached vault stock is served without contacting RPD.
+     *
+     * @return the vault cache time to live
+     */
+    public int getVaultCacheTtl() {
+        return vaultCacheTtl;
+    }
+
+    /**
+     * Gets the time in seconds after the time to live that cached vault stock is
+     * still served while it is refreshed in the background.
+     *
+     * @return the vault cache stale time to live
+     */
+    public int getVaultCacheStaleTtl() {
+        return vaultCacheStaleTtl;
+    }
+
+    /**
+     * Gets the time in seconds a user's group membership is cached.
+     *
+     * @return the group cache time to live
+     */
+    public int getGroupCacheTtl() {
+        return groupCacheTtl;
+    }
+
+    /**
+     * Gets the maximum number of users whose group membership is cached.
+     *
+     * @return the group cache size
+     */
+    public int getGroupCacheSize() {
+        return groupCacheSize;
+    }
+
+    /**
+     * Gets the shortest time in seconds between polls of the vault stock.
+     *
+     * @return the minimum poll interval
+     */
+    public int getVaultPollMinInterval() {
+        return vaultPollMinInterval;
+    }
+
+    /**
+     * Gets the longest time in seconds between polls of the vault stock.
+     *
+     * @return the maximum poll interval
+     */
+    public int getVaultPollMaxInterval() {
+        return vaultPollMaxInterval;
+    }
+
+    /**
+     * Gets the properties file holding the low stock alert rules.
+     *
+     * @return the alert rules file, or an empty string if alerts are disabled
+     */
+    public String getAlertRulesFile() {
+        return alertRulesFile;
+    }
+
+    /**
+     * Gets the file holding the last vault stock received from RPD.
+     *
+     * @return the vault stock cache file, or an empty string if it is disabled
+     */
+    public String getVaultStockCacheFile() {
+        return vaultStockCacheFile;
+    }
+
+    /**
+     * Gets the age in seconds after which the last known vault stock is marked as stale.
+     *
+     * @return the maximum age
+     */
+    public int getVaultStockCacheMaxAge() {
+        return vaultStockCacheMaxAge;
+    }
+
+    /**
+     * Gets the base URL, protocol, host and port, of every configured RPD host.
+     * The URLs returned by the other getters use the first.
+     *
+     * @return the base URLs
+     */
+    public List<String> getUrlBases() {
+        return urlBases;
+    }
+
+    /**
+     * Gets the vault url on every configured RPD host.
+     *
+     * @return the vault urls, in the same order as getUrlBases
+     */
+    public List<String> getVaultUrls() {
+        List<String> urls = new ArrayList<>(urlBases.size());
+        for (String base : urlBases) {
+            urls.add(base + vaultPath);
+        }
+        return urls;
+    }
+
+    /**
+     * Gets the number of consecutive failures after which a host stops receiving requests.
+     *
+     * @return the failure count
+     */
+    public int getEjectAfterFailures() {
+        return ejectAfterFailures;
+    }
+
+    /**
+     * Gets the time in seconds a failing host is left out before a probe request is sent to it.
+     *
+     * @return the ejection time
+     */
+    public int getEjectionTime() {
+        return ejectionTime;
+    }
+
+    /**
+     * Gets the number of times a failed request is retried.
+     *
+     * @return the maximum retries
+     */
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * Gets the delay in milliseconds before the first retry, doubled for each
+     * retry after that. A random delay up to this value is used.
+     *
+     * @return the base retry delay
+     */
+    public int getRetryBaseDelay() {
+        return retryBaseDelay;
+    }
+
+    /**
+     * Gets the longest delay in milliseconds before a retry.
+     *
+     * @return the maximum retry delay
+     */
+    public int getRetryMaxDelay() {
+        return retryMaxDelay;
+    }
+
+    /**
+     * Gets the number of consecutive failures after which requests to a host fail fast.
+     *
+     * @return the circuit failure threshold
+     */
+    public int getCircuitFailureThreshold() {
+        return circuitFailureThreshold;
+    }
+
+    /**
+     * Gets the time in seconds requests to a failing host fail fast before a trial request is sent.
+     *
+     * @return the circuit open time
+     */
+    public int getCircuitOpenTime() {
+        return circuitOpenTime;
+    }
+
+    /**
+     * Gets the time an RPD session token remains valid, in seconds. Zero if
+     * tokens are only renewed when RPD rejects them.
+     *
+     * @return the token lifetime
+     */
+    public int getTokenLifetime() {
+        return tokenLifetime;
+    }
+
+    /**
+     * Gets how long before the token expires that it is renewed, in seconds.
+     *
+     * @return the token refresh margin
+     */
+    public int getTokenRefreshMargin() {
+        return tokenRefreshMargin;
+    }
+
+    /**
+     * Gets the maximum number of password updates sent at the same time.
+     *
+     * @return the password rotation parallelism
+     */
+    public int getPasswordRotationParallelism() {
+        return passwordRotationParallelism;
+    }
+
+    /**
+     * Gets the journal file that records which passwords a rotation has updated.
+     *
+     * @return the journal path, or an empty string if rotations cannot be resumed
+     */
+    public String getPasswordRotationJournal() {
+        return passwordRotationJournal;
+    }
+
+    /**
+     * Gets the name of the HTTP transport used to send requests to RPD.
+     *
+     * @return the transport name, jersey or apache
+     */
+    public String getTransport() {
+        return transport;
+    }
 }
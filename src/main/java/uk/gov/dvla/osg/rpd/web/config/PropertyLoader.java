@@ -51,6 +51,18 @@ public class PropertyLoader {
         throw new RuntimeException("Unable to load property ["+key+"] from file.");
     }
     
+    /**
+     * Gets the string property matching the provided key, or the default value
+     * if the key is not present in the configuration file.
+     *
+     * @param key the key to match
+     * @param defaultValue the value to use when the key is absent
+     * @return the property for the key
+     */
+    public String getProperty(String key, String defaultValue) {
+        return properties.getProperty(key, defaultValue);
+    }
+    
     /**
      * Gets the int property matching the provided key.
      *
@@ -68,4 +80,17 @@ public class PropertyLoader {
         }
         throw new RuntimeException("Unable to load property ["+key+"] from Production Configuration file.");
     }
+    
+    /**
+     * Gets the int property matching the provided key, or the default value
+     * if the key is not present in the configuration file.
+     *
+     * @param key the key to match
+     * @param defaultValue the value to use when the key is absent
+     * @return the property for the key
+     * @throws RuntimeException if the key is present but is not a valid integer
+     */
+    public int getPropertyInt(String key, int defaultValue) throws RuntimeException {
+        return properties.containsKey(key) ? getPropertyInt(key) : defaultValue;
+    }
 }
@@ -4,7 +4,12 @@ import org.apache.commons.lang3.StringUtils;
 
 /**
  * Session information for the logged in user.
+ *
+ * @deprecated A single mutable session cannot be shared safely by several users.
+ *             Pass a {@link UserSession} to the clients instead, and keep the
+ *             sessions of several users in the {@link SessionRegistry}.
  */
+@Deprecated
 public class Session {
     
     /**
@@ -28,10 +33,10 @@ public class Session {
     
     /** **************************************************************************************. */
     
-    private String userName;
-    private String password;
-    private String token;
-    private Boolean isAdmin;
+    private volatile String userName;
+    private volatile String password;
+    private volatile String token;
+    private volatile Boolean isAdmin;
     
     /**
      * Gets the user name.
@@ -110,4 +115,13 @@ public class Session {
     public void setIsAdmin(Boolean admin) {
         this.isAdmin = admin;
     }
+
+    /**
+     * Gets an immutable copy of the session.
+     *
+     * @return the user session
+     */
+    public UserSession toUserSession() {
+        return UserSession.of(userName, token).withAdmin(isAdmin);
+    }
 }
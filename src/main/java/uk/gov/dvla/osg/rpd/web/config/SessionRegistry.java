@@ -0,0 +1,120 @@
+package uk.gov.dvla.osg.rpd.web.config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.UnaryOperator;
+
+/**
+ * Holds the session of every user logged in to RPD through this process, keyed by
+ * user name. Sessions are immutable and are replaced atomically, so any number of
+ * threads may look up, update or remove sessions at the same time.
+ */
+public final class SessionRegistry {
+
+    /**
+     * ****************************************************************************************
+     *                              SINGLETON PATTERN
+     * ****************************************************************************************.
+     */
+
+    private static class SingletonHelper {
+        private static final SessionRegistry INSTANCE = new SessionRegistry();
+    }
+
+    /**
+     * Gets the single instance of SessionRegistry.
+     *
+     * @return single instance of SessionRegistry
+     */
+    public static SessionRegistry getInstance() {
+        return SingletonHelper.INSTANCE;
+    }
+
+    /**
+     * Instantiates a new session registry.
+     */
+    private SessionRegistry() { }
+
+    /** **************************************************************************************. */
+
+    private final ConcurrentMap<String, UserSession> sessions = new ConcurrentHashMap<>();
+
+    /**
+     * Adds a session, replacing any session already held for the user.
+     *
+     * @param session the session
+     * @return the previous session for the user, or an empty optional
+     */
+    public Optional<UserSession> register(UserSession session) {
+        if (session.getUserName() == null) {
+            throw new IllegalArgumentException("A session must have a user name to be registered");
+        }
+        return Optional.ofNullable(sessions.put(session.getUserName(), session));
+    }
+
+    /**
+     * Gets the session for a user.
+     *
+     * @param userName the user name
+     * @return the session, or an empty optional if the user has no session
+     */
+    public Optional<UserSession> get(String userName) {
+        return Optional.ofNullable(sessions.get(userName));
+    }
+
+    /**
+     * Replaces the session for a user with the result of the update. The update is
+     * applied atomically and may be called more than once, so it must not have
+     * side effects.
+     *
+     * @param userName the user name
+     * @param update creates the new session from the current one
+     * @return the new session, or an empty optional if the user has no session
+     */
+    public Optional<UserSession> update(String userName, UnaryOperator<UserSession> update) {
+        return Optional.ofNullable(sessions.computeIfPresent(userName, (name, session) -> update.apply(session)));
+    }
+
+    /**
+     * Removes the session for a user.
+     *
+     * @param userName the user name
+     * @return the removed session, or an empty optional if the user had no session
+     */
+    public Optional<UserSession> remove(String userName) {
+        return Optional.ofNullable(sessions.remove(userName));
+    }
+
+    /**
+     * Removes a session only if it is still the current session for its user, so
+     * that a session replaced by a newer login is left in place.
+     *
+     * @param session the session
+     * @return true if the session was removed
+     */
+    public boolean remove(UserSession session) {
+        return session.getUserName() != null && sessions.remove(session.getUserName(), session);
+    }
+
+    /**
+     * Gets a snapshot of the sessions currently held.
+     *
+     * @return the sessions
+     */
+    public List<UserSession> getSessions() {
+        return Collections.unmodifiableList(new ArrayList<>(sessions.values()));
+    }
+
+    /**
+     * Gets the number of sessions currently held.
+     *
+     * @return the session count
+     */
+    public int size() {
+        return sessions.size();
+    }
+}
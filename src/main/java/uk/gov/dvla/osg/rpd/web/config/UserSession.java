@@ -0,0 +1,122 @@
+package uk.gov.dvla.osg.rpd.web.config;
+
+import java.util.Objects;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Session information for one logged in user. A UserSession is immutable, so it
+ * can be shared between threads and passed to any number of clients at once.
+ * Use withToken or withAdmin to get a copy with a changed value.
+ */
+public final class UserSession {
+
+    private final String userName;
+    private final String token;
+    private final Boolean isAdmin;
+
+    /**
+     * Creates a session for a user.
+     *
+     * @param userName the RPD login name of the user
+     * @param token the session token returned by RPD
+     * @return the session
+     */
+    public static UserSession of(String userName, String token) {
+        return new UserSession(userName, token, null);
+    }
+
+    /**
+     * Instantiates a new user session.
+     *
+     * @param userName the user name
+     * @param token the token
+     * @param isAdmin true if the user is an administrator, or null if not yet known
+     */
+    private UserSession(String userName, String token, Boolean isAdmin) {
+        this.userName = userName;
+        this.token = token;
+        this.isAdmin = isAdmin;
+    }
+
+    /**
+     * Gets the user name.
+     *
+     * @return the user name
+     */
+    public String getUserName() {
+        return userName;
+    }
+
+    /**
+     * Gets the token.
+     *
+     * @return the token
+     */
+    public String getToken() {
+        return token;
+    }
+
+    /**
+     * Checks if the session has a token.
+     *
+     * @return true if the user is logged in
+     */
+    public boolean isLoggedIn() {
+        return StringUtils.isNotBlank(token);
+    }
+
+    /**
+     * Checks if user is a member of the admin group.
+     *
+     * @return true if user is an administrator, or null if not yet known
+     */
+    public Boolean isAdmin() {
+        return isAdmin;
+    }
+
+    /**
+     * Gets a copy of the session with a new token.
+     *
+     * @param token the new token
+     * @return the updated session
+     */
+    public UserSession withToken(String token) {
+        return new UserSession(userName, token, isAdmin);
+    }
+
+    /**
+     * Gets a copy of the session with the admin flag set.
+     *
+     * @param admin the new value for admin
+     * @return the updated session
+     */
+    public UserSession withAdmin(Boolean admin) {
+        return new UserSession(userName, token, admin);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof UserSession)) {
+            return false;
+        }
+        UserSession other = (UserSession) obj;
+        return Objects.equals(userName, other.userName)
+                && Objects.equals(token, other.token)
+                && Objects.equals(isAdmin, other.isAdmin);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(userName, token, isAdmin);
+    }
+
+    @Override
+    public String toString() {
+        // The token is a credential and is never logged
+        return "UserSession [userName=" + userName + ", loggedIn=" + isLoggedIn() + ", isAdmin=" + isAdmin + "]";
+    }
+}
@@ -27,8 +27,8 @@ public class RpdErrorResponse {
     @SerializedName("action")
     private String action = "";
     
-    // For logging Java Exception Stack Traces
-    private Exception exception = null;
+    // For logging Java Exception Stack Traces, not part of the RPD response
+    private transient Exception exception = null;
         
     /**
      * Gets the name of the error.
@@ -152,6 +152,23 @@ public class RpdErrorResponse {
         this.exception = ex;
     }
     
+    /**
+     * Creates a copy of this error response, so that it can be handed to another
+     * client without the two sharing state.
+     * @return the copy
+     */
+    public RpdErrorResponse copy() {
+        RpdErrorResponse copy = new RpdErrorResponse();
+        copy.name = name;
+        copy.code = code;
+        copy.time = time;
+        copy.severity = severity;
+        copy.message = message;
+        copy.action = action;
+        copy.exception = exception;
+        return copy;
+    }
+    
     /* (non-Javadoc)
      * Calls getters as Gson sets empty strings to null and we want to avoid null pointer exceptions.
      * @see java.lang.Object#toString()
@@ -72,8 +72,13 @@ public final class AlwaysListTypeAdapterFactory<E> implements TypeAdapterFactory
 		}
 
 		@Override
-		public void write(final JsonWriter out, final List<E> list) {
-			throw new UnsupportedOperationException();
+		public void write(final JsonWriter out, final List<E> list) throws IOException {
+			// Always written as an array, even when it holds a single element
+			out.beginArray();
+			for (final E element : list) {
+				elementTypeAdapter.write(out, element);
+			}
+			out.endArray();
 		}
 
 		@Override
@@ -0,0 +1,70 @@
+package uk.gov.dvla.osg.rpd.web.json;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+
+import uk.gov.dvla.osg.rpd.web.error.RpdErrorResponse;
+import uk.gov.dvla.osg.vault.data.VaultStock;
+
+/**
+ * Holds the codecs used to read RPD responses. Gson, its type adapters and the
+ * Jackson XML reader are expensive to build, so they are created once when the
+ * class is loaded and shared. All of them are immutable and thread-safe.
+ */
+public final class CodecRegistry {
+
+    private static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapterFactory(VaultStockTypeAdapter.FACTORY)
+            .registerTypeAdapter(RpdErrorResponse.class, new RpdErrorTypeAdapter<RpdErrorResponse>())
+            .create();
+
+    // Resolved up front so the first request does not pay for reflection
+    private static final TypeAdapter<VaultStock> VAULT_STOCK_ADAPTER = GSON.getAdapter(VaultStock.class);
+    private static final TypeAdapter<RpdErrorResponse> RPD_ERROR_ADAPTER = GSON.getAdapter(RpdErrorResponse.class);
+
+    private static final ObjectReader XML_ERROR_READER = new XmlMapper().readerFor(RpdErrorResponse.class);
+
+    /**
+     * Utility class, not instantiated.
+     */
+    private CodecRegistry() { }
+
+    /**
+     * Gets the Gson instance configured with the RPD type adapters.
+     *
+     * @return the shared Gson instance
+     */
+    public static Gson getGson() {
+        return GSON;
+    }
+
+    /**
+     * Gets the adapter that reads VaultStock in a single streaming pass.
+     *
+     * @return the VaultStock adapter
+     */
+    public static TypeAdapter<VaultStock> getVaultStockAdapter() {
+        return VAULT_STOCK_ADAPTER;
+    }
+
+    /**
+     * Gets the adapter that reads an RPD JSON error response.
+     *
+     * @return the RpdErrorResponse adapter
+     */
+    public static TypeAdapter<RpdErrorResponse> getRpdErrorAdapter() {
+        return RPD_ERROR_ADAPTER;
+    }
+
+    /**
+     * Gets the reader for an RPD XML error response.
+     *
+     * @return the shared XML reader
+     */
+    public static ObjectReader getXmlErrorReader() {
+        return XML_ERROR_READER;
+    }
+}
@@ -10,7 +10,10 @@ import uk.gov.dvla.osg.vault.data.VaultStock;
  * The Class EmptyStringAsNullTypeAdapter.
  *
  * @param <T> the generic type
+ * @deprecated builds the document tree and parses it a second time. Use
+ *             {@link VaultStockTypeAdapter}, which reads VaultStock in a single pass.
  */
+@Deprecated
 public final class EmptyStringAsNullTypeAdapter<T> implements JsonDeserializer<T> {
 
     @Override
@@ -24,7 +24,7 @@ public class JsonUtils {
      * @return session token, or blank string if token not available
      */
     public static String getTokenFromJson(String jsonString) throws IllegalStateException, JsonSyntaxException {
-        return new JsonParser().parse(jsonString).getAsJsonObject().get("token").getAsString();
+        return JsonParser.parseString(jsonString).getAsJsonObject().get("token").getAsString();
     }
 
     /**
@@ -34,15 +34,14 @@ public class JsonUtils {
      * @return Stock information from the Vault.
      */
     public static VaultStock loadStockFile(String jsonFile) throws JsonIOException, JsonSyntaxException {
-        Gson gsonBldr = new GsonBuilder().registerTypeAdapter(VaultStock.class, new EmptyStringAsNullTypeAdapter()).create();
         if (DEBUG_MODE) {
             try (FileReader fr = new FileReader(jsonFile)) {
-                return gsonBldr.fromJson(fr, VaultStock.class);
+                return CodecRegistry.getGson().fromJson(fr, VaultStock.class);
             } catch (IOException ex) {
                 throw new RuntimeException(ex.getMessage());
             }
         }
-        return gsonBldr.fromJson(jsonFile, VaultStock.class);
+        return CodecRegistry.getGson().fromJson(jsonFile, VaultStock.class);
     }
     
     /**
@@ -54,8 +53,7 @@ public class JsonUtils {
      * @throws JsonSyntaxException the json syntax exception
      */
     public static RpdErrorResponse getError(String data) throws JsonIOException, JsonSyntaxException {
-        Gson gsonBldr = new GsonBuilder().registerTypeAdapter(RpdErrorResponse.class, new RpdErrorTypeAdapter()).create();
-        return gsonBldr.fromJson(data, RpdErrorResponse.class);
+        return CodecRegistry.getGson().fromJson(data, RpdErrorResponse.class);
     }
     
     /**
@@ -66,7 +64,7 @@ public class JsonUtils {
      */
     public static boolean isUserInDevGroup(String jsonString) throws JsonSyntaxException {
         try {
-            JsonObject json = new JsonParser().parse(jsonString).getAsJsonObject();
+            JsonObject json = JsonParser.parseString(jsonString).getAsJsonObject();
             // loop through and check all groups the user is a member of
             if (json.has("User.Groups") && json.get("User.Groups").isJsonArray()) {
                 for (JsonElement group : json.get("User.Groups").getAsJsonArray()) {
@@ -8,6 +8,9 @@ import uk.gov.dvla.osg.rpd.web.error.RpdErrorResponse;
 
 public class RpdErrorTypeAdapter<T> implements JsonDeserializer<T> {
 
+    // Reflective adapter for the inner error object, resolved once
+    private static final TypeAdapter<RpdErrorResponse> DELEGATE = new Gson().getAdapter(RpdErrorResponse.class);
+
     @Override
     public T deserialize(JsonElement jsonElement, Type type, JsonDeserializationContext context) throws JsonParseException {
         try {
@@ -16,7 +19,7 @@ public class RpdErrorTypeAdapter<T> implements JsonDeserializer<T> {
             JsonObject innerObject = jsonElement.getAsJsonObject()
                                         .get("generalErrors").getAsJsonArray()
                                         .get(0).getAsJsonObject();
-            return (T)new Gson().fromJson(innerObject, RpdErrorResponse.class); // default deserialization
+            return (T)DELEGATE.fromJsonTree(innerObject); // default deserialization
         } catch (IllegalStateException e) {
             return null;
         }
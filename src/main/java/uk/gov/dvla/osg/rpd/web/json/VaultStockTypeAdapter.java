@@ -0,0 +1,277 @@
+package uk.gov.dvla.osg.rpd.web.json;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import uk.gov.dvla.osg.vault.data.CardStock;
+import uk.gov.dvla.osg.vault.data.Environment;
+import uk.gov.dvla.osg.vault.data.StockTotals;
+import uk.gov.dvla.osg.vault.data.VaultStock;
+import uk.gov.dvla.osg.vault.data.Volume;
+
+/**
+ * Reads the VaultStock JSON in a single pass, without building a JsonElement tree.
+ * <p>
+ * RPD returns an empty string in place of an environment that holds no stock,
+ * and a single cardStock object in place of an array when there is only one entry.
+ * Both cases are handled as the document is read, and the card class, site and
+ * status values are resolved to their enums as each object is built.
+ */
+public final class VaultStockTypeAdapter extends TypeAdapter<VaultStock> {
+
+    /**
+     * Registers the adapter for VaultStock. Reading uses this adapter, while writing
+     * is left to the adapter Gson would otherwise have used.
+     */
+    public static final TypeAdapterFactory FACTORY = new TypeAdapterFactory() {
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+            if (type.getRawType() != VaultStock.class) {
+                return null;
+            }
+            return (TypeAdapter<T>) new VaultStockTypeAdapter(gson.getDelegateAdapter(this, TypeToken.get(VaultStock.class)));
+        }
+    };
+
+    private final TypeAdapter<VaultStock> writer;
+
+    /**
+     * Instantiates a new vault stock type adapter.
+     *
+     * @param writer the adapter used to write VaultStock
+     */
+    private VaultStockTypeAdapter(TypeAdapter<VaultStock> writer) {
+        this.writer = writer;
+    }
+
+    @Override
+    public void write(JsonWriter out, VaultStock value) throws IOException {
+        writer.write(out, value);
+    }
+
+    @Override
+    public VaultStock read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        StockTotals stockTotals = null;
+        boolean valid = true;
+        in.beginObject();
+        while (in.hasNext()) {
+            if ("stockTotals".equals(in.nextName())) {
+                if (in.peek() == JsonToken.BEGIN_OBJECT) {
+                    stockTotals = readStockTotals(in);
+                } else {
+                    // Not a VaultStock document
+                    in.skipValue();
+                    valid = false;
+                }
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return valid ? new VaultStock(stockTotals) : null;
+    }
+
+    /**
+     * Reads the stockTotals object.
+     *
+     * @param in the reader positioned at the start of the object
+     * @return the stock totals
+     * @throws IOException if the JSON is malformed
+     */
+    private StockTotals readStockTotals(JsonReader in) throws IOException {
+        Environment test = null;
+        Environment production = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+            case "test":
+                test = readEnvironment(in);
+                break;
+            case "production":
+                production = readEnvironment(in);
+                break;
+            default:
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return new StockTotals(test, production);
+    }
+
+    /**
+     * Reads an environment, which RPD sends as an empty string when it holds no stock.
+     *
+     * @param in the reader positioned at the environment value
+     * @return the environment, or null if it is empty
+     * @throws IOException if the JSON is malformed
+     */
+    private Environment readEnvironment(JsonReader in) throws IOException {
+        if (in.peek() != JsonToken.BEGIN_OBJECT) {
+            in.skipValue();
+            return null;
+        }
+        List<CardStock> cardStock = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            if ("cardStock".equals(in.nextName())) {
+                cardStock = readCardStockList(in);
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return new Environment(cardStock);
+    }
+
+    /**
+     * Reads the cardStock value, which is an object when there is a single entry
+     * and an array otherwise.
+     *
+     * @param in the reader positioned at the cardStock value
+     * @return the card stock list, or null if the value is null
+     * @throws IOException if the JSON is malformed
+     */
+    private List<CardStock> readCardStockList(JsonReader in) throws IOException {
+        List<CardStock> list = new ArrayList<>();
+        switch (in.peek()) {
+        case BEGIN_ARRAY:
+            in.beginArray();
+            while (in.hasNext()) {
+                list.add(readCardStock(in));
+            }
+            in.endArray();
+            return list;
+        case BEGIN_OBJECT:
+            list.add(readCardStock(in));
+            return list;
+        default:
+            in.skipValue();
+            return null;
+        }
+    }
+
+    /**
+     * Reads a single cardStock object.
+     *
+     * @param in the reader positioned at the start of the object
+     * @return the card stock
+     * @throws IOException if the JSON is malformed
+     */
+    private CardStock readCardStock(JsonReader in) throws IOException {
+        String firstUCI = null;
+        String cardType = null;
+        String cardClass = null;
+        String location = null;
+        List<Volume> volumes = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+            case "firstUCI":
+                firstUCI = nextString(in);
+                break;
+            case "cardTypeName":
+                cardType = nextString(in);
+                break;
+            case "className":
+                cardClass = nextString(in);
+                break;
+            case "location":
+                location = nextString(in);
+                break;
+            case "volumes":
+                volumes = readVolumes(in);
+                break;
+            default:
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return new CardStock(firstUCI, cardType, cardClass, location, volumes);
+    }
+
+    /**
+     * Reads the volumes value, accepting a single object in place of an array.
+     *
+     * @param in the reader positioned at the volumes value
+     * @return the volumes, or null if the value is null
+     * @throws IOException if the JSON is malformed
+     */
+    private List<Volume> readVolumes(JsonReader in) throws IOException {
+        List<Volume> list = new ArrayList<>();
+        switch (in.peek()) {
+        case BEGIN_ARRAY:
+            in.beginArray();
+            while (in.hasNext()) {
+                list.add(readVolume(in));
+            }
+            in.endArray();
+            return list;
+        case BEGIN_OBJECT:
+            list.add(readVolume(in));
+            return list;
+        default:
+            in.skipValue();
+            return null;
+        }
+    }
+
+    /**
+     * Reads a single volume object.
+     *
+     * @param in the reader positioned at the start of the object
+     * @return the volume
+     * @throws IOException if the JSON is malformed
+     */
+    private Volume readVolume(JsonReader in) throws IOException {
+        int content = 0;
+        String status = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+            case "content":
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                } else {
+                    content = in.nextInt();
+                }
+                break;
+            case "status":
+                status = nextString(in);
+                break;
+            default:
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return new Volume(content, status);
+    }
+
+    /**
+     * Reads a string value, which may be null.
+     *
+     * @param in the reader positioned at the value
+     * @return the string, or null
+     * @throws IOException if the JSON is malformed
+     */
+    private static String nextString(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextString();
+    }
+}
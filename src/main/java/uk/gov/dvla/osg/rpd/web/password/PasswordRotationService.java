@@ -0,0 +1,315 @@
+package uk.gov.dvla.osg.rpd.web.password;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import uk.gov.dvla.osg.rpd.web.client.PasswordUpdateClient;
+import uk.gov.dvla.osg.rpd.web.config.NetworkConfig;
+import uk.gov.dvla.osg.rpd.web.error.RpdErrorResponse;
+import uk.gov.dvla.osg.rpd.web.password.RotationOutcome.Status;
+
+/**
+ * Updates the passwords of many RPD application accounts, sending up to the
+ * configured number of updates at the same time over the shared connection pool.
+ * <p>
+ * When a journal is configured, each application whose password RPD accepts is
+ * recorded in it. If some updates fail, running the rotation again skips the
+ * applications already updated and only resends the rest. The journal is deleted
+ * once every application has its new password, so the next rotation starts afresh.
+ * <p>
+ * The first line of the journal holds the id the caller gave the rotation. A
+ * journal left by a rotation with a different id is discarded, so its
+ * applications are sent the new passwords rather than keeping the old ones.
+ * Callers must use a new id whenever they choose new passwords, such as the
+ * date of the rotation or its change number. Neither the passwords nor anything
+ * derived from them is written to the journal.
+ */
+public class PasswordRotationService {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final String UPDATED = "UPDATED";
+    private static final String ROTATION = "ROTATION";
+
+    private final NetworkConfig config;
+    private final Path journal;
+    private final int parallelism;
+
+    /**
+     * Creates a service using the passwordRotationJournal and
+     * passwordRotationParallelism settings in the config.
+     *
+     * @param config NetworkConfig object holding the password update url.
+     * @return a new PasswordRotationService
+     */
+    public static PasswordRotationService getInstance(NetworkConfig config) {
+        return new PasswordRotationService(config, config.getPasswordRotationJournal(), config.getPasswordRotationParallelism());
+    }
+
+    /**
+     * Creates a service with the given journal and parallelism.
+     *
+     * @param config NetworkConfig object holding the password update url.
+     * @param journal the journal file, or an empty string if rotations cannot be resumed
+     * @param parallelism the maximum number of updates sent at the same time
+     * @return a new PasswordRotationService
+     */
+    public static PasswordRotationService getInstance(NetworkConfig config, String journal, int parallelism) {
+        return new PasswordRotationService(config, journal, parallelism);
+    }
+
+    /**
+     * Instantiates a new password rotation service.
+     *
+     * @param config the network config
+     * @param journal the journal file, or an empty string
+     * @param parallelism the maximum number of updates sent at the same time
+     */
+    private PasswordRotationService(NetworkConfig config, String journal, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1 but was " + parallelism);
+        }
+        this.config = config;
+        this.journal = StringUtils.isBlank(journal) ? null : Paths.get(journal);
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Updates the password of each application. Applications recorded in the
+     * journal by an earlier, partly failed run are not sent again.
+     *
+     * @param token Session token required by RPD
+     * @param rotationId the id of the rotation, unique to its set of new passwords
+     * @param requests the JSON body of the update for each application, by application name
+     * @return the outcome for each application, in the order of the requests
+     * @throws IOException if the journal cannot be read or written
+     */
+    public RotationReport rotate(String token, String rotationId, Map<String, String> requests) throws IOException {
+        checkRotationId(rotationId);
+        Set<String> done = getCompleted(rotationId);
+        List<String> apps = new ArrayList<>(requests.keySet());
+        RotationOutcome[] outcomes = new RotationOutcome[apps.size()];
+        List<Integer> pending = new ArrayList<>();
+        for (int i = 0; i < apps.size(); i++) {
+            if (done.contains(apps.get(i))) {
+                outcomes[i] = new RotationOutcome(apps.get(i), Status.ALREADY_UPDATED, null, 0);
+            } else {
+                pending.add(i);
+            }
+        }
+        LOGGER.info("Rotating {} passwords, {} already updated", pending.size(), apps.size() - pending.size());
+
+        if (!pending.isEmpty()) {
+            try (FileChannel channel = openJournal(rotationId)) {
+                ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, pending.size()));
+                try {
+                    List<Future<RotationOutcome>> futures = new ArrayList<>(pending.size());
+                    for (int i : pending) {
+                        String app = apps.get(i);
+                        futures.add(executor.submit(() -> update(token, app, requests.get(app), channel)));
+                    }
+                    for (int n = 0; n < pending.size(); n++) {
+                        int i = pending.get(n);
+                        outcomes[i] = awaitOutcome(apps.get(i), futures.get(n));
+                    }
+                } finally {
+                    executor.shutdownNow();
+                }
+            }
+        }
+
+        RotationReport report = new RotationReport(Arrays.asList(outcomes));
+        if (report.isComplete()) {
+            reset();
+            LOGGER.info("Password rotation complete");
+        } else {
+            LOGGER.warn("Password rotation incomplete, {} of {} failed", report.getFailures().size(), apps.size());
+        }
+        return report;
+    }
+
+    /**
+     * Updates a single password and records it in the journal if RPD accepts it.
+     *
+     * @param token the session token
+     * @param app the application
+     * @param json the JSON body of the update
+     * @param channel the open journal, or null
+     * @return the outcome
+     * @throws IOException if the journal cannot be written
+     */
+    private RotationOutcome update(String token, String app, String json, FileChannel channel) throws IOException {
+        PasswordUpdateClient client = PasswordUpdateClient.getInstance(config, app);
+        long start = System.nanoTime();
+        boolean updated = client.rpdUpdatePwd(token, json);
+        long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        if (!updated) {
+            return new RotationOutcome(app, Status.FAILED, client.getErrorResponse(), duration);
+        }
+        if (channel != null) {
+            record(channel, app);
+        }
+        return new RotationOutcome(app, Status.UPDATED, null, duration);
+    }
+
+    /**
+     * Appends an updated application to the journal and forces it to disk, so
+     * that the update is not sent again if the process stops.
+     *
+     * @param channel the journal
+     * @param app the application
+     * @throws IOException if the journal cannot be written
+     */
+    private static void record(FileChannel channel, String app) throws IOException {
+        write(channel, UPDATED + "\t" + app);
+    }
+
+    /**
+     * Appends a line to the journal and forces it to disk.
+     *
+     * @param channel the journal
+     * @param line the line, without its line break
+     * @throws IOException if the journal cannot be written
+     */
+    private static void write(FileChannel channel, String line) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8));
+        synchronized (channel) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Waits for an update to complete, converting an interrupted or failed task
+     * into a failed outcome.
+     *
+     * @param app the application
+     * @param future the pending update
+     * @return the outcome
+     */
+    private static RotationOutcome awaitOutcome(String app, Future<RotationOutcome> future) {
+        RpdErrorResponse taskError = new RpdErrorResponse();
+        taskError.setCode("Password Update Error:");
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            taskError.setMessage("Password rotation was interrupted before " + app + " was updated");
+            taskError.setAction("Please run the rotation again.");
+            taskError.setException(ex);
+        } catch (ExecutionException ex) {
+            // The password may have been updated, but could not be recorded
+            taskError.setMessage("An error occured while updating the password for " + app);
+            taskError.setAction("Please check the journal can be written and run the rotation again.");
+            taskError.setException(ex);
+        }
+        return new RotationOutcome(app, Status.FAILED, taskError, 0);
+    }
+
+    /**
+     * Opens the journal for appending, starting it with the rotation header if it
+     * does not exist yet.
+     *
+     * @param rotationId the id of the rotation
+     * @return the open journal, or null if no journal is configured
+     * @throws IOException if the journal cannot be written
+     */
+    private FileChannel openJournal(String rotationId) throws IOException {
+        if (journal == null) {
+            return null;
+        }
+        FileChannel channel = FileChannel.open(journal,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        if (channel.size() == 0) {
+            write(channel, ROTATION + "\t" + rotationId);
+        }
+        return channel;
+    }
+
+    /**
+     * Gets the applications recorded in the journal as updated by an earlier run
+     * of the same rotation. A journal written for a different rotation is deleted
+     * and no applications are returned. A partial final line left by a crash part
+     * way through a write is ignored.
+     *
+     * @param rotationId the id of the rotation
+     * @return the application names
+     * @throws IOException if the journal cannot be read
+     */
+    public Set<String> getCompleted(String rotationId) throws IOException {
+        checkRotationId(rotationId);
+        if (journal == null || !Files.exists(journal)) {
+            return Collections.emptySet();
+        }
+        Set<String> done = new LinkedHashSet<>();
+        byte[] data = Files.readAllBytes(journal);
+        String text = new String(data, StandardCharsets.UTF_8);
+        int end = text.lastIndexOf('\n');
+        if (end < 0) {
+            // Not even the header was completed
+            reset();
+            return done;
+        }
+        String[] lines = text.substring(0, end).split("\n");
+        if (!(ROTATION + "\t" + rotationId).equals(lines[0])) {
+            LOGGER.warn("Discarding rotation journal [{}] as it was written for a different rotation", journal);
+            reset();
+            return done;
+        }
+        for (int i = 1; i < lines.length; i++) {
+            String[] fields = lines[i].split("\t", 2);
+            if (fields.length == 2 && UPDATED.equals(fields[0])) {
+                done.add(fields[1]);
+            } else {
+                LOGGER.warn("Ignoring invalid rotation journal entry [{}]", lines[i]);
+            }
+        }
+        return done;
+    }
+
+    /**
+     * Checks that a rotation id can be stored on the first line of the journal.
+     *
+     * @param rotationId the id of the rotation
+     */
+    private static void checkRotationId(String rotationId) {
+        if (StringUtils.isBlank(rotationId) || StringUtils.containsAny(rotationId, '\t', '\r', '\n')) {
+            throw new IllegalArgumentException("Rotation id [" + rotationId + "] must not be blank or contain tabs or line breaks");
+        }
+    }
+
+    /**
+     * Deletes the journal, so that the next rotation updates every application.
+     *
+     * @throws IOException if the journal cannot be deleted
+     */
+    public void reset() throws IOException {
+        if (journal != null) {
+            Files.deleteIfExists(journal);
+        }
+    }
+}
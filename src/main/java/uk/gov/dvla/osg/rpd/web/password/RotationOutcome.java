@@ -0,0 +1,99 @@
+package uk.gov.dvla.osg.rpd.web.password;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+import uk.gov.dvla.osg.rpd.web.error.RpdErrorResponse;
+
+/**
+ * The outcome of updating the password of a single application as part of a rotation.
+ */
+public class RotationOutcome {
+
+    /**
+     * The Enum Status.
+     */
+    public enum Status {
+        /** RPD accepted the new password. */
+        UPDATED,
+        /** The password was updated by an earlier run of the rotation and was not sent again. */
+        ALREADY_UPDATED,
+        /** RPD did not accept the new password. */
+        FAILED
+    }
+
+    private final String appName;
+    private final Status status;
+    private final RpdErrorResponse error;
+    private final long durationMillis;
+
+    /**
+     * Instantiates a new rotation outcome.
+     *
+     * @param appName the application
+     * @param status the status
+     * @param error the error response if the update failed, otherwise null
+     * @param durationMillis time taken to update the password in milliseconds
+     */
+    RotationOutcome(String appName, Status status, RpdErrorResponse error, long durationMillis) {
+        this.appName = appName;
+        this.status = status;
+        this.error = error;
+        this.durationMillis = durationMillis;
+    }
+
+    /**
+     * Gets the application.
+     *
+     * @return the application name
+     */
+    public String getAppName() {
+        return appName;
+    }
+
+    /**
+     * Gets the status.
+     *
+     * @return the status
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * Checks if the application has its new password.
+     *
+     * @return true if the password was updated by this or an earlier run
+     */
+    public boolean isUpdated() {
+        return status != Status.FAILED;
+    }
+
+    /**
+     * Gets the error response if the update failed.
+     *
+     * @return the error, or null if the password was updated
+     */
+    public RpdErrorResponse getError() {
+        return error;
+    }
+
+    /**
+     * Gets the time taken to update the password.
+     *
+     * @return the duration in milliseconds
+     */
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("appName", appName)
+                .append("status", status)
+                .append("durationMillis", durationMillis)
+                .append("error", error)
+                .toString();
+    }
+}
@@ -0,0 +1,77 @@
+package uk.gov.dvla.osg.rpd.web.password;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * The outcome of a password rotation, with one entry for each application in the
+ * order the applications were given.
+ */
+public class RotationReport {
+
+    private final List<RotationOutcome> outcomes;
+
+    /**
+     * Instantiates a new rotation report.
+     *
+     * @param outcomes the outcome for each application
+     */
+    RotationReport(List<RotationOutcome> outcomes) {
+        this.outcomes = Collections.unmodifiableList(outcomes);
+    }
+
+    /**
+     * Gets the outcome for each application.
+     *
+     * @return the outcomes
+     */
+    public List<RotationOutcome> getOutcomes() {
+        return outcomes;
+    }
+
+    /**
+     * Gets the applications whose password was not updated.
+     *
+     * @return the failed outcomes
+     */
+    public List<RotationOutcome> getFailures() {
+        return outcomes.stream().filter(outcome -> !outcome.isUpdated()).collect(Collectors.toList());
+    }
+
+    /**
+     * Checks if every application has its new password.
+     *
+     * @return true if no update failed
+     */
+    public boolean isComplete() {
+        return outcomes.stream().allMatch(RotationOutcome::isUpdated);
+    }
+
+    /**
+     * Formats the outcomes as a plain text table, one line per application.
+     *
+     * @return the table
+     */
+    public String toTable() {
+        int width = "Application".length();
+        for (RotationOutcome outcome : outcomes) {
+            width = Math.max(width, outcome.getAppName().length());
+        }
+        String format = "%-" + width + "s  %-15s  %8s  %s%n";
+        StringBuilder table = new StringBuilder();
+        table.append(String.format(format, "Application", "Outcome", "Time(ms)", "Error"));
+        for (RotationOutcome outcome : outcomes) {
+            String error = outcome.getError() == null ? "" : StringUtils.defaultString(outcome.getError().getMessage());
+            table.append(String.format(format, outcome.getAppName(), outcome.getStatus(), outcome.getDurationMillis(), error));
+        }
+        return table.toString();
+    }
+
+    @Override
+    public String toString() {
+        return toTable();
+    }
+}
@@ -0,0 +1,385 @@
+package uk.gov.dvla.osg.rpd.web.submit;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import uk.gov.dvla.osg.rpd.web.client.SubmitJobClient;
+import uk.gov.dvla.osg.rpd.web.client.TokenManager;
+
+/**
+ * Watches an output directory and submits each file to RPD once it has been
+ * completely written. A file is complete when its size and modified time have not
+ * changed for the stable period. Files whose names end in .tmp or .part, or begin
+ * with a dot, are ignored, so writers that rename a file into place on close are
+ * picked up as soon as the rename happens.
+ * <p>
+ * Completed files are queued and sent by a fixed number of worker threads. The
+ * watcher reports the queue depth and the latency from file creation to the 202
+ * response from RPD. A file that still fails after the maximum number of attempts
+ * is left alone until its size or modified time changes.
+ */
+public class DirectoryWatcher implements Closeable {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final Path directory;
+    private final int parallelism;
+    private final long stableMillis;
+    private final TokenManager tokens;
+    private final WatchService watchService;
+    // Every file currently being tracked, from first sighting until it is submitted
+    private final Map<Path, Candidate> tracked = new ConcurrentHashMap<>();
+    private final BlockingQueue<Candidate> queue = new LinkedBlockingQueue<>();
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService workers;
+    private Thread watcher;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong totalLatency = new AtomicLong();
+    private final AtomicLong maxLatency = new AtomicLong();
+    private final AtomicLong lastLatency = new AtomicLong();
+
+    /**
+     * Creates a watcher for the directory. Call start to begin watching.
+     *
+     * @param directory the directory to watch
+     * @param parallelism the maximum number of files uploaded at the same time
+     * @param stableMillis the time a file must be unchanged before it is submitted
+     * @param tokens the token manager of the user submitting the files
+     * @return the watcher
+     * @throws IOException if the directory cannot be watched
+     */
+    public static DirectoryWatcher getInstance(String directory, int parallelism, long stableMillis, TokenManager tokens) throws IOException {
+        return new DirectoryWatcher(Paths.get(directory), parallelism, stableMillis, tokens);
+    }
+
+    /**
+     * Instantiates a new directory watcher.
+     *
+     * @param directory the directory to watch
+     * @param parallelism the maximum number of files uploaded at the same time
+     * @param stableMillis the time a file must be unchanged before it is submitted
+     * @param tokens the token manager of the user submitting the files
+     * @throws IOException if the directory cannot be watched
+     */
+    private DirectoryWatcher(Path directory, int parallelism, long stableMillis, TokenManager tokens) throws IOException {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1 but was " + parallelism);
+        }
+        this.directory = directory;
+        this.parallelism = parallelism;
+        this.stableMillis = stableMillis;
+        this.tokens = tokens;
+        this.watchService = directory.getFileSystem().newWatchService();
+        directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> daemon(runnable, "rpd-watch-scheduler"));
+        this.workers = Executors.newFixedThreadPool(parallelism, runnable -> daemon(runnable, "rpd-watch-worker"));
+    }
+
+    /**
+     * Creates a daemon thread.
+     *
+     * @param runnable the task
+     * @param name the thread name
+     * @return the thread
+     */
+    private static Thread daemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Picks up any files already in the directory, then starts watching for new ones.
+     */
+    public void start() {
+        scan();
+        watcher = daemon(this::watch, "rpd-watcher");
+        watcher.start();
+        long interval = Math.max(1, stableMillis / 2);
+        scheduler.scheduleWithFixedDelay(this::checkStable, interval, interval, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < parallelism; i++) {
+            workers.execute(this::work);
+        }
+        LOGGER.info("Watching {} for files to submit", directory);
+    }
+
+    /**
+     * Tracks every file currently in the directory. Used at start up and when
+     * watch events have been lost.
+     */
+    private void scan() {
+        try (Stream<Path> paths = Files.list(directory)) {
+            paths.forEach(this::track);
+        } catch (IOException ex) {
+            LOGGER.error("Unable to scan directory {}", directory, ex);
+        }
+    }
+
+    /**
+     * Receives watch events until the watcher is closed.
+     */
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == OVERFLOW) {
+                        LOGGER.warn("Watch events lost for {}, rescanning", directory);
+                        scan();
+                    } else {
+                        track(directory.resolve((Path) event.context()));
+                    }
+                }
+                if (!key.reset()) {
+                    LOGGER.error("Directory {} is no longer accessible", directory);
+                    return;
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException ex) {
+            // Watcher closed
+        }
+    }
+
+    /**
+     * Starts tracking a file, unless it is ignored or already tracked.
+     *
+     * @param path the file
+     */
+    private void track(Path path) {
+        String name = path.getFileName().toString();
+        if (name.startsWith(".") || name.endsWith(".tmp") || name.endsWith(".part")) {
+            return;
+        }
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            if (attributes.isRegularFile()) {
+                long created = Math.min(attributes.creationTime().toMillis(), System.currentTimeMillis());
+                tracked.computeIfAbsent(path, p -> new Candidate(p, created));
+            }
+        } catch (IOException ex) {
+            // File removed or renamed before it could be read
+        }
+    }
+
+    /**
+     * Queues every tracked file whose size and modified time have not changed
+     * for the stable period. A file that has used all its attempts is only
+     * queued again once it has changed.
+     */
+    private void checkStable() {
+        long now = System.currentTimeMillis();
+        for (Candidate candidate : tracked.values()) {
+            if (candidate.queued) {
+                continue;
+            }
+            try {
+                long size = Files.size(candidate.path);
+                long modified = Files.getLastModifiedTime(candidate.path).toMillis();
+                if (size != candidate.size || modified != candidate.modified) {
+                    candidate.size = size;
+                    candidate.modified = modified;
+                    candidate.changed = now;
+                    if (candidate.abandoned) {
+                        LOGGER.info("{} has changed since it failed, it will be submitted again", candidate.path);
+                        candidate.abandoned = false;
+                        candidate.attempts = 0;
+                        candidate.notBefore = 0;
+                    }
+                } else if (!candidate.abandoned && now - candidate.changed >= stableMillis && now >= candidate.notBefore) {
+                    candidate.queued = true;
+                    queue.add(candidate);
+                }
+            } catch (IOException ex) {
+                // File has gone, stop tracking it
+                tracked.remove(candidate.path);
+            }
+        }
+    }
+
+    /**
+     * Submits queued files until the watcher is closed.
+     */
+    private void work() {
+        try {
+            while (true) {
+                submit(queue.take());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Submits a file, recording the latency on success. A rejected file is
+     * returned to tracking and retried, up to the maximum number of attempts,
+     * after which it waits for the file to change.
+     *
+     * @param candidate the file to submit
+     */
+    private void submit(Candidate candidate) {
+        SubmitJobClient client = SubmitJobClient.getInstance(tokens);
+        if (client.trySubmit(candidate.path.toFile())) {
+            long latency = System.currentTimeMillis() - candidate.created;
+            submitted.incrementAndGet();
+            totalLatency.addAndGet(latency);
+            maxLatency.accumulateAndGet(latency, Math::max);
+            lastLatency.set(latency);
+            tracked.remove(candidate.path);
+            LOGGER.debug("{} submitted {}ms after creation", candidate.path, latency);
+            return;
+        }
+        if (client.isDuplicate()) {
+            // Already submitted, left in the directory but no longer tracked
+            duplicates.incrementAndGet();
+            tracked.remove(candidate.path);
+            return;
+        }
+        failed.incrementAndGet();
+        if (++candidate.attempts < MAX_ATTEMPTS) {
+            LOGGER.warn("Submission of {} failed, will retry: {}", candidate.path, client.getErrorResponse());
+            candidate.notBefore = System.currentTimeMillis() + stableMillis * candidate.attempts;
+        } else {
+            // Left in the directory and retried if it is rewritten or on restart
+            LOGGER.error("Submission of {} failed after {} attempts: {}", candidate.path, MAX_ATTEMPTS, client.getErrorResponse());
+            candidate.abandoned = true;
+        }
+        candidate.queued = false;
+    }
+
+    /**
+     * Gets the number of completed files waiting for a worker.
+     *
+     * @return the queue depth
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Gets the number of files accepted by RPD.
+     *
+     * @return the submitted count
+     */
+    public long getSubmittedCount() {
+        return submitted.get();
+    }
+
+    /**
+     * Gets the number of failed submission attempts.
+     *
+     * @return the failed count
+     */
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * Gets the number of files skipped because they had already been submitted.
+     *
+     * @return the duplicate count
+     */
+    public long getDuplicateCount() {
+        return duplicates.get();
+    }
+
+    /**
+     * Gets the mean time from file creation to the 202 response.
+     *
+     * @return the average latency in milliseconds, or 0 if no file has been submitted
+     */
+    public long getAverageLatencyMillis() {
+        long count = submitted.get();
+        return count == 0 ? 0 : totalLatency.get() / count;
+    }
+
+    /**
+     * Gets the longest time from file creation to the 202 response.
+     *
+     * @return the maximum latency in milliseconds
+     */
+    public long getMaxLatencyMillis() {
+        return maxLatency.get();
+    }
+
+    /**
+     * Gets the time from file creation to the 202 response for the most recent file.
+     *
+     * @return the last latency in milliseconds
+     */
+    public long getLastLatencyMillis() {
+        return lastLatency.get();
+    }
+
+    /**
+     * Stops watching and shuts down the workers. Uploads in progress are interrupted.
+     */
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+        scheduler.shutdownNow();
+        workers.shutdownNow();
+        if (watcher != null) {
+            watcher.interrupt();
+        }
+    }
+
+    /**
+     * A file being tracked by the watcher.
+     */
+    private static final class Candidate {
+        private final Path path;
+        private final long created;
+        private volatile long size = -1;
+        private volatile long modified = -1;
+        private volatile long changed;
+        private volatile long notBefore = 0;
+        private volatile boolean queued = false;
+        // True once every attempt has failed, until the size or modified time changes
+        private volatile boolean abandoned = false;
+        private volatile int attempts = 0;
+
+        /**
+         * Instantiates a new candidate.
+         *
+         * @param path the file
+         * @param created the time the file was created
+         */
+        private Candidate(Path path, long created) {
+            this.path = path;
+            this.created = created;
+            this.changed = System.currentTimeMillis();
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package uk.gov.dvla.osg.rpd.web.submit;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import uk.gov.dvla.osg.rpd.web.config.NetworkConfig;
+
+/**
+ * A persistent index of the content hashes of recently submitted files, used to
+ * stop the same print file being sent to RPD twice.
+ * <p>
+ * The index is a fixed-size open-addressing hash table held in a memory-mapped
+ * file. Each slot holds the first 8 bytes of the SHA-256 hash of a file and the
+ * time it was submitted. Entries older than the expiry time are ignored and their
+ * slots are reused. If the table fills with live entries the oldest entry on the
+ * probe path is overwritten.
+ * <p>
+ * A fingerprint is reserved in memory while its file is being uploaded, so that
+ * two files with the same content sent at the same time are not both uploaded.
+ */
+public class SubmissionIndex implements Closeable {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final int MAGIC = 0x52504458;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int SLOT_SIZE = 16;
+    private static final int HASH_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * ****************************************************************************************
+     *                              SINGLETON PATTERN
+     * ****************************************************************************************.
+     */
+
+    private static Optional<SubmissionIndex> shared;
+
+    /**
+     * Gets the index configured in the NetworkConfig, opening it on first use.
+     * Deduplication is disabled if the dedupIndexFile property is not set or the
+     * index cannot be opened.
+     *
+     * @return the shared index, or an empty optional if deduplication is disabled
+     */
+    public static synchronized Optional<SubmissionIndex> getShared() {
+        if (shared == null) {
+            NetworkConfig config = NetworkConfig.getInstance();
+            shared = Optional.empty();
+            if (StringUtils.isNotBlank(config.getDedupIndexFile())) {
+                try {
+                    shared = Optional.of(open(config.getDedupIndexFile(), config.getDedupIndexCapacity(),
+                            TimeUnit.HOURS.toMillis(config.getDedupExpiryHours())));
+                } catch (IOException ex) {
+                    LOGGER.error("Unable to open submission index {}, duplicate files will not be detected",
+                            config.getDedupIndexFile(), ex);
+                }
+            }
+        }
+        return shared;
+    }
+
+    /** **************************************************************************************. */
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final int mask;
+    private final long expiryMillis;
+    // Fingerprints of files being uploaded, not yet recorded
+    private final Set<Long> reserved = new HashSet<>();
+
+    /**
+     * Opens the index file, creating it if it does not exist. The capacity of an
+     * existing file is kept.
+     *
+     * @param filename the index file
+     * @param capacity the number of slots, rounded up to a power of two
+     * @param expiryMillis the time after which an entry is no longer a duplicate
+     * @return the index
+     * @throws IOException if the file cannot be opened or is not an index file
+     */
+    public static SubmissionIndex open(String filename, int capacity, long expiryMillis) throws IOException {
+        return new SubmissionIndex(Paths.get(filename), capacity, expiryMillis);
+    }
+
+    /**
+     * Instantiates a new submission index.
+     *
+     * @param path the index file
+     * @param requestedCapacity the number of slots for a new file
+     * @param expiryMillis the time after which an entry is no longer a duplicate
+     * @throws IOException if the file cannot be opened or is not an index file
+     */
+    private SubmissionIndex(Path path, int requestedCapacity, long expiryMillis) throws IOException {
+        this.expiryMillis = expiryMillis;
+        boolean exists = Files.exists(path) && Files.size(path) >= HEADER_SIZE;
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        int slots;
+        if (exists) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            channel.read(header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                channel.close();
+                throw new IOException(path + " is not a submission index file");
+            }
+            slots = header.getInt();
+        } else {
+            slots = Integer.highestOneBit(Math.max(2, requestedCapacity - 1)) << 1;
+        }
+        capacity = slots;
+        mask = slots - 1;
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) slots * SLOT_SIZE);
+        if (!exists) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, slots);
+            buffer.force();
+        }
+    }
+
+    /**
+     * Calculates the fingerprint of a file from the SHA-256 hash of its contents.
+     * The file is read in fixed-size chunks, so memory use does not grow with the file.
+     *
+     * @param file the file
+     * @return the fingerprint, never zero
+     * @throws IOException if the file cannot be read
+     */
+    public static long fingerprint(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+        ByteBuffer chunk = ByteBuffer.allocateDirect(HASH_BUFFER_SIZE);
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            while (in.read(chunk) != -1) {
+                chunk.flip();
+                digest.update(chunk);
+                chunk.clear();
+            }
+        }
+        long fingerprint = ByteBuffer.wrap(digest.digest()).getLong();
+        // Zero marks an empty slot
+        return fingerprint == 0 ? 1 : fingerprint;
+    }
+
+    /**
+     * Checks if a file with this fingerprint was submitted within the expiry time.
+     *
+     * @param fingerprint the file fingerprint
+     * @return true if the file is a duplicate
+     */
+    public synchronized boolean contains(long fingerprint) {
+        long now = System.currentTimeMillis();
+        int slot = home(fingerprint);
+        for (int probes = 0; probes < capacity; probes++) {
+            long key = keyAt(slot);
+            if (key == 0) {
+                return false;
+            }
+            if (key == fingerprint) {
+                return now - timeAt(slot) < expiryMillis;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Reserves a fingerprint before its file is uploaded. The reservation ends
+     * when the fingerprint is recorded or released.
+     *
+     * @param fingerprint the file fingerprint
+     * @return true if the fingerprint was reserved, false if the file has already
+     *         been submitted or is being submitted
+     */
+    public synchronized boolean reserve(long fingerprint) {
+        if (contains(fingerprint)) {
+            return false;
+        }
+        return reserved.add(fingerprint);
+    }
+
+    /**
+     * Releases a reserved fingerprint after its upload has failed, so the file
+     * can be sent again.
+     *
+     * @param fingerprint the file fingerprint
+     */
+    public synchronized void release(long fingerprint) {
+        reserved.remove(fingerprint);
+    }
+
+    /**
+     * Records that a file with this fingerprint has been submitted and flushes
+     * the change to disk, ending any reservation.
+     *
+     * @param fingerprint the file fingerprint
+     */
+    public synchronized void record(long fingerprint) {
+        reserved.remove(fingerprint);
+        long now = System.currentTimeMillis();
+        int slot = home(fingerprint);
+        int target = -1;
+        int oldest = slot;
+        for (int probes = 0; probes < capacity; probes++) {
+            long key = keyAt(slot);
+            if (key == fingerprint) {
+                target = slot;
+                break;
+            }
+            if (key == 0) {
+                if (target == -1) {
+                    target = slot;
+                }
+                break;
+            }
+            long time = timeAt(slot);
+            if (target == -1 && now - time >= expiryMillis) {
+                // Expired slot, reused unless the fingerprint is found further along
+                target = slot;
+            }
+            if (time < timeAt(oldest)) {
+                oldest = slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (target == -1) {
+            LOGGER.warn("Submission index is full, overwriting the oldest entry");
+            target = oldest;
+        }
+        int offset = HEADER_SIZE + target * SLOT_SIZE;
+        buffer.putLong(offset, fingerprint);
+        buffer.putLong(offset + 8, now);
+        buffer.force();
+    }
+
+    /**
+     * Gets the number of slots in the index.
+     *
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Gets the first slot to probe for a fingerprint.
+     *
+     * @param fingerprint the file fingerprint
+     * @return the slot number
+     */
+    private int home(long fingerprint) {
+        return (int) (fingerprint ^ (fingerprint >>> 32)) & mask;
+    }
+
+    private long keyAt(int slot) {
+        return buffer.getLong(HEADER_SIZE + slot * SLOT_SIZE);
+    }
+
+    private long timeAt(int slot) {
+        return buffer.getLong(HEADER_SIZE + slot * SLOT_SIZE + 8);
+    }
+
+    /**
+     * Flushes the index to disk and closes the file.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+}
@@ -0,0 +1,436 @@
+package uk.gov.dvla.osg.rpd.web.submit;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import uk.gov.dvla.osg.rpd.web.client.SubmitJobClient;
+import uk.gov.dvla.osg.rpd.web.client.SubmitResult;
+import uk.gov.dvla.osg.rpd.web.client.TokenManager;
+
+/**
+ * A persistent outbox of files waiting to be submitted to RPD. Every change of
+ * state is appended to a journal on disk, so that after a restart the outbox
+ * resumes where it left off without re-uploading files RPD has acknowledged.
+ * <p>
+ * Each journal line holds a state, an entry id and the file path. Writes are
+ * flushed to disk in batches rather than once per line. When the outbox is opened
+ * the journal is replayed and compacted so that only unacknowledged entries remain.
+ * It is compacted again each time a set number of entries have been acknowledged,
+ * so the journal of a long running outbox stays small.
+ * <p>
+ * An entry that was in flight when the process stopped is treated as acknowledged
+ * if its file no longer exists, as SubmitJobClient only deletes a file after a 202
+ * response. Otherwise it is returned to the pending queue and sent again.
+ */
+public class SubmissionOutbox implements Closeable {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final String PENDING = "PENDING";
+    private static final String IN_FLIGHT = "INFLIGHT";
+    private static final String ACKED = "ACKED";
+    // Number of acknowledgements written to the journal before it is compacted
+    private static final int COMPACT_AFTER_ACKS = 1000;
+
+    private final Path journal;
+    private final int syncBatchSize;
+    private final TokenManager tokens;
+    private FileChannel channel;
+    // Pending and in-flight entries by id, in the order they were added
+    private final Map<Long, Path> pending = new LinkedHashMap<>();
+    private final Map<Long, Path> inFlight = new LinkedHashMap<>();
+    private long nextId = 1;
+    private long acknowledged = 0;
+    private int unsynced = 0;
+    private int acksSinceCompact = 0;
+    private Thread drainer;
+    private volatile boolean running = false;
+
+    /**
+     * Opens the outbox, replaying and compacting any existing journal.
+     *
+     * @param journal the journal file
+     * @param syncBatchSize the number of journal writes between each flush to disk
+     * @param tokens the token manager of the user submitting the files
+     * @return the outbox
+     * @throws IOException if the journal cannot be read or written
+     */
+    public static SubmissionOutbox open(String journal, int syncBatchSize, TokenManager tokens) throws IOException {
+        return new SubmissionOutbox(Paths.get(journal), syncBatchSize, tokens);
+    }
+
+    /**
+     * Instantiates a new outbox.
+     *
+     * @param journal the journal file
+     * @param syncBatchSize the number of journal writes between each flush to disk
+     * @param tokens the token manager of the user submitting the files
+     * @throws IOException if the journal cannot be read or written
+     */
+    private SubmissionOutbox(Path journal, int syncBatchSize, TokenManager tokens) throws IOException {
+        if (syncBatchSize < 1) {
+            throw new IllegalArgumentException("Sync batch size must be at least 1 but was " + syncBatchSize);
+        }
+        this.journal = journal;
+        this.syncBatchSize = syncBatchSize;
+        this.tokens = tokens;
+        replay();
+        compact();
+        this.channel = openJournal();
+        LOGGER.info("Outbox {} opened with {} pending submissions", journal, pending.size());
+    }
+
+    /**
+     * Rebuilds the outbox state from the journal. A partial final line left by a
+     * crash part way through a write is ignored.
+     *
+     * @throws IOException if the journal cannot be read
+     */
+    private void replay() throws IOException {
+        if (!Files.exists(journal)) {
+            return;
+        }
+        Map<Long, Path> wasInFlight = new LinkedHashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(journal, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", 3);
+                if (fields.length < 3 || !StringUtils.isNumeric(fields[1])) {
+                    LOGGER.warn("Ignoring incomplete outbox journal entry [{}]", line);
+                    continue;
+                }
+                long id = Long.parseLong(fields[1]);
+                Path path = Paths.get(fields[2]);
+                nextId = Math.max(nextId, id + 1);
+                pending.remove(id);
+                wasInFlight.remove(id);
+                if (PENDING.equals(fields[0])) {
+                    pending.put(id, path);
+                } else if (IN_FLIGHT.equals(fields[0])) {
+                    wasInFlight.put(id, path);
+                }
+            }
+        }
+        for (Map.Entry<Long, Path> entry : wasInFlight.entrySet()) {
+            if (Files.exists(entry.getValue())) {
+                LOGGER.warn("Submission of {} was interrupted and will be resent", entry.getValue());
+                pending.put(entry.getKey(), entry.getValue());
+            } else {
+                acknowledged++;
+            }
+        }
+    }
+
+    /**
+     * Opens the journal for appending.
+     *
+     * @return the journal channel
+     * @throws IOException if the journal cannot be opened
+     */
+    private FileChannel openJournal() throws IOException {
+        return FileChannel.open(journal, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Rewrites the journal so that it only holds the pending and in-flight
+     * entries, replacing the old journal atomically.
+     *
+     * @throws IOException if the journal cannot be written
+     */
+    private void compact() throws IOException {
+        Path temp = journal.resolveSibling(journal.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (Map.Entry<Long, Path> entry : inFlight.entrySet()) {
+                writeFully(out, record(IN_FLIGHT, entry.getKey(), entry.getValue()));
+            }
+            for (Map.Entry<Long, Path> entry : pending.entrySet()) {
+                writeFully(out, record(PENDING, entry.getKey(), entry.getValue()));
+            }
+            out.force(true);
+        }
+        Files.move(temp, journal, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        acksSinceCompact = 0;
+    }
+
+    /**
+     * Compacts the journal while the outbox is open, once enough entries have
+     * been acknowledged since the last compaction.
+     *
+     * @throws IOException if the journal cannot be written
+     */
+    private void compactIfDue() throws IOException {
+        if (acksSinceCompact < COMPACT_AFTER_ACKS) {
+            return;
+        }
+        channel.force(false);
+        channel.close();
+        try {
+            compact();
+        } finally {
+            // The old journal is left in place if the compaction fails
+            channel = openJournal();
+            unsynced = 0;
+        }
+        LOGGER.debug("Outbox journal {} compacted to {} entries", journal, pending.size() + inFlight.size());
+    }
+
+    /**
+     * Adds a file to the outbox. The entry is durable once the next batch of
+     * journal writes has been flushed, or immediately after calling flush.
+     *
+     * @param file the file to submit
+     * @return the id of the outbox entry
+     * @throws IOException if the journal cannot be written
+     */
+    public synchronized long enqueue(File file) throws IOException {
+        long id = nextId++;
+        Path path = file.toPath().toAbsolutePath();
+        append(PENDING, id, path);
+        pending.put(id, path);
+        notifyAll();
+        return id;
+    }
+
+    /**
+     * Forces all journal writes to disk.
+     *
+     * @throws IOException if the journal cannot be written
+     */
+    public synchronized void flush() throws IOException {
+        if (unsynced > 0) {
+            channel.force(false);
+            unsynced = 0;
+        }
+    }
+
+    /**
+     * Starts a background thread that submits pending entries, up to the given
+     * number of files at a time. Rejected files stay in the outbox and are retried
+     * after the retry delay.
+     *
+     * @param parallelism the maximum number of files uploaded at the same time
+     * @param retryDelayMillis the time to wait before resending rejected files
+     */
+    public synchronized void start(int parallelism, long retryDelayMillis) {
+        if (running) {
+            throw new IllegalStateException("Outbox drainer is already running");
+        }
+        running = true;
+        drainer = new Thread(() -> drain(parallelism, retryDelayMillis), "rpd-outbox-drainer");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    /**
+     * Submits pending entries until the outbox is stopped.
+     *
+     * @param parallelism the maximum number of files uploaded at the same time
+     * @param retryDelayMillis the time to wait before resending rejected files
+     */
+    private void drain(int parallelism, long retryDelayMillis) {
+        while (running) {
+            try {
+                Map<Long, Path> batch = takeBatch(parallelism);
+                List<File> files = new ArrayList<>(batch.size());
+                batch.values().forEach(path -> files.add(path.toFile()));
+
+                List<SubmitResult> results = SubmitJobClient.submitAll(files, parallelism, tokens);
+
+                boolean rejected = complete(batch, results);
+                if (rejected) {
+                    Thread.sleep(retryDelayMillis);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException ex) {
+                LOGGER.error("Unable to write to outbox journal {}", journal, ex);
+                running = false;
+            }
+        }
+    }
+
+    /**
+     * Waits for pending entries and moves up to the batch size of them in flight.
+     *
+     * @param size the maximum number of entries to take
+     * @return the entries taken, by id
+     * @throws InterruptedException if the drainer is stopped while waiting
+     * @throws IOException if the journal cannot be written
+     */
+    private synchronized Map<Long, Path> takeBatch(int size) throws InterruptedException, IOException {
+        while (pending.isEmpty()) {
+            wait();
+        }
+        Map<Long, Path> batch = new LinkedHashMap<>();
+        for (Map.Entry<Long, Path> entry : pending.entrySet()) {
+            if (batch.size() == size) {
+                break;
+            }
+            batch.put(entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<Long, Path> entry : batch.entrySet()) {
+            pending.remove(entry.getKey());
+            inFlight.put(entry.getKey(), entry.getValue());
+            append(IN_FLIGHT, entry.getKey(), entry.getValue());
+        }
+        return batch;
+    }
+
+    /**
+     * Records the outcome of a batch and flushes the acknowledgements to disk,
+     * compacting the journal if it is due.
+     *
+     * @param batch the entries that were sent, by id
+     * @param results the result for each entry, in the same order
+     * @return true if any file was rejected
+     * @throws IOException if the journal cannot be written
+     */
+    private synchronized boolean complete(Map<Long, Path> batch, List<SubmitResult> results) throws IOException {
+        boolean rejected = false;
+        int index = 0;
+        for (Map.Entry<Long, Path> entry : batch.entrySet()) {
+            SubmitResult result = results.get(index++);
+            inFlight.remove(entry.getKey());
+            if (result.isAccepted()) {
+                append(ACKED, entry.getKey(), entry.getValue());
+                acknowledged++;
+            } else if (result.isDuplicate()) {
+                // Already submitted, nothing to send
+                append(ACKED, entry.getKey(), entry.getValue());
+            } else if (!Files.exists(entry.getValue())) {
+                // Nothing left to send, so the entry is dropped
+                LOGGER.warn("Outbox file {} no longer exists and has been removed", entry.getValue());
+                append(ACKED, entry.getKey(), entry.getValue());
+            } else {
+                LOGGER.warn("Submission of {} failed: {}", entry.getValue(), result.getError());
+                append(PENDING, entry.getKey(), entry.getValue());
+                pending.put(entry.getKey(), entry.getValue());
+                rejected = true;
+            }
+        }
+        channel.force(false);
+        unsynced = 0;
+        compactIfDue();
+        return rejected;
+    }
+
+    /**
+     * Appends a state change to the journal, flushing to disk when a batch is complete.
+     *
+     * @param state the new state of the entry
+     * @param id the entry id
+     * @param path the file for the entry
+     * @throws IOException if the journal cannot be written
+     */
+    private void append(String state, long id, Path path) throws IOException {
+        writeFully(channel, record(state, id, path));
+        if (ACKED.equals(state)) {
+            acksSinceCompact++;
+        }
+        if (++unsynced >= syncBatchSize) {
+            channel.force(false);
+            unsynced = 0;
+        }
+    }
+
+    /**
+     * Encodes a journal line.
+     *
+     * @param state the state of the entry
+     * @param id the entry id
+     * @param path the file for the entry
+     * @return the encoded line
+     */
+    private static ByteBuffer record(String state, long id, Path path) {
+        return ByteBuffer.wrap((state + "\t" + id + "\t" + path + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Writes the whole buffer to the channel.
+     *
+     * @param out the channel to write to
+     * @param buffer the data to write
+     * @throws IOException if the channel cannot be written
+     */
+    private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    /**
+     * Gets the number of entries waiting to be sent.
+     *
+     * @return the pending count
+     */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Gets the number of entries currently being sent.
+     *
+     * @return the in-flight count
+     */
+    public synchronized int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * Gets the number of entries acknowledged by RPD since the outbox was opened,
+     * including interrupted submissions found to be complete during replay.
+     *
+     * @return the acknowledged count
+     */
+    public synchronized long getAcknowledgedCount() {
+        return acknowledged;
+    }
+
+    /**
+     * Stops the drainer, waiting for the current batch to complete, and closes the journal.
+     */
+    @Override
+    public void close() throws IOException {
+        Thread thread;
+        synchronized (this) {
+            running = false;
+            thread = drainer;
+        }
+        if (thread != null) {
+            // Only interrupt a drainer that is waiting for work, so a batch in progress is recorded
+            synchronized (this) {
+                if (inFlight.isEmpty()) {
+                    thread.interrupt();
+                }
+            }
+            try {
+                thread.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            channel.force(false);
+            channel.close();
+        }
+    }
+}
@@ -4,9 +4,9 @@ import java.io.IOException;
 
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.databind.JsonMappingException;
-import com.fasterxml.jackson.dataformat.xml.XmlMapper;
 
 import uk.gov.dvla.osg.rpd.web.error.RpdErrorResponse;
+import uk.gov.dvla.osg.rpd.web.json.CodecRegistry;
 
 public class xmlUtils {
 
@@ -20,6 +20,6 @@ public class xmlUtils {
      * @throws IOException Signals that an I/O exception has occurred.
      */
     public RpdErrorResponse getXmlError(String data) throws JsonParseException, JsonMappingException, IOException {
-        return new XmlMapper().readValue(data, RpdErrorResponse.class);
+        return CodecRegistry.getXmlErrorReader().readValue(data);
     }
 }
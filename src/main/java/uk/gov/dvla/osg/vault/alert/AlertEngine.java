@@ -0,0 +1,224 @@
+package uk.gov.dvla.osg.vault.alert;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import uk.gov.dvla.osg.rpd.web.config.NetworkConfig;
+import uk.gov.dvla.osg.vault.index.StockIndex;
+
+/**
+ * Evaluates low stock rules against each vault stock snapshot.
+ * <p>
+ * Rules are indexed by the StockIndex cell they watch. For each snapshot only the
+ * watched cells whose value has changed since the previous snapshot are looked
+ * at, and only the rules on those cells are evaluated, so the cost of a snapshot
+ * depends on what changed rather than on the number of rules. A rule raises an
+ * alert once when the stock falls below its threshold and clears it once when the
+ * stock reaches its clear level.
+ */
+public class AlertEngine {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final String PREFIX = "alert.";
+
+    private final List<AlertRule> rules;
+    // Rule positions for each watched cell, in the order the cells are checked
+    private final int[] cells;
+    private final int[][] rulesByCell;
+    private final boolean[] raised;
+    private final List<AlertListener> listeners = new CopyOnWriteArrayList<>();
+    private StockIndex previous;
+
+    /**
+     * Creates an engine from the rules in the alertRulesFile set in the
+     * NetworkConfig. If no file is set, or it cannot be read, the engine has no rules.
+     *
+     * @return a new AlertEngine
+     */
+    public static AlertEngine getInstance() {
+        String filename = NetworkConfig.getInstance().getAlertRulesFile();
+        if (StringUtils.isBlank(filename)) {
+            return new AlertEngine(Collections.emptyList());
+        }
+        try {
+            return fromFile(filename);
+        } catch (IOException ex) {
+            LOGGER.error("Unable to load alert rules from {}, alerts are disabled", filename, ex);
+            return new AlertEngine(Collections.emptyList());
+        }
+    }
+
+    /**
+     * Creates an engine from the alert.* properties in a file. Rules that are not
+     * valid are logged and left out.
+     *
+     * @param filename the alert rules file
+     * @return a new AlertEngine
+     * @throws IOException if the file cannot be read
+     */
+    public static AlertEngine fromFile(String filename) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream input = new FileInputStream(filename)) {
+            properties.load(input);
+        }
+        List<AlertRule> rules = new ArrayList<>();
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith(PREFIX)) {
+                try {
+                    rules.add(AlertRule.parse(key.substring(PREFIX.length()), properties.getProperty(key)));
+                } catch (IllegalArgumentException ex) {
+                    LOGGER.error(ex.getMessage());
+                }
+            }
+        }
+        LOGGER.info("Loaded {} alert rules from {}", rules.size(), filename);
+        return new AlertEngine(rules);
+    }
+
+    /**
+     * Creates an engine for the rules.
+     *
+     * @param rules the rules
+     * @return a new AlertEngine
+     */
+    public static AlertEngine of(List<AlertRule> rules) {
+        return new AlertEngine(rules);
+    }
+
+    /**
+     * Instantiates a new alert engine, indexing the rules by cell.
+     *
+     * @param rules the rules
+     */
+    private AlertEngine(List<AlertRule> rules) {
+        this.rules = Collections.unmodifiableList(new ArrayList<>(rules));
+        this.raised = new boolean[rules.size()];
+        int[] counts = new int[StockIndex.CELL_COUNT];
+        int watched = 0;
+        for (AlertRule rule : this.rules) {
+            if (counts[rule.getCell()]++ == 0) {
+                watched++;
+            }
+        }
+        cells = new int[watched];
+        rulesByCell = new int[watched][];
+        int[] slot = new int[StockIndex.CELL_COUNT];
+        int next = 0;
+        for (int cell = 0; cell < StockIndex.CELL_COUNT; cell++) {
+            if (counts[cell] > 0) {
+                cells[next] = cell;
+                rulesByCell[next] = new int[counts[cell]];
+                slot[cell] = next++;
+                counts[cell] = 0;
+            }
+        }
+        for (int r = 0; r < this.rules.size(); r++) {
+            int cell = this.rules.get(r).getCell();
+            rulesByCell[slot[cell]][counts[cell]++] = r;
+        }
+    }
+
+    /**
+     * Adds a listener for alert events.
+     *
+     * @param listener the listener
+     */
+    public void addListener(AlertListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener.
+     *
+     * @param listener the listener
+     * @return true if the listener was registered
+     */
+    public boolean removeListener(AlertListener listener) {
+        return listeners.remove(listener);
+    }
+
+    /**
+     * Evaluates the rules whose cells changed since the previous snapshot, and
+     * every rule for the first snapshot. Events are passed to the listeners
+     * before this method returns.
+     *
+     * @param index the index of the latest snapshot
+     * @return the alerts raised or cleared by the snapshot
+     */
+    public synchronized List<AlertEvent> evaluate(StockIndex index) {
+        List<AlertEvent> events = null;
+        for (int i = 0; i < cells.length; i++) {
+            int value = index.getCell(cells[i]);
+            if (previous != null && previous.getCell(cells[i]) == value) {
+                continue;
+            }
+            for (int r : rulesByCell[i]) {
+                AlertRule rule = rules.get(r);
+                AlertEvent event = null;
+                if (!raised[r] && value < rule.getThreshold()) {
+                    raised[r] = true;
+                    event = new AlertEvent(rule, AlertEvent.Type.RAISED, value);
+                } else if (raised[r] && value >= rule.getClearLevel()) {
+                    raised[r] = false;
+                    event = new AlertEvent(rule, AlertEvent.Type.CLEARED, value);
+                }
+                if (event != null) {
+                    if (events == null) {
+                        events = new ArrayList<>();
+                    }
+                    events.add(event);
+                }
+            }
+        }
+        previous = index;
+        if (events == null) {
+            return Collections.emptyList();
+        }
+        for (AlertEvent event : events) {
+            LOGGER.info("Stock alert {}", event);
+            for (AlertListener listener : listeners) {
+                try {
+                    listener.onAlert(event);
+                } catch (RuntimeException ex) {
+                    LOGGER.error("Alert listener failed", ex);
+                }
+            }
+        }
+        return events;
+    }
+
+    /**
+     * Gets the rules.
+     *
+     * @return the rules, which cannot be modified
+     */
+    public List<AlertRule> getRules() {
+        return rules;
+    }
+
+    /**
+     * Checks if the named alert is currently raised.
+     *
+     * @param name the rule name
+     * @return true if the alert is raised
+     */
+    public synchronized boolean isRaised(String name) {
+        for (int r = 0; r < rules.size(); r++) {
+            if (rules.get(r).getName().equals(name)) {
+                return raised[r];
+            }
+        }
+        return false;
+    }
+}
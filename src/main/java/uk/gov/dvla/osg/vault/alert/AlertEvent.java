@@ -0,0 +1,73 @@
+package uk.gov.dvla.osg.vault.alert;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+/**
+ * A change in the state of a low stock alert.
+ */
+public final class AlertEvent {
+
+    /**
+     * The Enum Type.
+     */
+    public enum Type {
+        /** The stock has fallen below the threshold. */
+        RAISED,
+        /** The stock has recovered to the clear level. */
+        CLEARED
+    }
+
+    private final AlertRule rule;
+    private final Type type;
+    private final int value;
+
+    /**
+     * Instantiates a new alert event.
+     *
+     * @param rule the rule
+     * @param type whether the alert was raised or cleared
+     * @param value the number of cards that triggered the change
+     */
+    AlertEvent(AlertRule rule, Type type, int value) {
+        this.rule = rule;
+        this.type = type;
+        this.value = value;
+    }
+
+    /**
+     * Gets the rule.
+     *
+     * @return the rule
+     */
+    public AlertRule getRule() {
+        return rule;
+    }
+
+    /**
+     * Gets whether the alert was raised or cleared.
+     *
+     * @return the type
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Gets the number of cards that triggered the change.
+     *
+     * @return the value
+     */
+    public int getValue() {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("rule", rule.getName())
+                .append("type", type)
+                .append("value", value)
+                .toString();
+    }
+}
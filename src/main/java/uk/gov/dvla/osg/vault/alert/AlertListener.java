@@ -0,0 +1,15 @@
+package uk.gov.dvla.osg.vault.alert;
+
+/**
+ * Receives low stock alerts from the AlertEngine.
+ */
+@FunctionalInterface
+public interface AlertListener {
+
+    /**
+     * Called when an alert is raised or cleared.
+     *
+     * @param event the alert event
+     */
+    void onAlert(AlertEvent event);
+}
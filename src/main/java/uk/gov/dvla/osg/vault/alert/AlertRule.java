@@ -0,0 +1,179 @@
+package uk.gov.dvla.osg.vault.alert;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+import uk.gov.dvla.osg.vault.enums.CardClass;
+import uk.gov.dvla.osg.vault.enums.EnvironmentType;
+import uk.gov.dvla.osg.vault.enums.Site;
+import uk.gov.dvla.osg.vault.enums.Status;
+import uk.gov.dvla.osg.vault.index.StockIndex;
+
+/**
+ * A low stock rule. The rule is raised when the number of cards matching its
+ * environment, site, card class and status falls below the threshold, and is
+ * cleared once the number reaches the clear level. Setting the clear level above
+ * the threshold stops an alert flapping when the stock hovers around the threshold.
+ * <p>
+ * In the alert rules file each rule is written as
+ * <pre>
+ * alert.&lt;name&gt;=ENVIRONMENT,SITE,CARDCLASS,STATUS,threshold[,clear]
+ * </pre>
+ * where * in place of a dimension matches all values, for example
+ * <pre>
+ * alert.bidLowAtF=PRODUCTION,F,BID,INVAULT,500,750
+ * </pre>
+ */
+public final class AlertRule {
+
+    private static final String ANY = "*";
+
+    private final String name;
+    private final EnvironmentType environment;
+    private final Site site;
+    private final CardClass cardClass;
+    private final Status status;
+    private final int threshold;
+    private final int clearLevel;
+    private final int cell;
+
+    /**
+     * Creates a rule. A null dimension matches all values.
+     *
+     * @param name the rule name
+     * @param environment the environment, or null for all environments
+     * @param site the site, or null for all sites
+     * @param cardClass the card class, or null for all card classes
+     * @param status the status, or null for all statuses
+     * @param threshold the alert is raised when the number of cards is below this value
+     * @param clearLevel the alert is cleared when the number of cards is at or above this value
+     * @throws IllegalArgumentException if the clear level is below the threshold
+     */
+    public AlertRule(String name, EnvironmentType environment, Site site, CardClass cardClass, Status status,
+            int threshold, int clearLevel) {
+        if (clearLevel < threshold) {
+            throw new IllegalArgumentException("Clear level " + clearLevel + " is below threshold " + threshold + " for alert " + name);
+        }
+        this.name = name;
+        this.environment = environment;
+        this.site = site;
+        this.cardClass = cardClass;
+        this.status = status;
+        this.threshold = threshold;
+        this.clearLevel = clearLevel;
+        this.cell = StockIndex.cellOf(environment, site, cardClass, status);
+    }
+
+    /**
+     * Parses a rule from the alert rules file.
+     *
+     * @param name the rule name, taken from the property key
+     * @param value the property value
+     * @return the rule
+     * @throws IllegalArgumentException if the value is not a valid rule
+     */
+    public static AlertRule parse(String name, String value) {
+        String[] fields = StringUtils.stripAll(StringUtils.split(value, ','));
+        if (fields.length != 5 && fields.length != 6) {
+            throw new IllegalArgumentException("Alert " + name + " must have 5 or 6 fields but was [" + value + "]");
+        }
+        try {
+            int threshold = Integer.parseInt(fields[4]);
+            int clearLevel = fields.length == 6 ? Integer.parseInt(fields[5]) : threshold;
+            return new AlertRule(name,
+                    ANY.equals(fields[0]) ? null : EnvironmentType.valueOf(fields[0].toUpperCase()),
+                    ANY.equals(fields[1]) ? null : Site.valueOf(fields[1].toUpperCase()),
+                    ANY.equals(fields[2]) ? null : CardClass.valueOf(fields[2].toUpperCase()),
+                    ANY.equals(fields[3]) ? null : Status.valueOf(fields[3].toUpperCase()),
+                    threshold, clearLevel);
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Alert " + name + " is not valid [" + value + "]: " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Gets the rule name.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the environment.
+     *
+     * @return the environment, or null for all environments
+     */
+    public EnvironmentType getEnvironment() {
+        return environment;
+    }
+
+    /**
+     * Gets the site.
+     *
+     * @return the site, or null for all sites
+     */
+    public Site getSite() {
+        return site;
+    }
+
+    /**
+     * Gets the card class.
+     *
+     * @return the card class, or null for all card classes
+     */
+    public CardClass getCardClass() {
+        return cardClass;
+    }
+
+    /**
+     * Gets the status.
+     *
+     * @return the status, or null for all statuses
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * Gets the threshold below which the alert is raised.
+     *
+     * @return the threshold
+     */
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Gets the level at or above which a raised alert is cleared.
+     *
+     * @return the clear level
+     */
+    public int getClearLevel() {
+        return clearLevel;
+    }
+
+    /**
+     * Gets the StockIndex cell the rule watches.
+     *
+     * @return the cell position
+     */
+    public int getCell() {
+        return cell;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("name", name)
+                .append("environment", environment)
+                .append("site", site)
+                .append("cardClass", cardClass)
+                .append("status", status)
+                .append("threshold", threshold)
+                .append("clearLevel", clearLevel)
+                .toString();
+    }
+}
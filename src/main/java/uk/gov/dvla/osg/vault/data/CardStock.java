@@ -23,6 +23,33 @@ public class CardStock {
     private String location;
     @SerializedName("volumes")
     private List<Volume> volumes = null;
+    // Resolved once from the className and location strings
+    private transient CardClass cardClassValue;
+    private transient Site siteValue;
+
+    /**
+     * Instantiates an empty card stock, populated by Gson.
+     */
+    private CardStock() { }
+
+    /**
+     * Instantiates a new card stock.
+     *
+     * @param firstUCI the first UCI
+     * @param cardType the card type name
+     * @param cardClass the card class as received from RPD
+     * @param location the site as received from RPD
+     * @param volumes the volumes for each status
+     */
+    public CardStock(String firstUCI, String cardType, String cardClass, String location, List<Volume> volumes) {
+        this.firstUCI = firstUCI;
+        this.cardType = cardType;
+        this.cardClass = cardClass;
+        this.location = location;
+        this.volumes = volumes;
+        this.cardClassValue = CardClass.lookup(cardClass);
+        this.siteValue = Site.lookup(location);
+    }
     
     /**
      * Gets the first UCI.
@@ -57,7 +84,10 @@ public class CardStock {
      * @return the card class
      */
     public CardClass getCardClass() {
-        return CardClass.valueOf(cardClass.toUpperCase());
+        if (cardClassValue == null) {
+            cardClassValue = CardClass.valueOf(cardClass.toUpperCase());
+        }
+        return cardClassValue;
     }
 
     /**
@@ -66,7 +96,10 @@ public class CardStock {
      * @return the site
      */
     public Site getSite() {
-        return Site.valueOf(location.toUpperCase());
+        if (siteValue == null) {
+            siteValue = Site.valueOf(location.toUpperCase());
+        }
+        return siteValue;
     }
 
 }
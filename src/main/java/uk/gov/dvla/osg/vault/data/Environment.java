@@ -12,6 +12,20 @@ public class Environment {
     @SerializedName("cardStock")
     @JsonAdapter(AlwaysListTypeAdapterFactory.class)
     private List<CardStock> cardStock = null;
+
+    /**
+     * Instantiates an empty environment, populated by Gson.
+     */
+    private Environment() { }
+
+    /**
+     * Instantiates a new environment.
+     *
+     * @param cardStock the card stock held in the environment
+     */
+    public Environment(List<CardStock> cardStock) {
+        this.cardStock = cardStock;
+    }
     
     /**
      * Gets the card stock.
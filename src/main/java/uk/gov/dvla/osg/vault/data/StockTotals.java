@@ -8,6 +8,22 @@ public class StockTotals {
     private Environment test;
     @SerializedName("production")
     private Environment production;
+
+    /**
+     * Instantiates empty stock totals, populated by Gson.
+     */
+    private StockTotals() { }
+
+    /**
+     * Instantiates new stock totals.
+     *
+     * @param test the test environment
+     * @param production the production environment
+     */
+    public StockTotals(Environment test, Environment production) {
+        this.test = test;
+        this.production = production;
+    }
     
     /**
      * Gets the test environment.
@@ -11,6 +11,20 @@ public class VaultStock {
     @SerializedName("stockTotals")
     private StockTotals stockTotals;
 
+    /**
+     * Instantiates an empty vault stock, populated by Gson.
+     */
+    private VaultStock() { }
+
+    /**
+     * Instantiates a new vault stock.
+     *
+     * @param stockTotals the stock totals
+     */
+    public VaultStock(StockTotals stockTotals) {
+        this.stockTotals = stockTotals;
+    }
+
     /**
      * Gets the stock totals.
      *
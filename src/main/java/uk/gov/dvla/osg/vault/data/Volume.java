@@ -10,6 +10,25 @@ public class Volume {
     private int content;
     @SerializedName("status")
     private String status;
+    // Resolved once from the status string
+    private transient Status statusValue;
+
+    /**
+     * Instantiates an empty volume, populated by Gson.
+     */
+    private Volume() { }
+
+    /**
+     * Instantiates a new volume.
+     *
+     * @param content the volume of cards
+     * @param status the status as received from RPD
+     */
+    public Volume(int content, String status) {
+        this.content = content;
+        this.status = status;
+        this.statusValue = Status.lookup(status);
+    }
 
     /**
      * Gets the volume of cards for the corresponding status.
@@ -26,6 +45,9 @@ public class Volume {
      * @return the status
      */
     public Status getStatus() {
-        return Status.valueOf(status.toUpperCase());
+        if (statusValue == null) {
+            statusValue = Status.valueOf(status.toUpperCase());
+        }
+        return statusValue;
     }
 }
@@ -0,0 +1,18 @@
+package uk.gov.dvla.osg.vault.diff;
+
+import java.util.List;
+
+/**
+ * Receives the changes between successive VaultStock snapshots.
+ */
+@FunctionalInterface
+public interface StockChangeListener {
+
+    /**
+     * Called with the volumes that changed since the previous snapshot. Only called
+     * when at least one volume has changed.
+     *
+     * @param deltas the changed volumes
+     */
+    void onChange(List<StockDelta> deltas);
+}
@@ -0,0 +1,124 @@
+package uk.gov.dvla.osg.vault.diff;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import uk.gov.dvla.osg.vault.data.VaultStock;
+
+/**
+ * Compares each VaultStock snapshot it is given with the one before and passes
+ * the changes to its subscribers, so that they receive only the volumes that
+ * have changed rather than the whole payload.
+ * <p>
+ * Changes are delivered in order on a single background thread, so a slow
+ * subscriber does not hold up the caller of publish. A subscriber that throws is
+ * logged and continues to receive later changes.
+ */
+public class StockChangePublisher implements Closeable {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private final List<StockChangeListener> listeners = new CopyOnWriteArrayList<>();
+    private final ExecutorService delivery;
+    private VaultStock previous;
+
+    /**
+     * Creates a publisher with no subscribers.
+     *
+     * @return a new StockChangePublisher
+     */
+    public static StockChangePublisher getInstance() {
+        return new StockChangePublisher();
+    }
+
+    /**
+     * Instantiates a new stock change publisher.
+     */
+    private StockChangePublisher() {
+        this.delivery = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rpd-stock-changes");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Adds a subscriber. It receives the changes from the next snapshot onwards.
+     *
+     * @param listener the subscriber
+     */
+    public void subscribe(StockChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a subscriber.
+     *
+     * @param listener the subscriber
+     * @return true if the listener was subscribed
+     */
+    public boolean unsubscribe(StockChangeListener listener) {
+        return listeners.remove(listener);
+    }
+
+    /**
+     * Compares the snapshot with the previous one and delivers any changes to the
+     * subscribers. The first snapshot is compared with an empty vault, so every
+     * volume in it is delivered as new. A null snapshot, such as a failed vault
+     * request, is skipped rather than reported as every volume gone. Once the
+     * publisher is closed the changes are still returned but not delivered.
+     *
+     * @param stock the latest snapshot, or null if none could be retrieved
+     * @return the changes, empty if nothing changed
+     */
+    public synchronized List<StockDelta> publish(VaultStock stock) {
+        if (stock == null) {
+            return Collections.emptyList();
+        }
+        List<StockDelta> deltas = StockDiff.compare(previous, stock);
+        previous = stock;
+        if (!deltas.isEmpty() && !listeners.isEmpty() && !delivery.isShutdown()) {
+            delivery.execute(() -> deliver(deltas));
+        }
+        return deltas;
+    }
+
+    /**
+     * Passes the changes to each subscriber in turn.
+     *
+     * @param deltas the changes
+     */
+    private void deliver(List<StockDelta> deltas) {
+        for (StockChangeListener listener : listeners) {
+            try {
+                listener.onChange(deltas);
+            } catch (RuntimeException ex) {
+                LOGGER.error("Stock change listener failed", ex);
+            }
+        }
+    }
+
+    /**
+     * Gets the number of subscribers.
+     *
+     * @return the subscriber count
+     */
+    public int getSubscriberCount() {
+        return listeners.size();
+    }
+
+    /**
+     * Stops delivering changes. Changes already queued are still delivered.
+     */
+    @Override
+    public synchronized void close() {
+        delivery.shutdown();
+    }
+}
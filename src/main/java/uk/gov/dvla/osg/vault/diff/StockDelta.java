@@ -0,0 +1,152 @@
+package uk.gov.dvla.osg.vault.diff;
+
+import java.util.Objects;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+import uk.gov.dvla.osg.vault.enums.CardClass;
+import uk.gov.dvla.osg.vault.enums.EnvironmentType;
+import uk.gov.dvla.osg.vault.enums.Site;
+import uk.gov.dvla.osg.vault.enums.Status;
+
+/**
+ * A change in the volume of a card type, at a site and with a status, between two
+ * VaultStock snapshots.
+ */
+public final class StockDelta {
+
+    private final EnvironmentType environment;
+    private final String cardType;
+    private final CardClass cardClass;
+    private final Site site;
+    private final Status status;
+    private final int previous;
+    private final int current;
+
+    /**
+     * Instantiates a new stock delta.
+     *
+     * @param environment the environment
+     * @param cardType the card type
+     * @param cardClass the card class
+     * @param site the site
+     * @param status the volume status
+     * @param previous the volume in the previous snapshot
+     * @param current the volume in the current snapshot
+     */
+    StockDelta(EnvironmentType environment, String cardType, CardClass cardClass, Site site, Status status,
+            int previous, int current) {
+        this.environment = environment;
+        this.cardType = cardType;
+        this.cardClass = cardClass;
+        this.site = site;
+        this.status = status;
+        this.previous = previous;
+        this.current = current;
+    }
+
+    /**
+     * Gets the environment.
+     *
+     * @return the environment
+     */
+    public EnvironmentType getEnvironment() {
+        return environment;
+    }
+
+    /**
+     * Gets the card type.
+     *
+     * @return the card type
+     */
+    public String getCardType() {
+        return cardType;
+    }
+
+    /**
+     * Gets the card class.
+     *
+     * @return the card class
+     */
+    public CardClass getCardClass() {
+        return cardClass;
+    }
+
+    /**
+     * Gets the site.
+     *
+     * @return the site
+     */
+    public Site getSite() {
+        return site;
+    }
+
+    /**
+     * Gets the volume status.
+     *
+     * @return the status
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * Gets the volume in the previous snapshot.
+     *
+     * @return the previous volume, 0 if the entry is new
+     */
+    public int getPrevious() {
+        return previous;
+    }
+
+    /**
+     * Gets the volume in the current snapshot.
+     *
+     * @return the current volume, 0 if the entry has been removed
+     */
+    public int getCurrent() {
+        return current;
+    }
+
+    /**
+     * Gets the change in volume.
+     *
+     * @return the current volume less the previous volume
+     */
+    public int getChange() {
+        return current - previous;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof StockDelta)) {
+            return false;
+        }
+        StockDelta other = (StockDelta) obj;
+        return environment == other.environment && Objects.equals(cardType, other.cardType)
+                && cardClass == other.cardClass && site == other.site && status == other.status
+                && previous == other.previous && current == other.current;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(environment, cardType, cardClass, site, status, previous, current);
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("environment", environment)
+                .append("cardType", cardType)
+                .append("cardClass", cardClass)
+                .append("site", site)
+                .append("status", status)
+                .append("previous", previous)
+                .append("current", current)
+                .toString();
+    }
+}
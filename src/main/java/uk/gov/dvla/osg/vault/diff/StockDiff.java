@@ -0,0 +1,146 @@
+package uk.gov.dvla.osg.vault.diff;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import uk.gov.dvla.osg.vault.data.CardStock;
+import uk.gov.dvla.osg.vault.data.Environment;
+import uk.gov.dvla.osg.vault.data.StockTotals;
+import uk.gov.dvla.osg.vault.data.VaultStock;
+import uk.gov.dvla.osg.vault.data.Volume;
+import uk.gov.dvla.osg.vault.enums.CardClass;
+import uk.gov.dvla.osg.vault.enums.EnvironmentType;
+import uk.gov.dvla.osg.vault.enums.Site;
+import uk.gov.dvla.osg.vault.enums.Status;
+
+/**
+ * Compares two VaultStock snapshots. Volumes are matched on environment, card
+ * type, card class, site and status, and a StockDelta is produced for every
+ * volume that has changed, appeared or gone. Card stock with a card class, site
+ * or status that is not recognised is ignored.
+ */
+public final class StockDiff {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    /**
+     * Static methods only.
+     */
+    private StockDiff() { }
+
+    /**
+     * Gets the changes between two snapshots.
+     *
+     * @param previous the earlier snapshot, or null if there is none
+     * @param current the later snapshot, or null if there is none
+     * @return the changed volumes as an unmodifiable list, empty if the snapshots
+     *         hold the same stock
+     */
+    public static List<StockDelta> compare(VaultStock previous, VaultStock current) {
+        Map<Key, Integer> before = volumes(previous);
+        Map<Key, Integer> after = volumes(current);
+        List<StockDelta> deltas = new ArrayList<>();
+        after.forEach((key, volume) -> {
+            int was = before.getOrDefault(key, 0);
+            if (was != volume) {
+                deltas.add(key.delta(was, volume));
+            }
+        });
+        before.forEach((key, volume) -> {
+            if (!after.containsKey(key) && volume != 0) {
+                deltas.add(key.delta(volume, 0));
+            }
+        });
+        return deltas.isEmpty() ? Collections.emptyList() : Collections.unmodifiableList(deltas);
+    }
+
+    /**
+     * Totals the volumes in a snapshot by key. Entries that share a key, such as
+     * the same card type held under two first UCIs, are added together.
+     *
+     * @param stock the snapshot
+     * @return the volume for each key
+     */
+    private static Map<Key, Integer> volumes(VaultStock stock) {
+        Map<Key, Integer> volumes = new HashMap<>();
+        StockTotals totals = stock == null ? null : stock.getStockTotals();
+        if (totals != null) {
+            add(volumes, EnvironmentType.TEST, totals.getTest());
+            add(volumes, EnvironmentType.PRODUCTION, totals.getProduction());
+        }
+        return volumes;
+    }
+
+    /**
+     * Adds the volumes of an environment to the map.
+     *
+     * @param volumes the volume for each key
+     * @param type the environment type
+     * @param environment the environment, may be null
+     */
+    private static void add(Map<Key, Integer> volumes, EnvironmentType type, Environment environment) {
+        if (environment == null || environment.getCardStock() == null) {
+            return;
+        }
+        for (CardStock stock : environment.getCardStock()) {
+            if (stock == null || stock.getVolumes() == null) {
+                continue;
+            }
+            for (Volume volume : stock.getVolumes()) {
+                try {
+                    Key key = new Key(type, stock.getCardType(), stock.getCardClass(), stock.getSite(), volume.getStatus());
+                    volumes.merge(key, volume.getContent(), Integer::sum);
+                } catch (RuntimeException ex) {
+                    LOGGER.warn("Unrecognised card stock {} left out of comparison", stock.getCardType());
+                }
+            }
+        }
+    }
+
+    /**
+     * The dimensions a volume is matched on.
+     */
+    private static final class Key {
+        private final EnvironmentType environment;
+        private final String cardType;
+        private final CardClass cardClass;
+        private final Site site;
+        private final Status status;
+        private final int hash;
+
+        private Key(EnvironmentType environment, String cardType, CardClass cardClass, Site site, Status status) {
+            this.environment = environment;
+            this.cardType = cardType;
+            this.cardClass = Objects.requireNonNull(cardClass);
+            this.site = Objects.requireNonNull(site);
+            this.status = Objects.requireNonNull(status);
+            this.hash = Objects.hash(environment, cardType, cardClass, site, status);
+        }
+
+        private StockDelta delta(int previous, int current) {
+            return new StockDelta(environment, cardType, cardClass, site, status, previous, current);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return environment == other.environment && Objects.equals(cardType, other.cardType)
+                    && cardClass == other.cardClass && site == other.site && status == other.status;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -7,5 +7,22 @@ public enum CardClass {
     TACHO,
     BID,
     POL,
-    DQC
+    DQC;
+
+    private static final CardClass[] VALUES = values();
+
+    /**
+     * Finds the card class matching the value, ignoring case.
+     *
+     * @param value the value received from RPD
+     * @return the matching card class, or null if the value is not recognised
+     */
+    public static CardClass lookup(String value) {
+        for (CardClass candidate : VALUES) {
+            if (candidate.name().equalsIgnoreCase(value)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
 }
@@ -0,0 +1,9 @@
+package uk.gov.dvla.osg.vault.enums;
+
+/**
+ * The Enum EnvironmentType, matching the environments in the vault stock totals.
+ */
+public enum EnvironmentType {
+    TEST,
+    PRODUCTION
+}
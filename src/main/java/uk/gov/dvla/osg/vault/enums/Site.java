@@ -5,5 +5,22 @@ package uk.gov.dvla.osg.vault.enums;
  */
 public enum Site {
     F,
-    M
+    M;
+
+    private static final Site[] VALUES = values();
+
+    /**
+     * Finds the site matching the value, ignoring case.
+     *
+     * @param value the value received from RPD
+     * @return the matching site, or null if the value is not recognised
+     */
+    public static Site lookup(String value) {
+        for (Site candidate : VALUES) {
+            if (candidate.name().equalsIgnoreCase(value)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
 }
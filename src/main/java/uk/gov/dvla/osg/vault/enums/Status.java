@@ -9,5 +9,22 @@ public enum Status {
     ONCRATE,
     OPENED,
     QUARANTINED,
-    NONE
+    NONE;
+
+    private static final Status[] VALUES = values();
+
+    /**
+     * Finds the status matching the value, ignoring case.
+     *
+     * @param value the value received from RPD
+     * @return the matching status, or null if the value is not recognised
+     */
+    public static Status lookup(String value) {
+        for (Status candidate : VALUES) {
+            if (candidate.name().equalsIgnoreCase(value)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
 }
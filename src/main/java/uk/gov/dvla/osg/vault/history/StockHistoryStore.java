@@ -0,0 +1,317 @@
+package uk.gov.dvla.osg.vault.history;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import uk.gov.dvla.osg.vault.enums.CardClass;
+import uk.gov.dvla.osg.vault.enums.EnvironmentType;
+import uk.gov.dvla.osg.vault.enums.Site;
+import uk.gov.dvla.osg.vault.enums.Status;
+import uk.gov.dvla.osg.vault.index.StockIndex;
+
+/**
+ * An append-only history of vault stock snapshots held in a memory-mapped file.
+ * <p>
+ * Each snapshot is stored as a fixed-width record holding its timestamp followed
+ * by the leaf values of its StockIndex, so a record can be located by position
+ * and records are found by timestamp with a binary search. The file grows in
+ * segments of SEGMENT_RECORDS records, each mapped separately, and the header
+ * holds the number of records written. Snapshots must be appended in time order.
+ * <p>
+ * Appends are synchronized. Reads may run on any thread at the same time as appends.
+ */
+public class StockHistoryStore implements Closeable {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final int MAGIC = 0x52504448;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int COUNT_OFFSET = 16;
+    private static final int RECORD_SIZE = Long.BYTES + StockIndex.LEAF_COUNT * Integer.BYTES;
+    private static final int SEGMENT_RECORDS = 1 << 16;
+    private static final long SEGMENT_SIZE = (long) SEGMENT_RECORDS * RECORD_SIZE;
+    private static final double MILLIS_PER_DAY = TimeUnit.DAYS.toMillis(1);
+
+    private static final EnvironmentType[] ENVIRONMENTS = EnvironmentType.values();
+    private static final Site[] SITES = Site.values();
+    private static final CardClass[] CARD_CLASSES = CardClass.values();
+    private static final Status[] STATUSES = Status.values();
+
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private volatile MappedByteBuffer[] segments;
+    private volatile long count;
+    private final int[] leaves = new int[StockIndex.LEAF_COUNT];
+
+    /**
+     * Opens the history file, creating it if it does not exist.
+     *
+     * @param filename the history file
+     * @return the store
+     * @throws IOException if the file cannot be opened or is not a history file
+     */
+    public static StockHistoryStore open(String filename) throws IOException {
+        return new StockHistoryStore(Paths.get(filename));
+    }
+
+    /**
+     * Instantiates a new stock history store.
+     *
+     * @param path the history file
+     * @throws IOException if the file cannot be opened or is not a history file
+     */
+    private StockHistoryStore(Path path) throws IOException {
+        boolean exists = Files.exists(path) && Files.size(path) >= HEADER_SIZE;
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        if (exists) {
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION || header.getInt(8) != StockIndex.LEAF_COUNT) {
+                channel.close();
+                throw new IOException(path + " is not a stock history file");
+            }
+            count = header.getLong(COUNT_OFFSET);
+            long available = (channel.size() - HEADER_SIZE) / RECORD_SIZE;
+            if (count > available) {
+                LOGGER.warn("Stock history {} is truncated, keeping {} of {} snapshots", path, available, count);
+                count = available;
+                header.putLong(COUNT_OFFSET, count);
+            }
+        } else {
+            header.putInt(0, MAGIC);
+            header.putInt(4, VERSION);
+            header.putInt(8, StockIndex.LEAF_COUNT);
+            header.putLong(COUNT_OFFSET, 0);
+            header.force();
+            count = 0;
+        }
+        int mapped = (int) ((count + SEGMENT_RECORDS - 1) / SEGMENT_RECORDS);
+        segments = new MappedByteBuffer[mapped];
+        for (int i = 0; i < mapped; i++) {
+            segments[i] = map(i);
+        }
+    }
+
+    /**
+     * Maps a segment of the file, extending the file if needed.
+     *
+     * @param segment the segment number
+     * @return the mapped segment
+     * @throws IOException if the segment cannot be mapped
+     */
+    private MappedByteBuffer map(int segment) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE + segment * SEGMENT_SIZE, SEGMENT_SIZE);
+    }
+
+    /**
+     * Appends a snapshot.
+     *
+     * @param timestamp the time of the snapshot in milliseconds since the epoch
+     * @param index the index of the snapshot
+     * @throws IOException if the file cannot be extended
+     * @throws IllegalArgumentException if the timestamp is earlier than the last snapshot
+     */
+    public synchronized void append(long timestamp, StockIndex index) throws IOException {
+        long record = count;
+        if (record > 0 && timestamp < getTimestamp(record - 1)) {
+            throw new IllegalArgumentException("Snapshot at " + timestamp + " is earlier than the last snapshot");
+        }
+        int segment = (int) (record / SEGMENT_RECORDS);
+        if (segment == segments.length) {
+            MappedByteBuffer[] grown = Arrays.copyOf(segments, segment + 1);
+            grown[segment] = map(segment);
+            segments = grown;
+        }
+        ByteBuffer buffer = segments[segment];
+        int offset = (int) (record % SEGMENT_RECORDS) * RECORD_SIZE;
+        index.copyLeaves(leaves);
+        buffer.putLong(offset, timestamp);
+        for (int leaf = 0; leaf < leaves.length; leaf++) {
+            buffer.putInt(offset + Long.BYTES + leaf * Integer.BYTES, leaves[leaf]);
+        }
+        // Published only once the record is complete
+        header.putLong(COUNT_OFFSET, record + 1);
+        count = record + 1;
+    }
+
+    /**
+     * Gets the number of snapshots in the store.
+     *
+     * @return the snapshot count
+     */
+    public long size() {
+        return count;
+    }
+
+    /**
+     * Gets the segment holding a record.
+     */
+    private ByteBuffer segment(long record) {
+        if (record < 0 || record >= count) {
+            throw new IndexOutOfBoundsException("Snapshot " + record + " of " + count);
+        }
+        return segments[(int) (record / SEGMENT_RECORDS)];
+    }
+
+    /**
+     * Gets the offset of a record within its segment.
+     */
+    private static int offset(long record) {
+        return (int) (record % SEGMENT_RECORDS) * RECORD_SIZE;
+    }
+
+    /**
+     * Gets the timestamp of a snapshot.
+     *
+     * @param record the snapshot position, from 0 to size - 1
+     * @return the timestamp in milliseconds since the epoch
+     */
+    public long getTimestamp(long record) {
+        return segment(record).getLong(offset(record));
+    }
+
+    /**
+     * Gets the number of cards for a combination of dimensions in a snapshot,
+     * reading the record directly. A null dimension totals across that dimension.
+     *
+     * @param record the snapshot position, from 0 to size - 1
+     * @param environment the environment, or null for all environments
+     * @param site the site, or null for all sites
+     * @param cardClass the card class, or null for all card classes
+     * @param status the status, or null for all statuses
+     * @return the number of cards
+     */
+    public long count(long record, EnvironmentType environment, Site site, CardClass cardClass, Status status) {
+        ByteBuffer buffer = segment(record);
+        int base = offset(record) + Long.BYTES;
+        long total = 0;
+        for (EnvironmentType e : ENVIRONMENTS) {
+            if (environment != null && environment != e) {
+                continue;
+            }
+            for (Site s : SITES) {
+                if (site != null && site != s) {
+                    continue;
+                }
+                for (CardClass c : CARD_CLASSES) {
+                    if (cardClass != null && cardClass != c) {
+                        continue;
+                    }
+                    for (Status t : STATUSES) {
+                        if (status == null || status == t) {
+                            total += buffer.getInt(base + StockIndex.leafOf(e, s, c, t) * Integer.BYTES);
+                        }
+                    }
+                }
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Gets the index of a snapshot.
+     *
+     * @param record the snapshot position, from 0 to size - 1
+     * @return the index
+     */
+    public StockIndex get(long record) {
+        ByteBuffer buffer = segment(record);
+        int base = offset(record) + Long.BYTES;
+        int[] values = new int[StockIndex.LEAF_COUNT];
+        for (int leaf = 0; leaf < values.length; leaf++) {
+            values[leaf] = buffer.getInt(base + leaf * Integer.BYTES);
+        }
+        return StockIndex.fromLeaves(values);
+    }
+
+    /**
+     * Finds the first snapshot taken at or after a time.
+     *
+     * @param timestamp the time in milliseconds since the epoch
+     * @return the snapshot position, or size if every snapshot is earlier
+     */
+    public long indexOf(long timestamp) {
+        long low = 0;
+        long high = count;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            if (getTimestamp(mid) < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Gets the average number of cards consumed per day for each card class over
+     * a period. Consumption is the sum of every fall in the volume with the status
+     * between one snapshot and the next; rises, such as deliveries, are ignored.
+     *
+     * @param environment the environment, or null for all environments
+     * @param site the site, or null for all sites
+     * @param status the status whose volume is consumed, normally INVAULT
+     * @param from the start of the period in milliseconds since the epoch, inclusive
+     * @param to the end of the period in milliseconds since the epoch, exclusive
+     * @return cards consumed per day by card class, 0 where there are fewer than two snapshots
+     */
+    public EnumMap<CardClass, Double> getConsumptionPerDay(EnvironmentType environment, Site site, Status status,
+            long from, long to) {
+        EnumMap<CardClass, Double> result = new EnumMap<>(CardClass.class);
+        long first = indexOf(from);
+        long last = indexOf(to) - 1;
+        double days = last > first ? (getTimestamp(last) - getTimestamp(first)) / MILLIS_PER_DAY : 0;
+        long[] previous = new long[CARD_CLASSES.length];
+        long[] consumed = new long[CARD_CLASSES.length];
+        if (days > 0) {
+            // A single pass over the period, tracking every card class at once
+            for (long record = first; record <= last; record++) {
+                for (CardClass cardClass : CARD_CLASSES) {
+                    int c = cardClass.ordinal();
+                    long current = count(record, environment, site, cardClass, status);
+                    if (record > first && current < previous[c]) {
+                        consumed[c] += previous[c] - current;
+                    }
+                    previous[c] = current;
+                }
+            }
+        }
+        for (CardClass cardClass : CARD_CLASSES) {
+            result.put(cardClass, days > 0 ? consumed[cardClass.ordinal()] / days : 0);
+        }
+        return result;
+    }
+
+    /**
+     * Writes appended snapshots to disk.
+     */
+    public synchronized void flush() {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+        header.force();
+    }
+
+    /**
+     * Writes appended snapshots to disk and closes the file.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        flush();
+        channel.close();
+    }
+}
@@ -0,0 +1,323 @@
+package uk.gov.dvla.osg.vault.index;
+
+import java.util.EnumMap;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import uk.gov.dvla.osg.vault.data.CardStock;
+import uk.gov.dvla.osg.vault.data.Environment;
+import uk.gov.dvla.osg.vault.data.StockTotals;
+import uk.gov.dvla.osg.vault.data.VaultStock;
+import uk.gov.dvla.osg.vault.data.Volume;
+import uk.gov.dvla.osg.vault.enums.CardClass;
+import uk.gov.dvla.osg.vault.enums.EnvironmentType;
+import uk.gov.dvla.osg.vault.enums.Site;
+import uk.gov.dvla.osg.vault.enums.Status;
+
+/**
+ * An immutable index of card volumes in a VaultStock snapshot, keyed by
+ * environment, site, card class and status.
+ * <p>
+ * The volumes are held in a flat int array with one extra "all" position in each
+ * dimension, and every roll-up is calculated when the index is built. Any
+ * combination of dimensions can then be answered in constant time without
+ * allocating, by passing null for the dimensions to total over.
+ */
+public final class StockIndex {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final EnvironmentType[] ENVIRONMENTS = EnvironmentType.values();
+    private static final Site[] SITES = Site.values();
+    private static final CardClass[] CARD_CLASSES = CardClass.values();
+    private static final Status[] STATUSES = Status.values();
+
+    // Each dimension has an extra position holding the total across the dimension
+    private static final int ENVIRONMENT_SIZE = ENVIRONMENTS.length + 1;
+    private static final int SITE_SIZE = SITES.length + 1;
+    private static final int CARD_CLASS_SIZE = CARD_CLASSES.length + 1;
+    private static final int STATUS_SIZE = STATUSES.length + 1;
+
+    /** The number of cells in an index. */
+    public static final int CELL_COUNT = ENVIRONMENT_SIZE * SITE_SIZE * CARD_CLASS_SIZE * STATUS_SIZE;
+
+    /** The number of leaves in an index, the cells that are not roll-ups. */
+    public static final int LEAF_COUNT = ENVIRONMENTS.length * SITES.length * CARD_CLASSES.length * STATUSES.length;
+
+    private final int[] cells;
+
+    /**
+     * Instantiates a new index over the cells.
+     *
+     * @param cells the cell values, owned by the index
+     */
+    private StockIndex(int[] cells) {
+        this.cells = cells;
+    }
+
+    /**
+     * Builds the index for a vault stock snapshot. Card stock with a card class,
+     * site or status that is not recognised is left out of the index.
+     *
+     * @param stock the vault stock
+     * @return the index
+     */
+    public static StockIndex of(VaultStock stock) {
+        int[] leaves = new int[LEAF_COUNT];
+        StockTotals totals = stock == null ? null : stock.getStockTotals();
+        if (totals != null) {
+            add(leaves, EnvironmentType.TEST, totals.getTest());
+            add(leaves, EnvironmentType.PRODUCTION, totals.getProduction());
+        }
+        return expand(leaves);
+    }
+
+    /**
+     * Creates an index from cell values previously taken from copyCells.
+     *
+     * @param cells the cell values
+     * @return the index
+     * @throws IllegalArgumentException if the array is not CELL_COUNT long
+     */
+    public static StockIndex fromCells(int[] cells) {
+        if (cells.length != CELL_COUNT) {
+            throw new IllegalArgumentException("Expected " + CELL_COUNT + " cells but received " + cells.length);
+        }
+        return new StockIndex(cells.clone());
+    }
+
+    /**
+     * Creates an index from leaf values previously taken from copyLeaves,
+     * calculating every roll-up.
+     *
+     * @param leaves the leaf values
+     * @return the index
+     * @throws IllegalArgumentException if the array is not LEAF_COUNT long
+     */
+    public static StockIndex fromLeaves(int[] leaves) {
+        if (leaves.length != LEAF_COUNT) {
+            throw new IllegalArgumentException("Expected " + LEAF_COUNT + " leaves but received " + leaves.length);
+        }
+        return expand(leaves);
+    }
+
+    /**
+     * Adds the volumes in an environment to the leaves.
+     *
+     * @param leaves the leaves being built
+     * @param type the environment type
+     * @param environment the environment, may be null
+     */
+    private static void add(int[] leaves, EnvironmentType type, Environment environment) {
+        List<CardStock> cardStock = environment == null ? null : environment.getCardStock();
+        if (cardStock == null) {
+            return;
+        }
+        for (CardStock stock : cardStock) {
+            if (stock == null || stock.getVolumes() == null) {
+                continue;
+            }
+            Site site;
+            CardClass cardClass;
+            try {
+                site = stock.getSite();
+                cardClass = stock.getCardClass();
+            } catch (RuntimeException ex) {
+                LOGGER.warn("Unrecognised card stock {} left out of stock index", stock.getCardType());
+                continue;
+            }
+            for (Volume volume : stock.getVolumes()) {
+                try {
+                    leaves[leafOf(type, site, cardClass, volume.getStatus())] += volume.getContent();
+                } catch (RuntimeException ex) {
+                    LOGGER.warn("Unrecognised volume status for {} left out of stock index", stock.getCardType());
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds the cells from the leaves.
+     *
+     * @param leaves the leaf values
+     * @return the index
+     */
+    private static StockIndex expand(int[] leaves) {
+        int[] cells = new int[CELL_COUNT];
+        int leaf = 0;
+        for (int e = 0; e < ENVIRONMENTS.length; e++) {
+            for (int s = 0; s < SITES.length; s++) {
+                for (int c = 0; c < CARD_CLASSES.length; c++) {
+                    for (int t = 0; t < STATUSES.length; t++) {
+                        int content = leaves[leaf++];
+                        if (content == 0) {
+                            continue;
+                        }
+                        // Add to the cell itself and to each of the 15 roll-ups that include it,
+                        // where each bit of the mask swaps a dimension for its total
+                        for (int mask = 0; mask < 16; mask++) {
+                            cells[cell((mask & 1) == 0 ? e : ENVIRONMENTS.length,
+                                       (mask & 2) == 0 ? s : SITES.length,
+                                       (mask & 4) == 0 ? c : CARD_CLASSES.length,
+                                       (mask & 8) == 0 ? t : STATUSES.length)] += content;
+                        }
+                    }
+                }
+            }
+        }
+        return new StockIndex(cells);
+    }
+
+    /**
+     * Gets the position of a leaf, a single combination of environment, site, card
+     * class and status with no roll-up. Leaves are ordered by environment, then
+     * site, then card class, then status.
+     *
+     * @param environment the environment
+     * @param site the site
+     * @param cardClass the card class
+     * @param status the status
+     * @return the leaf position, between 0 and LEAF_COUNT - 1
+     */
+    public static int leafOf(EnvironmentType environment, Site site, CardClass cardClass, Status status) {
+        return ((environment.ordinal() * SITES.length + site.ordinal()) * CARD_CLASSES.length
+                + cardClass.ordinal()) * STATUSES.length + status.ordinal();
+    }
+
+    /**
+     * Gets the position of a cell from the ordinal of each dimension, where the
+     * size of the dimension is used for the total across the dimension.
+     */
+    private static int cell(int environment, int site, int cardClass, int status) {
+        return ((environment * SITE_SIZE + site) * CARD_CLASS_SIZE + cardClass) * STATUS_SIZE + status;
+    }
+
+    /**
+     * Gets the position of the cell for a combination of dimensions. A null
+     * dimension selects the total across that dimension.
+     *
+     * @param environment the environment, or null for all environments
+     * @param site the site, or null for all sites
+     * @param cardClass the card class, or null for all card classes
+     * @param status the status, or null for all statuses
+     * @return the cell position, between 0 and CELL_COUNT - 1
+     */
+    public static int cellOf(EnvironmentType environment, Site site, CardClass cardClass, Status status) {
+        return cell(environment == null ? ENVIRONMENTS.length : environment.ordinal(),
+                    site == null ? SITES.length : site.ordinal(),
+                    cardClass == null ? CARD_CLASSES.length : cardClass.ordinal(),
+                    status == null ? STATUSES.length : status.ordinal());
+    }
+
+    /**
+     * Gets the number of cards for a combination of dimensions. A null dimension
+     * totals across that dimension, so count(PRODUCTION, M, TACHO, INVAULT) gives
+     * the TACHO cards in the vault at site M, and count(null, null, null, null)
+     * gives every card in the snapshot.
+     *
+     * @param environment the environment, or null for all environments
+     * @param site the site, or null for all sites
+     * @param cardClass the card class, or null for all card classes
+     * @param status the status, or null for all statuses
+     * @return the number of cards
+     */
+    public int count(EnvironmentType environment, Site site, CardClass cardClass, Status status) {
+        return cells[cellOf(environment, site, cardClass, status)];
+    }
+
+    /**
+     * Gets the value of a cell by its position.
+     *
+     * @param cell the cell position from cellOf
+     * @return the number of cards
+     */
+    public int getCell(int cell) {
+        return cells[cell];
+    }
+
+    /**
+     * Copies the cell values into the array.
+     *
+     * @param target an array at least CELL_COUNT long
+     */
+    public void copyCells(int[] target) {
+        System.arraycopy(cells, 0, target, 0, CELL_COUNT);
+    }
+
+    /**
+     * Copies the leaf values into the array, in leafOf order.
+     *
+     * @param target an array at least LEAF_COUNT long
+     */
+    public void copyLeaves(int[] target) {
+        int leaf = 0;
+        for (int e = 0; e < ENVIRONMENTS.length; e++) {
+            for (int s = 0; s < SITES.length; s++) {
+                for (int c = 0; c < CARD_CLASSES.length; c++) {
+                    for (int t = 0; t < STATUSES.length; t++) {
+                        target[leaf++] = cells[cell(e, s, c, t)];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the number of cards for each card class.
+     *
+     * @param environment the environment, or null for all environments
+     * @param site the site, or null for all sites
+     * @param status the status, or null for all statuses
+     * @return the number of cards by card class
+     */
+    public EnumMap<CardClass, Integer> byCardClass(EnvironmentType environment, Site site, Status status) {
+        EnumMap<CardClass, Integer> result = new EnumMap<>(CardClass.class);
+        for (CardClass cardClass : CARD_CLASSES) {
+            result.put(cardClass, count(environment, site, cardClass, status));
+        }
+        return result;
+    }
+
+    /**
+     * Gets the number of cards for each site.
+     *
+     * @param environment the environment, or null for all environments
+     * @param cardClass the card class, or null for all card classes
+     * @param status the status, or null for all statuses
+     * @return the number of cards by site
+     */
+    public EnumMap<Site, Integer> bySite(EnvironmentType environment, CardClass cardClass, Status status) {
+        EnumMap<Site, Integer> result = new EnumMap<>(Site.class);
+        for (Site site : SITES) {
+            result.put(site, count(environment, site, cardClass, status));
+        }
+        return result;
+    }
+
+    /**
+     * Gets the number of cards for each status.
+     *
+     * @param environment the environment, or null for all environments
+     * @param site the site, or null for all sites
+     * @param cardClass the card class, or null for all card classes
+     * @return the number of cards by status
+     */
+    public EnumMap<Status, Integer> byStatus(EnvironmentType environment, Site site, CardClass cardClass) {
+        EnumMap<Status, Integer> result = new EnumMap<>(Status.class);
+        for (Status status : STATUSES) {
+            result.put(status, count(environment, site, cardClass, status));
+        }
+        return result;
+    }
+
+    /**
+     * Starts a query against the index.
+     *
+     * @return a query across all dimensions
+     */
+    public StockQuery query() {
+        return new StockQuery(this);
+    }
+}
@@ -0,0 +1,111 @@
+package uk.gov.dvla.osg.vault.index;
+
+import uk.gov.dvla.osg.vault.enums.CardClass;
+import uk.gov.dvla.osg.vault.enums.EnvironmentType;
+import uk.gov.dvla.osg.vault.enums.Site;
+import uk.gov.dvla.osg.vault.enums.Status;
+
+/**
+ * A query against a StockIndex. Each dimension that is not set is totalled over,
+ * for example:
+ * <pre>
+ * int inVault = index.query().production().site(Site.M).cardClass(CardClass.TACHO).status(Status.INVAULT).count();
+ * </pre>
+ */
+public final class StockQuery {
+
+    private final StockIndex index;
+    private EnvironmentType environment;
+    private Site site;
+    private CardClass cardClass;
+    private Status status;
+
+    /**
+     * Instantiates a new query across all dimensions.
+     *
+     * @param index the index to query
+     */
+    StockQuery(StockIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * Restricts the query to an environment.
+     *
+     * @param environment the environment, or null for all environments
+     * @return this query
+     */
+    public StockQuery environment(EnvironmentType environment) {
+        this.environment = environment;
+        return this;
+    }
+
+    /**
+     * Restricts the query to the test environment.
+     *
+     * @return this query
+     */
+    public StockQuery test() {
+        return environment(EnvironmentType.TEST);
+    }
+
+    /**
+     * Restricts the query to the production environment.
+     *
+     * @return this query
+     */
+    public StockQuery production() {
+        return environment(EnvironmentType.PRODUCTION);
+    }
+
+    /**
+     * Restricts the query to a site.
+     *
+     * @param site the site, or null for all sites
+     * @return this query
+     */
+    public StockQuery site(Site site) {
+        this.site = site;
+        return this;
+    }
+
+    /**
+     * Restricts the query to a card class.
+     *
+     * @param cardClass the card class, or null for all card classes
+     * @return this query
+     */
+    public StockQuery cardClass(CardClass cardClass) {
+        this.cardClass = cardClass;
+        return this;
+    }
+
+    /**
+     * Restricts the query to a status.
+     *
+     * @param status the status, or null for all statuses
+     * @return this query
+     */
+    public StockQuery status(Status status) {
+        this.status = status;
+        return this;
+    }
+
+    /**
+     * Gets the number of cards matching the query.
+     *
+     * @return the number of cards
+     */
+    public int count() {
+        return index.count(environment, site, cardClass, status);
+    }
+
+    /**
+     * Gets the position of the index cell that answers the query.
+     *
+     * @return the cell position
+     */
+    public int cell() {
+        return StockIndex.cellOf(environment, site, cardClass, status);
+    }
+}
@@ -0,0 +1,156 @@
+package uk.gov.dvla.osg.rpd.web.json;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.function.Function;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import uk.gov.dvla.osg.vault.data.CardStock;
+import uk.gov.dvla.osg.vault.data.VaultStock;
+
+/**
+ * Compares the time taken and memory allocated by the tree-based VaultStock parse
+ * (EmptyStringAsNullTypeAdapter, with a new Gson built for each parse as
+ * JsonUtils used to) against the single-pass VaultStockTypeAdapter.
+ * <p>
+ * Run after mvn test-compile with:
+ *
+ * <pre>
+ * java -cp target/classes:target/test-classes:&lt;dependencies&gt; \
+ *     uk.gov.dvla.osg.rpd.web.json.VaultStockParseBenchmark [cardStockEntries] [iterations]
+ * </pre>
+ *
+ * Allocation is measured per thread with com.sun.management.ThreadMXBean, so the
+ * harness needs a HotSpot based JVM.
+ */
+public final class VaultStockParseBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 2_000;
+
+    private VaultStockParseBenchmark() { }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args the number of cardStock entries in the document and the number
+     *            of measured parses
+     */
+    @SuppressWarnings("deprecation")
+    public static void main(String[] args) {
+        int entries = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+        String json = document(entries);
+
+        Function<String, VaultStock> tree = data -> new GsonBuilder()
+                .registerTypeAdapter(VaultStock.class, new EmptyStringAsNullTypeAdapter<VaultStock>())
+                .create()
+                .fromJson(data, VaultStock.class);
+        Gson shared = CodecRegistry.getGson();
+        Function<String, VaultStock> streaming = data -> shared.fromJson(data, VaultStock.class);
+
+        check(tree.apply(json), entries);
+        check(streaming.apply(json), entries);
+
+        System.out.printf(Locale.UK, "Document: %d cardStock entries, %d bytes, %d parses%n",
+                entries, json.length(), iterations);
+        Result before = measure(tree, json, iterations);
+        Result after = measure(streaming, json, iterations);
+        System.out.printf(Locale.UK, "%-10s %14s %16s%n", "Parser", "Time/parse(us)", "Alloc/parse(KB)");
+        print("tree", before);
+        print("streaming", after);
+        System.out.printf(Locale.UK, "Streaming is %.1fx faster and allocates %.1fx less%n",
+                before.nanos / after.nanos, before.bytes / after.bytes);
+    }
+
+    /**
+     * Builds a VaultStock document with an empty test environment, as RPD sends
+     * when it holds no stock.
+     *
+     * @param entries the number of cardStock entries in production
+     * @return the JSON document
+     */
+    private static String document(int entries) {
+        StringBuilder json = new StringBuilder("{\"stockTotals\":{\"test\":\"\",\"production\":{\"cardStock\":[");
+        for (int i = 0; i < entries; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"firstUCI\":\"UCI").append(100000 + i)
+                .append("\",\"cardTypeName\":\"TYPE").append(i % 7)
+                .append("\",\"className\":\"").append(i % 2 == 0 ? "TACHO" : "POL")
+                .append("\",\"location\":\"").append(i % 2 == 0 ? "F" : "M")
+                .append("\",\"volumes\":[{\"content\":").append(i * 10)
+                .append(",\"status\":\"INVAULT\"},{\"content\":").append(i)
+                .append(",\"status\":\"OPENED\"}]}");
+        }
+        return json.append("]}}}").toString();
+    }
+
+    /**
+     * Checks that a parser read the whole document.
+     *
+     * @param stock the parsed stock
+     * @param entries the expected number of cardStock entries
+     */
+    private static void check(VaultStock stock, int entries) {
+        int parsed = stock.getStockTotals().getProduction().getCardStock().size();
+        CardStock first = stock.getStockTotals().getProduction().getCardStock().get(0);
+        if (parsed != entries || stock.getStockTotals().getTest() != null || first.getVolumes().size() != 2) {
+            throw new IllegalStateException("Parser did not read the document correctly");
+        }
+    }
+
+    /**
+     * Warms up a parser and then times it, recording the bytes allocated by this thread.
+     *
+     * @param parser the parser
+     * @param json the document
+     * @param iterations the number of measured parses
+     * @return the time and allocation per parse
+     */
+    private static Result measure(Function<String, VaultStock> parser, String json, int iterations) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        int sink = 0;
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            sink += parser.apply(json).hashCode();
+        }
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += parser.apply(json).hashCode();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        if (sink == 42) {
+            // Keeps the results live so the parses are not optimised away
+            System.out.print("");
+        }
+        return new Result((double) elapsed / iterations, (double) allocated / iterations);
+    }
+
+    /**
+     * Prints a line of the results table.
+     *
+     * @param name the parser
+     * @param result the measurements
+     */
+    private static void print(String name, Result result) {
+        System.out.printf(Locale.UK, "%-10s %14.1f %16.1f%n", name, result.nanos / 1000, result.bytes / 1024);
+    }
+
+    /**
+     * The time and allocation per parse.
+     */
+    private static final class Result {
+        private final double nanos;
+        private final double bytes;
+
+        private Result(double nanos, double bytes) {
+            this.nanos = nanos;
+            this.bytes = bytes;
+        }
+    }
+}